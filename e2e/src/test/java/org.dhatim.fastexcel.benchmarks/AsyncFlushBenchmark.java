@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measure how much serializing flushed rows on a background thread overlaps
+ * with a producer waiting for its data, like a JDBC cursor fetching rows in
+ * batches.
+ */
+@State(Scope.Benchmark)
+public class AsyncFlushBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS = 200_000;
+    private static final int FETCH_SIZE = 1000;
+    private static final long FETCH_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    @Param({"0", "4"})
+    private int asyncFlush;
+
+    @Benchmark
+    public long fetchAndFlush() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            wb.setAsyncFlush(asyncFlush);
+            Worksheet ws = wb.newWorksheet("Sheet");
+            for (int r = 0; r < NB_ROWS; ++r) {
+                if (r % FETCH_SIZE == 0) {
+                    LockSupport.parkNanos(FETCH_LATENCY_NANOS);
+                }
+                ws.value(r, 0, r);
+                ws.value(r, 1, "Customer " + (r % 5000));
+                ws.value(r, 2, r * 0.5);
+                ws.value(r, 3, "Comment <" + r + "> & more");
+                if (r % FETCH_SIZE == FETCH_SIZE - 1) {
+                    ws.flush();
+                }
+            }
+        }
+        return count.getByteCount();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel.benchmarks;
+
+import java.io.IOException;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measure the cost of flushing a large worksheet very often, with or without
+ * hidden and grouped rows.
+ */
+@State(Scope.Benchmark)
+public class FlushBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS = 1_000_000;
+    private static final int FLUSH_EVERY = 10;
+
+    @Param({"false", "true"})
+    private boolean hiddenAndGroupedRows;
+
+    @Benchmark
+    public long flushEvery10Rows() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            for (int r = 0; r < NB_ROWS; ++r) {
+                ws.value(r, 0, r);
+                ws.value(r, 1, r * 0.5);
+                ws.value(r, 2, r % 2 == 0);
+                if (hiddenAndGroupedRows) {
+                    if (r % 7 == 0) {
+                        ws.hideRow(r);
+                    }
+                    if (r % 100 == 0) {
+                        ws.groupRows(r + 1, r + 5);
+                    }
+                }
+                if (r % FLUSH_EVERY == FLUSH_EVERY - 1) {
+                    ws.flush();
+                }
+            }
+        }
+        return count.getByteCount();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measure how serializing the rows of a single large flush scales with the
+ * number of threads. Worksheets are stored without compression, so that
+ * deflating does not hide the serialization cost.
+ */
+@State(Scope.Benchmark)
+public class ParallelSerializationBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS = 50_000;
+    private static final int NB_COLS = 20;
+
+    /**
+     * Number of threads serializing rows, 0 to serialize them on the calling
+     * thread.
+     */
+    @Param({"0", "1", "2", "4"})
+    private int threads;
+
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        pool = threads == 0 ? null : new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long wideRows() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            wb.setCompressionLevel(0);
+            wb.setSerializationExecutor(pool);
+            Worksheet ws = wb.newWorksheet("Sheet");
+            for (int r = 0; r < NB_ROWS; ++r) {
+                for (int c = 0; c < NB_COLS; c += 4) {
+                    ws.value(r, c, r + c);
+                    ws.value(r, c + 1, (r + c) / 7.0);
+                    ws.value(r, c + 2, "Value " + (r % 100));
+                    ws.inlineString(r, c + 3, "Inline <" + r + "> & " + c);
+                }
+            }
+        }
+        return count.getByteCount();
+    }
+}
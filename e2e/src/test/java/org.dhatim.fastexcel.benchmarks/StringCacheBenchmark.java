@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measure how shared string caching scales when several threads fill
+ * different worksheets of the same workbook.
+ */
+@State(Scope.Benchmark)
+public class StringCacheBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS_PER_THREAD = 200_000;
+    private static final int NB_LABELS = 5_000;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private final String[] labels = new String[NB_LABELS];
+    private final String[] references = new String[NB_ROWS_PER_THREAD];
+    private ExecutorService executor;
+
+    public StringCacheBenchmark() {
+        for (int i = 0; i < NB_LABELS; ++i) {
+            labels[i] = "Label " + i;
+        }
+        for (int i = 0; i < NB_ROWS_PER_THREAD; ++i) {
+            references[i] = "Reference " + i;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public long sharedStrings() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            wb.setParallelWorksheets(true);
+            CompletableFuture<?>[] cfs = new CompletableFuture<?>[threads];
+            for (int t = 0; t < threads; ++t) {
+                Worksheet ws = wb.newWorksheet("Sheet " + t);
+                cfs[t] = CompletableFuture.runAsync(() -> {
+                    try {
+                        for (int r = 0; r < NB_ROWS_PER_THREAD; ++r) {
+                            ws.value(r, 0, labels[r % NB_LABELS]);
+                            ws.value(r, 1, references[r]);
+                            if (r % 10_000 == 9_999) {
+                                ws.flush();
+                            }
+                        }
+                        ws.finish();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }, executor);
+            }
+            CompletableFuture.allOf(cfs).join();
+        }
+        return count.getByteCount();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel.benchmarks;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.TimestampUtil;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compare timestamp conversion with the former implementation, which filled a
+ * new {@link Calendar} for each value.
+ */
+@State(Scope.Benchmark)
+public class TimestampBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_VALUES = 1_000_000;
+    private static final ZoneId ZONE = ZoneId.of("Europe/Paris");
+
+    private final Date[] dates = new Date[NB_VALUES];
+    private final long[] millis = new long[NB_VALUES];
+
+    public TimestampBenchmark() {
+        long start = LocalDate.of(2020, 1, 1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        for (int i = 0; i < NB_VALUES; ++i) {
+            // One value every 97 seconds, spanning 3 years
+            millis[i] = start + i * 97_000L;
+            dates[i] = new Date(millis[i]);
+        }
+    }
+
+    @Benchmark
+    public double legacyCalendar() {
+        double sum = 0;
+        for (Date date : dates) {
+            sum += legacyConvertDate(date);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double date() {
+        double sum = 0;
+        for (Date date : dates) {
+            sum += TimestampUtil.serialNumber(date);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double epochMillis() {
+        double sum = 0;
+        for (long t : millis) {
+            sum += TimestampUtil.serialNumber(t, ZONE);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long worksheetLegacyCalendar() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < NB_VALUES / 4; ++r) {
+                for (int c = 0; c < 4; ++c) {
+                    ws.value(r, c, legacyConvertDate(dates[4 * r + c]));
+                }
+                if (r % 10_000 == 0) {
+                    ws.flush();
+                }
+            }
+        }
+        return count.getByteCount();
+    }
+
+    @Benchmark
+    public long worksheetEpochMillis() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < NB_VALUES / 4; ++r) {
+                for (int c = 0; c < 4; ++c) {
+                    ws.value(r, c, millis[4 * r + c], ZONE);
+                }
+                if (r % 10_000 == 0) {
+                    ws.flush();
+                }
+            }
+        }
+        return count.getByteCount();
+    }
+
+    private static Double legacyConvertDate(Date date) {
+        Calendar calStart = Calendar.getInstance();
+        calStart.setTime(date);
+        int year = calStart.get(Calendar.YEAR);
+        int dayOfYear = calStart.get(Calendar.DAY_OF_YEAR);
+        int hour = calStart.get(Calendar.HOUR_OF_DAY);
+        int minute = calStart.get(Calendar.MINUTE);
+        int second = calStart.get(Calendar.SECOND);
+        int milliSecond = calStart.get(Calendar.MILLISECOND);
+        if (year < 1900) {
+            return -1.0;
+        }
+        double fraction = (((hour * 60.0 + minute) * 60.0 + second) * 1000.0 + milliSecond) / TimestampUtil.DAY_MILLISECONDS;
+        int yr1 = year - 1;
+        int leapDays = yr1 / 4 - yr1 / 100 + yr1 / 400 - 460;
+        double value = fraction + dayOfYear + 365 * (year - 1900) + leapDays;
+        if (value >= 60) {
+            value++;
+        }
+        return value;
+    }
+}
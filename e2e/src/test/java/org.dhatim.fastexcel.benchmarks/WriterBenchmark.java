@@ -16,7 +16,11 @@
 package org.dhatim.fastexcel.benchmarks;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.io.output.NullOutputStream;
@@ -26,6 +30,10 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.dhatim.fastexcel.ColumnSchema;
+import org.dhatim.fastexcel.ColumnType;
+import org.dhatim.fastexcel.RowWriter;
+import org.dhatim.fastexcel.StyleHandle;
 import org.dhatim.fastexcel.Workbook;
 import org.dhatim.fastexcel.Worksheet;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -37,6 +45,7 @@ import org.openjdk.jmh.annotations.Benchmark;
 public class WriterBenchmark extends BenchmarkLauncher {
 
     private static final int NB_ROWS = 100_000;
+    private static final int NB_SHEETS = 8;
 
     @Benchmark
     public Object poiNoStreaming() throws Exception {
@@ -50,8 +59,18 @@ public class WriterBenchmark extends BenchmarkLauncher {
 
     @Benchmark
     public Object fastExcel() throws IOException {
+        return fastExcel(null);
+    }
+
+    @Benchmark
+    public Object fastExcelBlockDeflate() throws IOException {
+        return fastExcel(ForkJoinPool.commonPool());
+    }
+
+    private long fastExcel(Executor compressionExecutor) throws IOException {
         CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
         try(Workbook wb = new Workbook(count, "Perf", "1.0")){
+          wb.setCompressionExecutor(compressionExecutor);
           Worksheet ws = wb.newWorksheet("Sheet 1");
           for (int r = 0; r < NB_ROWS; ++r) {
               ws.value(r, 0, r);
@@ -61,7 +80,70 @@ public class WriterBenchmark extends BenchmarkLauncher {
           }
           ws.range(0, 3, NB_ROWS - 1, 3).style().format("yyyy-mm-dd hh:mm:ss").set();
         }
-        return count.getCount();
+        return count.getByteCount();
+    }
+
+    @Benchmark
+    public Object fastExcelSequential() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            StyleHandle dateStyle = wb.compileStyle(s -> s.format("yyyy-mm-dd hh:mm:ss"));
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            RowWriter rw = ws.sequentialWriter(new ColumnSchema()
+                    .column(ColumnType.NUMBER)
+                    .column(ColumnType.STRING)
+                    .column(ColumnType.NUMBER)
+                    .column(ColumnType.DATE, dateStyle));
+            Date date = new Date(1549915044);
+            for (int r = 0; r < NB_ROWS; ++r) {
+                rw.value(r).value(Integer.toString(r % 1000)).value(r / 87.0).value(date).endRow();
+            }
+        }
+        return count.getByteCount();
+    }
+
+    @Benchmark
+    public Object fastExcelMultipleSheets() throws IOException {
+        return fastExcelMultipleSheets(false);
+    }
+
+    @Benchmark
+    public Object fastExcelParallelSheets() throws IOException {
+        return fastExcelMultipleSheets(true);
+    }
+
+    private long fastExcelMultipleSheets(boolean parallel) throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            wb.setParallelWorksheets(parallel);
+            CompletableFuture<?>[] cfs = new CompletableFuture<?>[NB_SHEETS];
+            for (int i = 0; i < NB_SHEETS; ++i) {
+                Worksheet ws = wb.newWorksheet("Sheet " + i);
+                Runnable populate = () -> {
+                    try {
+                        for (int r = 0; r < NB_ROWS; ++r) {
+                            ws.value(r, 0, r);
+                            ws.value(r, 1, Integer.toString(r % 1000));
+                            ws.value(r, 2, r / 87.0);
+                            if (r % 10_000 == 9_999) {
+                                ws.flush();
+                            }
+                        }
+                        ws.finish();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                };
+                if (parallel) {
+                    cfs[i] = CompletableFuture.runAsync(populate);
+                } else {
+                    populate.run();
+                    cfs[i] = CompletableFuture.completedFuture(null);
+                }
+            }
+            CompletableFuture.allOf(cfs).join();
+        }
+        return count.getByteCount();
     }
 
     private int poiPopulate(org.apache.poi.ss.usermodel.Workbook wb) throws Exception {
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel.benchmarks;
+
+import java.io.IOException;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
+import org.dhatim.fastexcel.XmlEscapeHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compare the XML escaping engine with the former implementation, which built
+ * a new string for each code point.
+ */
+@State(Scope.Benchmark)
+public class XmlEscapeBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_STRINGS = 1_000_000;
+
+    private final String[] strings = new String[NB_STRINGS];
+
+    public XmlEscapeBenchmark() {
+        for (int i = 0; i < NB_STRINGS; ++i) {
+            switch (i % 10) {
+                case 0:
+                    strings[i] = "Price < " + i + " & quantity > 0";
+                    break;
+                case 1:
+                    strings[i] = "Café crème n°" + i;
+                    break;
+                default:
+                    strings[i] = "Customer reference " + i + " - plain ASCII text";
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public long legacyEscape() {
+        long length = 0;
+        for (String s : strings) {
+            length += legacyEscape(s).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public long escape() {
+        long length = 0;
+        for (String s : strings) {
+            length += XmlEscapeHelper.escape(s).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int sharedStrings() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < NB_STRINGS / 4; ++r) {
+                ws.value(r, 0, strings[r]);
+                ws.inlineString(r, 1, strings[r + NB_STRINGS / 4]);
+                if (r % 10_000 == 0) {
+                    ws.flush();
+                }
+            }
+        }
+        return count.getCount();
+    }
+
+    private static String legacyEscape(String text) {
+        int offset = 0;
+        StringBuilder sb = new StringBuilder();
+        while (offset < text.length()) {
+            int codePoint = text.codePointAt(offset);
+            sb.append(legacyEscape(codePoint));
+            offset += Character.charCount(codePoint);
+        }
+        return sb.toString();
+    }
+
+    private static String legacyEscape(int c) {
+        if (!(c == 0x9 || c == 0xa || c == 0xD
+                || (c >= 0x20 && c <= 0xd7ff)
+                || (c >= 0xe000 && c <= 0xfffd)
+                || (c >= 0x10000 && c <= 0x10ffff))) {
+            return "";
+        }
+        switch (c) {
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '&':
+                return "&amp;";
+            case '\'':
+                return "&apos;";
+            case '"':
+                return "&quot;";
+            default:
+                if (c > 0x7e || c < 0x20) {
+                    return "&#x".concat(Integer.toHexString(c)).concat(";");
+                } else {
+                    return String.valueOf((char) c);
+                }
+        }
+    }
+}
@@ -41,6 +41,7 @@ public class MemoryUsageE2E {
 
     private void write(OutputStream out) throws IOException {
         try(Workbook wb = new Workbook(out, "test", "1.0")){
+            configure(wb);
             for (int s = 0; s < SHEETS; s++) {
                 try(Worksheet sheet = wb.newWorksheet("sheet " + s)){
                     for (int r = 0; r < ROWS; r++) {
@@ -48,15 +49,40 @@ public class MemoryUsageE2E {
                         for (int c = 0; c < COLS; c++) {
                             sheet.value(r, c, valueFor(r, c));
                         }
-                        if (r % FLUSH_EVERY_NR_OR_ROWS == 0) {
+                        if (flushEvery() > 0 && r % flushEvery() == 0) {
                             sheet.flush();
                         }
                     }
+                    written(sheet);
                 }
             }
         }
     }
 
+    /**
+     * Configure the workbook before worksheets are written.
+     *
+     * @param wb Workbook.
+     */
+    protected void configure(Workbook wb) {
+    }
+
+    /**
+     * @return Number of rows kept in memory between flushes, or 0 to never
+     * flush rows explicitly.
+     */
+    protected int flushEvery() {
+        return FLUSH_EVERY_NR_OR_ROWS;
+    }
+
+    /**
+     * Check a worksheet once all its values are set, before it is finished.
+     *
+     * @param sheet Worksheet.
+     */
+    protected void written(Worksheet sheet) {
+    }
+
     private void read(ReadableWorkbook wb) {
         wb.getSheets().forEach(sheet -> {
             try (Stream<Row> rows = sheet.openStream()) {
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+/**
+ * Same as {@link MemoryUsageE2E}, but keeping a million cells in memory
+ * between flushes, which only fits in the heap if cells are stored compactly.
+ */
+public class RowWindowMemoryUsageE2E extends MemoryUsageE2E {
+
+    @Override
+    protected int flushEvery() {
+        return 5_000;
+    }
+}
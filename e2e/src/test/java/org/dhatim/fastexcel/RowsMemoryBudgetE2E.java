@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Same as {@link MemoryUsageE2E}, but rows are never flushed explicitly: they
+ * are flushed automatically according to the memory budget of the workbook.
+ */
+public class RowsMemoryBudgetE2E extends MemoryUsageE2E {
+
+    private static final long BUDGET = 8 * 1024 * 1024;
+    /**
+     * Rows are flushed once the budget is exceeded, when the next row is
+     * started, so that the buffered rows may exceed it by about one row.
+     */
+    private static final long ROW_SLACK = 64 * 1024;
+
+    @Override
+    protected void configure(Workbook wb) {
+        wb.setRowsMemoryBudget(BUDGET);
+    }
+
+    @Override
+    protected int flushEvery() {
+        return 0;
+    }
+
+    @Override
+    protected void written(Worksheet sheet) {
+        assertThat(sheet.getBufferedBytesHighWaterMark()).isBetween(BUDGET / 2, BUDGET + ROW_SLACK);
+    }
+}
@@ -1,5 +1,3 @@
 module org.dhatim.fastexcel {
-    requires opczip;
-
     exports org.dhatim.fastexcel;
-}
\ No newline at end of file
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Thread serializing the rows flushed from a worksheet, see
+ * {@link Workbook#setAsyncFlush(int)}. Tasks are handed over through a
+ * bounded queue and run in order on a dedicated thread, which thus does the
+ * XML formatting, deflating and writing to the output while the worksheet
+ * is being filled. Submitting blocks while the queue is full.
+ * <p>
+ * Once a task fails, pending tasks are dropped and the failure is thrown
+ * by the next call to {@link #submit(ThrowingConsumer)}, {@link #await()}
+ * or {@link #close()}.
+ */
+final class BackgroundWriter {
+
+    private final Writer writer;
+    private final int capacity;
+    private final Queue<ThrowingConsumer<Writer>> queue = new ArrayDeque<>();
+    private final Thread thread;
+    /**
+     * Whether a task is running.
+     */
+    private boolean busy;
+    private boolean closed;
+    private Throwable failure;
+
+    /**
+     * Constructor, starting the thread.
+     *
+     * @param writer Output writer, only used by the tasks from now on.
+     * @param capacity Number of tasks which may be pending.
+     * @param name Name of the thread.
+     */
+    BackgroundWriter(Writer writer, int capacity, String name) {
+        this.writer = writer;
+        this.capacity = capacity;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a task, waiting for room in the queue if needed.
+     *
+     * @param task Task writing to the output writer.
+     * @throws IOException If a previous task failed.
+     */
+    synchronized void submit(ThrowingConsumer<Writer> task) throws IOException {
+        while (queue.size() >= capacity && failure == null) {
+            waitForThread();
+        }
+        checkFailure();
+        queue.add(task);
+        notifyAll();
+    }
+
+    /**
+     * Wait for the queued tasks to be done, so that the output writer can be
+     * used by the calling thread.
+     *
+     * @throws IOException If a task failed.
+     */
+    synchronized void await() throws IOException {
+        while ((busy || !queue.isEmpty()) && failure == null) {
+            waitForThread();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Wait for the queued tasks to be done and stop the thread.
+     *
+     * @throws IOException If a task failed.
+     */
+    void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while serializing rows");
+        }
+        synchronized (this) {
+            checkFailure();
+        }
+    }
+
+    /**
+     * Drop the queued tasks and stop the thread, e.g. after a failure. Waits
+     * for the running task, if any, so that the output writer is no longer
+     * used once this method returns. Failures are ignored.
+     */
+    void shutdown() {
+        synchronized (this) {
+            closed = true;
+            queue.clear();
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void waitForThread() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while serializing rows");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Failed to serialize rows", failure);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            ThrowingConsumer<Writer> task;
+            synchronized (this) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        failure = ex;
+                        notifyAll();
+                        return;
+                    }
+                }
+                task = queue.poll();
+                if (task == null) {
+                    return;
+                }
+                busy = true;
+                // Room in the queue
+                notifyAll();
+            }
+            Throwable error = null;
+            try {
+                task.accept(writer);
+            } catch (Throwable t) {
+                error = t;
+            }
+            synchronized (this) {
+                busy = false;
+                if (error != null) {
+                    failure = error;
+                    queue.clear();
+                }
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Raw deflate output stream which compresses blocks of data concurrently,
+ * the way <a href="https://zlib.net/pigz/">pigz</a> does.
+ * <p>
+ * Data is split into blocks of {@link #BLOCK_SIZE} bytes, each deflated by a
+ * task submitted to an executor. Each block is primed with the last 32 KiB of
+ * the previous block as a preset dictionary, so that the compression ratio is
+ * close to the one of a single deflater, and all blocks but the last one end
+ * with a sync flush, so that their outputs are byte aligned and can simply be
+ * concatenated into one valid deflate stream. The CRC-32 of the uncompressed
+ * data is computed on the calling thread, which is much cheaper than
+ * deflating.
+ */
+final class BlockDeflater extends OutputStream {
+
+    /**
+     * Size of uncompressed blocks.
+     */
+    static final int BLOCK_SIZE = 512 * 1024;
+
+    /**
+     * Size of the deflate window, i.e. the largest useful dictionary.
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * Maximum number of blocks being deflated or waiting to be written, so
+     * that memory usage remains bounded when the executor is slower than the
+     * producer.
+     */
+    private static final int MAX_PENDING_BLOCKS = 2 * Runtime.getRuntime().availableProcessors() + 2;
+
+    private final OutputStream out;
+    private final int level;
+    private final Executor executor;
+    private final CRC32 crc = new CRC32();
+    private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength;
+    /**
+     * Previous block, whose end is the dictionary of the current block.
+     */
+    private byte[] previous;
+    private long bytesRead;
+    private long bytesWritten;
+    private boolean finished;
+
+    /**
+     * Constructor.
+     *
+     * @param out Output stream receiving deflated data.
+     * @param level Compression level (0-9).
+     * @param executor Executor deflating blocks.
+     */
+    BlockDeflater(OutputStream out, int level, Executor executor) {
+        this.out = out;
+        this.level = level;
+        this.executor = executor;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Deflater already finished");
+        }
+        crc.update(b, off, len);
+        bytesRead += len;
+        while (len > 0) {
+            if (blockLength == block.length) {
+                submit(false);
+            }
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Deflate the last block and write all pending blocks. The underlying
+     * output stream is not closed.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        submit(true);
+        while (!pending.isEmpty()) {
+            writeBlock(pending.removeFirst());
+        }
+        finished = true;
+    }
+
+    /**
+     * @return CRC-32 of uncompressed data.
+     */
+    long getCrc() {
+        return crc.getValue();
+    }
+
+    /**
+     * @return Number of uncompressed bytes written to this stream.
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return Number of deflated bytes written to the underlying stream.
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void submit(boolean last) throws IOException {
+        byte[] data = block;
+        int length = blockLength;
+        byte[] dictionary = previous;
+        pending.addLast(CompletableFuture.supplyAsync(() -> deflate(dictionary, data, length, level, last), executor));
+        previous = data;
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+        // Write blocks which are done, in order, and wait if too many are pending
+        while (!pending.isEmpty() && (pending.peekFirst().isDone() || pending.size() > MAX_PENDING_BLOCKS)) {
+            writeBlock(pending.removeFirst());
+        }
+    }
+
+    private void writeBlock(CompletableFuture<byte[]> future) throws IOException {
+        byte[] deflated;
+        try {
+            deflated = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while deflating");
+        } catch (ExecutionException ex) {
+            throw new IOException("Deflate failed", ex.getCause());
+        }
+        out.write(deflated);
+        bytesWritten += deflated.length;
+    }
+
+    /**
+     * Deflate a block of data.
+     *
+     * @param dictionary Previous block, or {@code null} for the first block.
+     * @param data Block data.
+     * @param length Number of bytes in {@code data}.
+     * @param level Compression level.
+     * @param last Whether this is the last block of the stream.
+     * @return Raw deflated data.
+     */
+    private static byte[] deflate(byte[] dictionary, byte[] data, int length, int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+            deflater.setInput(data, 0, length);
+            byte[] result = new byte[length / 2 + 64];
+            int resultLength = 0;
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (resultLength == result.length) {
+                        result = Arrays.copyOf(result, 2 * result.length);
+                    }
+                    resultLength += deflater.deflate(result, resultLength, result.length - resultLength);
+                }
+            } else {
+                int n;
+                do {
+                    if (resultLength == result.length) {
+                        result = Arrays.copyOf(result, 2 * result.length);
+                    }
+                    n = deflater.deflate(result, resultLength, result.length - resultLength, Deflater.SYNC_FLUSH);
+                    resultLength += n;
+                } while (resultLength == result.length);
+            }
+            return Arrays.copyOf(result, resultLength);
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+/**
+ * Estimator of the number of distinct values in a stream, using the
+ * <a href="https://en.wikipedia.org/wiki/HyperLogLog">HyperLogLog</a>
+ * algorithm. It takes a few hundred bytes, whatever the number of values,
+ * with a typical error of about 6%.
+ */
+final class CardinalityEstimator {
+
+    private static final int PRECISION = 8;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    /**
+     * Highest rank seen for each register.
+     */
+    private final byte[] registers = new byte[REGISTERS];
+    private long count;
+
+    /**
+     * Add a value.
+     *
+     * @param hash Hash code of the value.
+     */
+    void add(int hash) {
+        // Spread the hash code over 64 bits, as in MurmurHash3's finalizer
+        long x = hash;
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        int register = (int) (x >>> (64 - PRECISION));
+        byte rank = (byte) (Long.numberOfLeadingZeros(x << PRECISION | 1L << (PRECISION - 1)) + 1);
+        if (rank > registers[register]) {
+            registers[register] = rank;
+        }
+        ++count;
+    }
+
+    /**
+     * @return Number of values added, including duplicates.
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * @return Estimated number of distinct values added.
+     */
+    double estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : registers) {
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                ++zeros;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // Small range correction: linear counting
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return estimate;
+    }
+}
@@ -1,7 +1,7 @@
 package org.dhatim.fastexcel;
 
-import java.util.Map;
 import java.util.Objects;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Definition of a column.
@@ -30,10 +30,6 @@ class Column {
         this.style = 0;
     }
 
-    static Column noStyle(Worksheet worksheet, int c) {
-        return new Column(worksheet, c);
-    }
-
     /**
      * Get parent worksheet.
      *
@@ -86,9 +82,9 @@ class Column {
     /**
      * Apply new (merged) style to this column.
      *
-     * @param stylesMap new styles map
+     * @param merge Function merging the current style with new style elements.
      */
-    void applyStyle(Map<Integer, Integer> stylesMap) {
-        this.style = stylesMap.get(this.style);
+    void applyStyle(IntUnaryOperator merge) {
+        this.style = merge.applyAsInt(this.style);
     }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Types and styles of the columns of rows written by a {@link RowWriter},
+ * declared up front so that cells are written with pre-encoded references
+ * and attributes. Number and date formats are part of styles.
+ * <p>
+ * For example:
+ * <blockquote><pre>
+ *  StyleHandle date = wb.compileStyle(s -&gt; s.format("yyyy-mm-dd"));
+ *  ColumnSchema schema = new ColumnSchema()
+ *          .column(ColumnType.STRING)
+ *          .column(ColumnType.NUMBER)
+ *          .column(ColumnType.DATE, date);
+ * </pre></blockquote>
+ */
+public final class ColumnSchema {
+
+    private final List<ColumnType> types = new ArrayList<>();
+    private final List<StyleHandle> styles = new ArrayList<>();
+
+    /**
+     * Constructor, for a schema with no columns. Columns are declared in
+     * order with {@link #column(ColumnType, StyleHandle)}.
+     */
+    public ColumnSchema() {
+    }
+
+    /**
+     * Declare the next column, with no style.
+     *
+     * @param type Type of the values of the column.
+     * @return This schema.
+     */
+    public ColumnSchema column(ColumnType type) {
+        return column(type, null);
+    }
+
+    /**
+     * Declare the next column.
+     *
+     * @param type Type of the values of the column.
+     * @param style Style of the cells of the column, or {@code null}.
+     * @return This schema.
+     */
+    public ColumnSchema column(ColumnType type, StyleHandle style) {
+        types.add(Objects.requireNonNull(type));
+        styles.add(style);
+        return this;
+    }
+
+    /**
+     * Get the number of columns.
+     *
+     * @return Number of columns.
+     */
+    int size() {
+        return types.size();
+    }
+
+    /**
+     * Get the type of a column.
+     *
+     * @param c Zero-based column number.
+     * @return Type of the values of the column.
+     */
+    ColumnType getType(int c) {
+        return types.get(c);
+    }
+
+    /**
+     * Get the style of a column.
+     *
+     * @param c Zero-based column number.
+     * @return Style, or {@code null}.
+     */
+    StyleHandle getStyle(int c) {
+        return styles.get(c);
+    }
+}
@@ -15,9 +15,6 @@
  */
 package org.dhatim.fastexcel;
 
-import java.util.Collections;
-import java.util.HashSet;
-
 import static org.dhatim.fastexcel.Worksheet.MAX_ROWS;
 
 /**
@@ -29,7 +26,7 @@ import static org.dhatim.fastexcel.Worksheet.MAX_ROWS;
  *  ws.range(1, 1, 1, 10).style().borderStyle("thin").bold().fillColor(Color.GRAY4).horizontalAlignment("center").set();
  * </pre></blockquote>
  */
-public class ColumnStyleSetter extends GenericStyleSetter<ColumnStyleSetter> {
+public class ColumnStyleSetter extends RangeStyleSetter<ColumnStyleSetter> {
 
     /**
      * Column where the style is applied.
@@ -51,7 +48,7 @@ public class ColumnStyleSetter extends GenericStyleSetter<ColumnStyleSetter> {
      * done otherwise style changes are lost!</b>
      */
     public void set() {
-        super.setStyle(false, new HashSet<>(Collections.singletonList(column.getStyle())), column::applyStyle);
+        super.setStyle(false, column::applyStyle);
     }
 
     @Override
@@ -15,44 +15,30 @@
  */
 package org.dhatim.fastexcel;
 
-import java.util.Objects;
-
 /**
- * A cached string is uniquely identified by its index.
+ * Type of the values of a column declared in a {@link ColumnSchema}.
  */
-class CachedString {
-
-    private final String string;
-    private final int index;
+public enum ColumnType {
 
     /**
-     * Constructor.
-     *
-     * @param string String value.
-     * @param index Index in cache.
+     * Strings, stored according to the shared strings policy of the column,
+     * see {@link Worksheet#sharedStringsPolicy(int, SharedStringsPolicy)}.
      */
-    CachedString(String string, int index) {
-        Objects.requireNonNull(string);
-        this.string = string;
-        this.index = index;
-    }
+    STRING,
 
     /**
-     * Get string value.
-     *
-     * @return String value.
+     * Numbers.
      */
-    String getString() {
-        return string;
-    }
+    NUMBER,
 
     /**
-     * Get cache index.
-     *
-     * @return Cache index.
+     * Booleans.
      */
-    int getIndex() {
-        return index;
-    }
+    BOOLEAN,
 
+    /**
+     * Dates and times, stored as numbers. A date format must be part of the
+     * style of the column for them to be displayed as dates.
+     */
+    DATE
 }
@@ -1,19 +1,62 @@
 package org.dhatim.fastexcel;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
 
-class Comments {
+/**
+ * Comments of a worksheet. Comments of flushed rows are moved to
+ * {@link FragmentSpill}s, as comment elements and VML shapes, so that they do
+ * not stay in memory until the worksheet is finished.
+ */
+class Comments implements Closeable {
     private static final String COLOR = "#ffffee";
-    private final Map<Location, String> cache = new TreeMap<>();
+    private final TreeMap<Location, String> cache = new TreeMap<>();
+    private final FragmentSpill commentSpill = new FragmentSpill();
+    private final FragmentSpill shapeSpill = new FragmentSpill();
+    /**
+     * Number of rows whose comments were spilled.
+     */
+    private int spilledRows;
+    /**
+     * Identifier of the next VML shape.
+     */
+    private int nextShapeId;
 
     void set(int r, int c, String comment) {
+        if (r < spilledRows) {
+            throw new IllegalStateException("Row " + r + " already flushed from memory.");
+        }
         cache.put(new Location(r, c), comment);
     }
 
     boolean isEmpty() {
-        return cache.isEmpty();
+        return cache.isEmpty() && nextShapeId == 0;
+    }
+
+    /**
+     * Move the comments of the rows before the given one to the temporary
+     * files. Comments can no longer be set on these rows.
+     *
+     * @param endRow Zero-based number of the first row to keep in memory.
+     * @throws IOException If an I/O error occurs.
+     */
+    void spillRowsBefore(int endRow) throws IOException {
+        if (endRow <= spilledRows) {
+            return;
+        }
+        spilledRows = endRow;
+        Iterator<Map.Entry<Location, String>> it = cache.headMap(new Location(endRow, 0)).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Location, String> entry = it.next();
+            writeComment(commentSpill.writer(), entry.getKey(), entry.getValue());
+            writeShape(shapeSpill.writer(), entry.getKey(), nextShapeId++);
+            commentSpill.commit();
+            shapeSpill.commit();
+            it.remove();
+        }
     }
 
     void writeComments(Writer w) throws IOException {
@@ -21,17 +64,21 @@ class Comments {
         w.append("<comments xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
         w.append("<authors><author/></authors>");
         w.append("<commentList>");
+        commentSpill.copyTo(w);
         for (Map.Entry<Location, String> entry : cache.entrySet()) {
-            Location location = entry.getKey();
-            w.append("<comment ref=\"");
-            w.append(location.toString());
-            w.append("\" authorId=\"0\"><text><t>");
-            w.appendEscaped(entry.getValue());
-            w.append("</t></text></comment>");
+            writeComment(w, entry.getKey(), entry.getValue());
         }
         w.append("</commentList></comments>");
     }
 
+    private static void writeComment(Writer w, Location location, String comment) throws IOException {
+        w.append("<comment ref=\"");
+        w.append(location.toString());
+        w.append("\" authorId=\"0\"><text><t>");
+        w.appendEscaped(comment);
+        w.append("</t></text></comment>");
+    }
+
     void writeVmlDrawing(Writer w) throws IOException {
         w.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
         w.append("<xml xmlns:o=\"urn:schemas-microsoft-com:office:office\" xmlns:v=\"urn:schemas-microsoft-com:vml\"");
@@ -40,39 +87,55 @@ class Comments {
         w.append("<v:shapetype id=\"c\" coordsize=\"21600,21600\" o:spt=\"202.0\" path=\"m,l,21600r21600,l21600,xe\">");
         w.append("<v:stroke joinstyle=\"miter\"/><v:path gradientshapeok=\"t\" o:connecttype=\"rect\"/>");
         w.append("</v:shapetype>");
-        int id = 0;
-        for (Map.Entry<Location, String> entry : cache.entrySet()) {
-            Location location = entry.getKey();
-            w.append("<v:shape id=\"s");
-            w.append(id++);
-            w.append("\" type=\"#c\" style=\"position:absolute; visibility:hidden\" fillcolor=\"" + COLOR + "\" o:insetmode=\"auto\">");
-            w.append("<v:fill color=\"" + COLOR + "\"/><v:shadow on=\"t\" color=\"black\" obscured=\"t\"/><v:path o:connecttype=\"none\"/>");
-            w.append("<v:textbox style=\"mso-direction-alt:auto\"/>");
-            w.append("<x:ClientData ObjectType=\"Note\">");
-            w.append("<x:MoveWithCells/><x:SizeWithCells/>");
-            w.append("<x:Anchor>");
-            w.append(location.col).append(',');
-            w.append("0,");
-            w.append(location.row).append(',');
-            w.append("0,");
-            w.append(location.col + 2).append(',');
-            w.append("0,");
-            w.append(location.row + 2).append(',');
-            w.append("0");
-            w.append("</x:Anchor>");
-            w.append("<x:AutoFill>False</x:AutoFill>");
-            w.append("<x:Row>").append(location.row).append("</x:Row><x:Column>").append(location.col).append("</x:Column>");
-            w.append("</x:ClientData></v:shape>");
+        shapeSpill.copyTo(w);
+        int id = nextShapeId;
+        for (Location location : cache.keySet()) {
+            writeShape(w, location, id++);
         }
         w.append("</xml>");
 
     }
 
+    private static void writeShape(Writer w, Location location, int id) throws IOException {
+        w.append("<v:shape id=\"s");
+        w.append(id);
+        w.append("\" type=\"#c\" style=\"position:absolute; visibility:hidden\" fillcolor=\"" + COLOR + "\" o:insetmode=\"auto\">");
+        w.append("<v:fill color=\"" + COLOR + "\"/><v:shadow on=\"t\" color=\"black\" obscured=\"t\"/><v:path o:connecttype=\"none\"/>");
+        w.append("<v:textbox style=\"mso-direction-alt:auto\"/>");
+        w.append("<x:ClientData ObjectType=\"Note\">");
+        w.append("<x:MoveWithCells/><x:SizeWithCells/>");
+        w.append("<x:Anchor>");
+        w.append(location.col).append(',');
+        w.append("0,");
+        w.append(location.row).append(',');
+        w.append("0,");
+        w.append(location.col + 2).append(',');
+        w.append("0,");
+        w.append(location.row + 2).append(',');
+        w.append("0");
+        w.append("</x:Anchor>");
+        w.append("<x:AutoFill>False</x:AutoFill>");
+        w.append("<x:Row>").append(location.row).append("</x:Row><x:Column>").append(location.col).append("</x:Column>");
+        w.append("</x:ClientData></v:shape>");
+    }
+
     void writeDrawing(Writer w) throws IOException {
         w.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
         w.append("<xdr:wsDr xmlns:xdr=\"http://schemas.openxmlformats.org/drawingml/2006/spreadsheetDrawing\"/>");
     }
 
-}
-
+    /**
+     * Delete the temporary files, if any.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            commentSpill.close();
+        } finally {
+            shapeSpill.close();
+        }
+    }
 
+}
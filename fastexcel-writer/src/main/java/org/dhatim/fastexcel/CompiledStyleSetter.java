@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+/**
+ * Helper class to define a style compiled once into a {@link StyleHandle},
+ * see {@link Workbook#compileStyle(java.util.function.Consumer)}. This class
+ * implements the builder pattern to easily modify a bunch of attributes.<p>
+ * For example:
+ * <blockquote><pre>
+ *  Workbook wb = ...
+ *  StyleHandle header = wb.compileStyle(s -&gt; s.bold().fillColor(Color.GRAY4).horizontalAlignment("center"));
+ * </pre></blockquote>
+ * Only the style elements of cells can be compiled: row shading and
+ * conditional formatting apply to a range, see {@link StyleSetter}.
+ */
+public class CompiledStyleSetter extends GenericStyleSetter<CompiledStyleSetter> {
+
+    /**
+     * Cached style index, once compiled.
+     */
+    private int style;
+
+    /**
+     * Constructor.
+     *
+     * @param workbook Workbook caching the style.
+     */
+    CompiledStyleSetter(Workbook workbook) {
+        super(workbook);
+    }
+
+    /**
+     * Compile style elements. This is done by
+     * {@link Workbook#compileStyle(java.util.function.Consumer)}, it does not
+     * need to be called explicitly.
+     */
+    @Override
+    public void set() {
+        super.setStyle(merge -> style = merge.applyAsInt(0));
+    }
+
+    /**
+     * Get the compiled style.
+     *
+     * @return Cached style index.
+     */
+    int getStyle() {
+        return style;
+    }
+
+    @Override
+    protected CompiledStyleSetter getThis() {
+        return this;
+    }
+}
@@ -25,6 +25,15 @@ public class ConditionalFormatting {
     ConditionalFormattingRule getConditionalFormattingRule() {
         return this.conditionalFormattingRule;
     }
+
+    /**
+     * Get the range of this conditional formatting.
+     *
+     * @return Range of cells.
+     */
+    Range getRange() {
+        return this.range;
+    }
     
     /**
      * Write this conditionalFormatting as an XML element.
@@ -33,8 +42,24 @@ public class ConditionalFormatting {
      * @throws IOException If an I/O error occurs.
      */
     void write(Writer w) throws IOException {
-        w.append("<conditionalFormatting sqref=\"").append(range.toString()).append("\">");
-        conditionalFormattingRule.write(w);
+        write(w, range.toString(), range.getTop(), range.getLeft());
+    }
+
+    /**
+     * Write this conditionalFormatting as an XML element, applied to the
+     * given cells instead of its range. Relative references of its formula
+     * are moved so that they are relative to the given cell instead of the
+     * top-left cell of its range.
+     *
+     * @param w Output writer.
+     * @param sqref Space-separated references of the cells.
+     * @param top Row of the cell formulas are relative to.
+     * @param left Column of the cell formulas are relative to.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(Writer w, String sqref, int top, int left) throws IOException {
+        w.append("<conditionalFormatting sqref=\"").append(sqref).append("\">");
+        conditionalFormattingRule.write(w, top - range.getTop(), left - range.getLeft());
         w.append("</conditionalFormatting>");
     }
 }
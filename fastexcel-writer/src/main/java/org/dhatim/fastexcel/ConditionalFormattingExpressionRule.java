@@ -28,9 +28,14 @@ public class ConditionalFormattingExpressionRule extends ConditionalFormattingRu
      */
     @Override
     public void write(Writer w) throws IOException {
+        write(w, 0, 0);
+    }
+
+    @Override
+    void write(Writer w, int rows, int columns) throws IOException {
         w
             .append("<cfRule type=\"").append(TYPE).append("\" priority=\"").append(priority).append("\" stopIfTrue=\"").append(stopIfTrue ? "1" : "0").append("\" dxfId=\"").append(dxfId).append("\">")
-            .append("<formula>").append(expression).append("</formula>")
+            .append("<formula>").append(RelativeReferences.move(expression, rows, columns)).append("</formula>")
             .append("</cfRule>");
     }
 }
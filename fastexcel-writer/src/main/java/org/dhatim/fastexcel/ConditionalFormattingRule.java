@@ -47,4 +47,16 @@ public abstract class ConditionalFormattingRule {
      * @throws IOException If an I/O error occurs.
      */
     abstract void write(Writer w) throws IOException;
+
+    /**
+     * Write this conditionalFormatting as an XML element, with the relative
+     * references of its formula moved by the given number of rows and
+     * columns.
+     *
+     * @param w Output writer.
+     * @param rows Number of rows to move relative references.
+     * @param columns Number of columns to move relative references.
+     * @throws IOException If an I/O error occurs.
+     */
+    abstract void write(Writer w, int rows, int columns) throws IOException;
 }
@@ -4,11 +4,34 @@ import java.io.IOException;
 
 interface DataValidation {
 
+    /**
+     * Get the range this validation is applied to.
+     *
+     * @return Range of cells.
+     */
+    Range getRange();
+
     /**
      * Write this dataValidation as an XML element.
      *
      * @param w Output writer.
      * @throws IOException If an I/O error occurs.
      */
-    void write(Writer w) throws IOException;
+    default void write(Writer w) throws IOException {
+        write(w, getRange().toString(), getRange().getTop(), getRange().getLeft());
+    }
+
+    /**
+     * Write this dataValidation as an XML element, applied to the given
+     * cells instead of its range. Relative references of its formula are
+     * moved so that they are relative to the given cell instead of the
+     * top-left cell of its range.
+     *
+     * @param w Output writer.
+     * @param sqref Space-separated references of the cells.
+     * @param top Row of the cell formulas are relative to.
+     * @param left Column of the cell formulas are relative to.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(Writer w, String sqref, int top, int left) throws IOException;
 }
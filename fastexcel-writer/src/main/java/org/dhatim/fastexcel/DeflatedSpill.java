@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Temporary file holding the deflated contents of a zip entry. Bytes written
+ * to this stream are checksummed and deflated on the calling thread, so that
+ * several entries can be generated concurrently; the result is then copied as
+ * is into the zip archive by {@link XlsxOutputStream}. Blocks of data may
+ * also be deflated concurrently on an executor, see {@link BlockDeflater}.
+ * <p>
+ * Bytes only known once the rest of the entry is written, like the header of
+ * a worksheet, may be put before them with {@link #prepend(byte[], int)}.
+ */
+final class DeflatedSpill extends OutputStream {
+
+    private final Path file;
+    private final int level;
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final BlockDeflater blockDeflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buf = new byte[64 * 1024];
+    private long crcValue;
+    private long size;
+    private long compressedSize;
+    private boolean finished;
+    /**
+     * Deflated prefix of the entry, ending with a sync flush so that the
+     * deflated contents of the file can follow it.
+     */
+    private byte[] prefix = new byte[0];
+    private long prefixCrc;
+    private long prefixSize;
+
+    /**
+     * Constructor.
+     *
+     * @param level Compression level (0-9).
+     * @param executor Executor deflating blocks, or {@code null} to deflate
+     * on the calling thread.
+     * @throws IOException If the temporary file cannot be created.
+     */
+    DeflatedSpill(int level, Executor executor) throws IOException {
+        this.file = Files.createTempFile("fastexcel", ".deflate");
+        this.level = level;
+        this.out = Files.newOutputStream(file);
+        if (executor == null) {
+            this.deflater = new Deflater(level, true);
+            this.blockDeflater = null;
+        } else {
+            this.deflater = null;
+            this.blockDeflater = new BlockDeflater(out, level, executor);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Spill already finished");
+        }
+        if (blockDeflater != null) {
+            blockDeflater.write(b, off, len);
+            return;
+        }
+        crc.update(b, off, len);
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    private void deflate() throws IOException {
+        int n = deflater.deflate(buf, 0, buf.length);
+        if (n > 0) {
+            out.write(buf, 0, n);
+        }
+    }
+
+    /**
+     * Complete the deflated stream and close the temporary file for writing.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (blockDeflater != null) {
+            blockDeflater.finish();
+            size = blockDeflater.getBytesRead();
+            compressedSize = blockDeflater.getBytesWritten();
+            crcValue = blockDeflater.getCrc();
+        } else {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            size = deflater.getBytesRead();
+            compressedSize = deflater.getBytesWritten();
+            crcValue = crc.getValue();
+            deflater.end();
+        }
+        out.close();
+        finished = true;
+    }
+
+    /**
+     * Put bytes before the ones written to this stream. They are deflated
+     * separately and end with a sync flush, so that concatenating both
+     * deflated streams gives a valid one; checksums are combined without
+     * reading the bytes of the file again.
+     *
+     * @param b Bytes.
+     * @param len Number of bytes.
+     */
+    void prepend(byte[] b, int len) {
+        Deflater prefixDeflater = new Deflater(level, true);
+        try {
+            prefixDeflater.setInput(b, 0, len);
+            byte[] result = new byte[len / 2 + 64];
+            int resultLength = 0;
+            do {
+                if (resultLength == result.length) {
+                    result = Arrays.copyOf(result, 2 * result.length);
+                }
+                resultLength += prefixDeflater.deflate(result, resultLength, result.length - resultLength, Deflater.SYNC_FLUSH);
+            } while (resultLength == result.length);
+            prefix = Arrays.copyOf(result, resultLength);
+        } finally {
+            prefixDeflater.end();
+        }
+        CRC32 prefixChecksum = new CRC32();
+        prefixChecksum.update(b, 0, len);
+        prefixCrc = prefixChecksum.getValue();
+        prefixSize = len;
+    }
+
+    /**
+     * Copy the deflated data as a new entry of a zip archive.
+     *
+     * @param zip Zip archive.
+     * @param name Entry name.
+     * @throws IOException If an I/O error occurs.
+     */
+    void copyTo(XlsxOutputStream zip, String name) throws IOException {
+        finish();
+        try (InputStream in = new SequenceInputStream(new ByteArrayInputStream(prefix), Files.newInputStream(file))) {
+            zip.writeDeflatedEntry(name, combineCrc(prefixCrc, crcValue, size), prefixSize + size, prefix.length + compressedSize, in);
+        }
+    }
+
+    /**
+     * Compute the CRC-32 of two concatenated byte sequences from their
+     * CRC-32s, like {@code crc32_combine} of zlib: the first CRC is shifted
+     * through {@code length2} zero bytes by repeated squaring of the CRC
+     * operator, then combined with the second one.
+     *
+     * @param crc1 CRC-32 of the first sequence.
+     * @param crc2 CRC-32 of the second sequence.
+     * @param length2 Length of the second sequence.
+     * @return CRC-32 of the concatenated sequences.
+     */
+    static long combineCrc(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        // Operator for one zero bit
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // Operators for two, then four zero bits
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+        // Apply operators for zero bytes, one bit of length2 at a time
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] mat, long vec) {
+        long sum = 0;
+        for (int i = 0; vec != 0; i++, vec >>>= 1) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] mat) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(mat, mat[n]);
+        }
+    }
+
+    /**
+     * Discard this spill and delete its temporary file.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            if (deflater != null) {
+                deflater.end();
+            }
+            out.close();
+            finished = true;
+        }
+        Files.deleteIfExists(file);
+    }
+}
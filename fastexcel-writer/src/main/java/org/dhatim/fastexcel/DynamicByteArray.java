@@ -1,5 +1,6 @@
 package org.dhatim.fastexcel;
 
+import java.util.Collections;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -13,6 +14,11 @@ public class DynamicByteArray {
 
     final int MAX_LENGTH;
 
+    /**
+     * Greatest index of a non-zero value, or -1.
+     */
+    private volatile int maxNoZeroIndex = -1;
+
     public DynamicByteArray(int maxLength) {
         MAX_LENGTH = maxLength;
     }
@@ -24,6 +30,11 @@ public class DynamicByteArray {
         int arrayAreaIndex = index / UNIT_LENGTH;
         byte[] bytes = getBytesWithOutNull(arrayAreaIndex);
         bytes[index - arrayAreaIndex * UNIT_LENGTH] = value;
+        if (value != 0) {
+            maxNoZeroIndex = Math.max(maxNoZeroIndex, index);
+        } else if (index == maxNoZeroIndex) {
+            maxNoZeroIndex = findMaxNoZeroIndex();
+        }
     }
 
     void increase(int index) {
@@ -35,13 +46,13 @@ public class DynamicByteArray {
         if (++bytes[index - arrayAreaIndex * UNIT_LENGTH]>7) {
             throw new IllegalStateException(String.format("Cannot proceed with grouping because the grouping level at this index position has reached the maximum 7.index = %s",index));
         }
+        maxNoZeroIndex = Math.max(maxNoZeroIndex, index);
     }
 
     private byte[] getBytesWithOutNull(int arrayAreaIndex) {
         if (arrayAreaIndex >= byteArrayData.size()) {
-            for (int i = byteArrayData.size() - 1; i < arrayAreaIndex; i++) {
-                byteArrayData.add(null);
-            }
+            // Add all missing areas at once, each addition copies the list
+            byteArrayData.addAll(Collections.nCopies(arrayAreaIndex + 1 - byteArrayData.size(), null));
         }
         if (byteArrayData.get(arrayAreaIndex) == null) {
             byteArrayData.set(arrayAreaIndex, new byte[UNIT_LENGTH]);
@@ -63,6 +74,39 @@ public class DynamicByteArray {
     }
 
     int getMaxNoZeroIndex() {
+        return maxNoZeroIndex;
+    }
+
+    /**
+     * Find the first non-zero value in a range of indexes, skipping areas
+     * where all values are zero.
+     *
+     * @param from First index, inclusive.
+     * @param to Last index, exclusive.
+     * @return Index of the first non-zero value, or {@code to} if there is
+     * none.
+     */
+    int nextNoZeroIndex(int from, int to) {
+        int end = Math.min(to, maxNoZeroIndex + 1);
+        int index = from;
+        while (index < end) {
+            int arrayAreaIndex = index / UNIT_LENGTH;
+            byte[] bytes = byteArrayData.get(arrayAreaIndex);
+            int areaEnd = Math.min(end, (arrayAreaIndex + 1) * UNIT_LENGTH);
+            if (bytes == null) {
+                index = areaEnd;
+                continue;
+            }
+            for (; index < areaEnd; ++index) {
+                if (bytes[index - arrayAreaIndex * UNIT_LENGTH] != 0) {
+                    return index;
+                }
+            }
+        }
+        return to;
+    }
+
+    private int findMaxNoZeroIndex() {
         for (int areaIndex = byteArrayData.size(); areaIndex > 0; areaIndex--) {
             byte[] bytes = byteArrayData.get(areaIndex-1);
             if (bytes == null) {
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * XML fragments of a file written after the worksheet data, like comments or
+ * hyperlinks, set aside as rows are flushed. Fragments are buffered in memory,
+ * then moved to a temporary file, deflated, once the buffer is full. They are
+ * copied into their file with {@link #copyTo(Writer)}.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class FragmentSpill implements Closeable {
+
+    /**
+     * Number of bytes buffered before they are moved to the temporary file.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer buffer = new Writer(BUFFER_SIZE + 1024);
+    private Path file;
+    private Deflater deflater;
+    private OutputStream out;
+
+    /**
+     * Get the writer fragments are appended to. Call {@link #commit()} once
+     * fragments are appended.
+     *
+     * @return In-memory writer.
+     */
+    Writer writer() {
+        return buffer;
+    }
+
+    /**
+     * Move the buffered fragments to the temporary file if the buffer is
+     * full.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void commit() throws IOException {
+        if (buffer.length() >= BUFFER_SIZE) {
+            if (out == null) {
+                file = Files.createTempFile("fastexcel", ".fragments");
+                deflater = new Deflater(Deflater.BEST_SPEED, true);
+                out = new DeflaterOutputStream(Files.newOutputStream(file), deflater, 8192);
+            }
+            out.write(buffer.buffer(), 0, buffer.length());
+            buffer.reset();
+        }
+    }
+
+    /**
+     * Check whether no fragment was appended.
+     *
+     * @return {@code true} if empty.
+     */
+    boolean isEmpty() {
+        return out == null && buffer.length() == 0;
+    }
+
+    /**
+     * Copy the fragments, in the order they were appended. This can only be
+     * done once.
+     *
+     * @param w Output writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    void copyTo(Writer w) throws IOException {
+        if (out != null) {
+            out.close();
+            deflater.end();
+            out = null;
+            Inflater inflater = new Inflater(true);
+            try (InputStream in = new InflaterInputStream(Files.newInputStream(file), inflater, 8192)) {
+                byte[] b = new byte[8192];
+                int n;
+                while ((n = in.read(b)) > 0) {
+                    w.append(b, 0, n);
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+        w.append(buffer.buffer(), 0, buffer.length());
+        buffer.reset();
+    }
+
+    /**
+     * Discard the fragments and delete the temporary file, if any.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            deflater.end();
+            out = null;
+        }
+        if (file != null) {
+            Files.deleteIfExists(file);
+            file = null;
+        }
+    }
+}
@@ -19,17 +19,9 @@ import java.math.BigDecimal;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Map;
-import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-
-interface StylesFunction {
-
-    void applyStyles(Map<Integer, Integer> stylesMap);
-}
 
 /**
- * Generic helper class to set style elements on a cell or range of cells. This class
+ * Generic helper class to set style elements of cells. This class
  * implements the builder pattern to easily modify a bunch of attributes.<p>
  * For example:
  * <blockquote><pre>
@@ -40,9 +32,9 @@ interface StylesFunction {
 abstract class GenericStyleSetter<STYLE_SETTER extends GenericStyleSetter<STYLE_SETTER>> {
 
     /**
-     * Worksheet in which this styling is applied
+     * Workbook caching styles.
      */
-    private final Worksheet worksheet;
+    private final Workbook workbook;
     /**
      * Value formatting.
      */
@@ -51,18 +43,6 @@ abstract class GenericStyleSetter<STYLE_SETTER extends GenericStyleSetter<STYLE_
      * RGB fill color.
      */
     private String fillColor;
-    /**
-     * RGB color for shading of alternate rows.
-     */
-    private String alternateShadingFillColor;
-    /**
-     * RGB color for shading Nth rows.
-     */
-    private String shadingFillColor;
-    /**
-     * Shading row frequency.
-     */
-    private int eachNRows;
     /**
      * Bold flag.
      */
@@ -124,10 +104,10 @@ abstract class GenericStyleSetter<STYLE_SETTER extends GenericStyleSetter<STYLE_
     /**
      * Constructor.
      *
-     * @param worksheet Worksheet in which this styling is applied
+     * @param workbook Workbook caching styles.
      */
-    GenericStyleSetter(Worksheet worksheet) {
-        this.worksheet = worksheet;
+    GenericStyleSetter(Workbook workbook) {
+        this.workbook = workbook;
     }
 
     protected abstract STYLE_SETTER getThis();
@@ -156,30 +136,6 @@ abstract class GenericStyleSetter<STYLE_SETTER extends GenericStyleSetter<STYLE_
         return getThis();
     }
 
-    /**
-     * Shade alternate rows.
-     *
-     * @param rgb RGB shading color.
-     * @return This style setter.
-     */
-    public STYLE_SETTER shadeAlternateRows(String rgb) {
-        this.alternateShadingFillColor = rgb;
-        return getThis();
-    }
-
-    /**
-     * Shade Nth rows.
-     *
-     * @param rgb RGB shading color.
-     * @param eachNRows shading frequency.
-     * @return This style setter.
-     */
-    public STYLE_SETTER shadeRows(String rgb, int eachNRows) {
-        this.shadingFillColor = rgb;
-        this.eachNRows = eachNRows;
-        return getThis();
-    }
-
     /**
      * Set font color.
      *
@@ -463,12 +419,10 @@ abstract class GenericStyleSetter<STYLE_SETTER extends GenericStyleSetter<STYLE_
      * Apply style elements. <b>Do not forget to call this method when you are
      * done otherwise style changes are lost!</b>
      *
-     * @param shadingEnabled Whether shading should be enabled in this styling
-     * @param currentStyles Set of current styles from styled property
-     * @param stylesFunction A function which applies merged newStyles to styled property
+     * @param stylesFunction A function which applies the merge of current
+     * styles with style elements to styled property
      */
-    protected void setStyle(boolean shadingEnabled, Set<Integer> currentStyles,
-                    StylesFunction stylesFunction) {
+    protected void setStyle(StylesFunction stylesFunction) {
         Alignment alignment;
         if (horizontalAlignment != null || verticalAlignment != null || wrapText || rotation != 0 || indent  != 0) {
             alignment = new Alignment(horizontalAlignment, verticalAlignment, wrapText, rotation, indent);
@@ -498,29 +452,19 @@ abstract class GenericStyleSetter<STYLE_SETTER extends GenericStyleSetter<STYLE_
             protection = null;
         }
 
-        // Compute a map giving new styles for current styles
-        Map<Integer, Integer> newStyles = currentStyles.stream().collect(Collectors.toMap(Function.identity(), s -> worksheet.getWorkbook().mergeAndCacheStyle(s, valueFormatting, font, fill, border, alignment, protection)));
-
-        // Apply styles
-        stylesFunction.applyStyles(newStyles);
-
-        if (shadingEnabled) {
-            // Shading color for alternate rows is cached separately
-            if (alternateShadingFillColor != null) {
-                getRange().shadeAlternateRows(Fill.fromColor(alternateShadingFillColor, false));
-            }
-
-            if (shadingFillColor != null) {
-                getRange().shadeRows(Fill.fromColor(shadingFillColor, false), eachNRows);
-            }
-        }
+        // Apply styles, merging current styles with style elements
+        String numberingFormat = valueFormatting;
+        Border styleBorder = border;
+        stylesFunction.applyStyles(s -> workbook.mergeAndCacheStyle(s, numberingFormat, font, fill, styleBorder, alignment, protection));
     }
 
     /**
-     * Apply style elements conditionally
-     * @param conditionalFormattingRule Conditional formatting rule to apply
+     * Cache style elements as a differential format, applied by conditional
+     * formatting.
+     *
+     * @return Differential format index.
      */
-    public void set(ConditionalFormattingRule conditionalFormattingRule) {
+    int cacheDifferentialFormat() {
         Alignment alignment = null;
         if (horizontalAlignment != null || verticalAlignment != null || wrapText || rotation != 0 || indent != 0) {
             alignment = new Alignment(horizontalAlignment, verticalAlignment, wrapText, rotation, indent);
@@ -538,11 +482,6 @@ abstract class GenericStyleSetter<STYLE_SETTER extends GenericStyleSetter<STYLE_
             protection = new Protection(protectionOptions);
         }
 
-        int dxfId = worksheet.getWorkbook().cacheDifferentialFormat(new DifferentialFormat(valueFormatting, font, fill, border, alignment, protection));
-        conditionalFormattingRule.setDxfId(dxfId);
-        ConditionalFormatting conditionalFormatting = new ConditionalFormatting(getRange(), conditionalFormattingRule);
-        worksheet.addConditionalFormatting(conditionalFormatting);
+        return workbook.cacheDifferentialFormat(new DifferentialFormat(valueFormatting, font, fill, border, alignment, protection));
     }
-
-    protected abstract Range getRange();
 }
@@ -95,17 +95,28 @@ public class ListFormulaDataValidation implements DataValidation {
         return this;
     }
 
+    @Override
+    public Range getRange() {
+        return range;
+    }
+
     /**
-     * Write this dataValidation as an XML element.
+     * Write this dataValidation as an XML element, applied to the given
+     * cells instead of its range. Relative references of its formula are
+     * moved so that they are relative to the given cell instead of the
+     * top-left cell of its range.
      *
      * @param w Output writer.
+     * @param sqref Space-separated references of the cells.
+     * @param top Row of the cell formulas are relative to.
+     * @param left Column of the cell formulas are relative to.
      * @throws IOException If an I/O error occurs.
      */
     @Override
-    public void write(Writer w) throws IOException {
+    public void write(Writer w, String sqref, int top, int left) throws IOException {
         w
                 .append("<dataValidation sqref=\"")
-                .append(range.toString())
+                .append(sqref)
                 .append("\" type=\"")
                 .append(TYPE)
                 .append("\" allowBlank=\"")
@@ -121,7 +132,7 @@ public class ListFormulaDataValidation implements DataValidation {
                 .append("\" error=\"")
                 .append(error)
                 .append("\"><formula1>")
-                .append(formula.getExpression())
+                .append(RelativeReferences.move(formula.getExpression(), top - range.getTop(), left - range.getLeft()))
                 .append("</formula1></dataValidation>");
     }
 }
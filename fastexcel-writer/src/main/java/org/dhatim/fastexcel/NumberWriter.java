@@ -0,0 +1,509 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.math.BigInteger;
+
+/**
+ * Formats numbers as ASCII characters straight into a byte buffer.
+ * <p>
+ * Floating point values are converted to the shortest decimal which rounds
+ * to the same binary value, using the Schubfach algorithm by Raffaello
+ * Giulietti ("The Schubfach way to render doubles", 2020). Values are written
+ * in plain notation when their decimal exponent is between -3 and 6, and in
+ * scientific notation otherwise, like {@link Double#toString(double)} does,
+ * except integral values have no trailing {@code .0}, e.g. {@code 1}
+ * instead of {@code 1.0} and {@code 1E10} instead of {@code 1.0E10}.
+ * <p>
+ * All methods take the buffer and the position where to start writing, and
+ * return the position after the last written byte. Callers must make sure
+ * the buffer has room for {@link #MAX_LENGTH} bytes.
+ */
+final class NumberWriter {
+
+    /**
+     * Maximum number of bytes written by a single call.
+     */
+    static final int MAX_LENGTH = 32;
+
+    private static final byte[] DIGIT_PAIRS = new byte[200];
+    private static final long[] POW10 = new long[19];
+
+    private static final long MASK_63 = 0x7fff_ffff_ffff_ffffL;
+    private static final long MASK_32 = 0xffff_ffffL;
+
+    private static final byte[] NAN = Writer.bytes("NaN");
+    private static final byte[] INFINITY = Writer.bytes("Infinity");
+    private static final byte[] LONG_MIN_VALUE = Writer.bytes(Long.toString(Long.MIN_VALUE));
+
+    // Binary64 (double) parameters
+    private static final int D_P = 53;
+    private static final int D_Q_MIN = -1074;
+    private static final long D_C_MIN = 1L << (D_P - 1);
+    private static final int D_BQ_MASK = 0x7ff;
+    private static final long D_T_MASK = D_C_MIN - 1;
+    private static final long D_C_TINY = 3;
+
+    // Binary32 (float) parameters
+    private static final int F_P = 24;
+    private static final int F_Q_MIN = -149;
+    private static final int F_C_MIN = 1 << (F_P - 1);
+    private static final int F_BQ_MASK = 0xff;
+    private static final int F_T_MASK = F_C_MIN - 1;
+    private static final int F_C_TINY = 8;
+
+    /**
+     * Smallest and largest decimal exponents for which {@link #G} holds
+     * values.
+     */
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+
+    /**
+     * For each k, the 126 bits of g = floor(10^-k 2^(125 - floor(log2(10^-k)))) + 1,
+     * split into its 63 higher bits followed by its 63 lower bits.
+     */
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+    static {
+        for (int i = 0; i < 100; ++i) {
+            DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+            DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+        }
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; ++i) {
+            POW10[i] = 10 * POW10[i - 1];
+        }
+        for (int k = K_MIN; k <= K_MAX; ++k) {
+            int shift = 125 - flog2pow10(-k);
+            BigInteger g;
+            if (k <= 0) {
+                BigInteger p = BigInteger.TEN.pow(-k);
+                g = shift >= 0 ? p.shiftLeft(shift) : p.shiftRight(-shift);
+            } else {
+                g = BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+            }
+            g = g.add(BigInteger.ONE);
+            G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            G[2 * (k - K_MIN) + 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private NumberWriter() {
+    }
+
+    /**
+     * Write a long value.
+     *
+     * @param buf Buffer.
+     * @param pos Position of the first byte.
+     * @param n Value.
+     * @return Position after the last byte.
+     */
+    static int writeLong(byte[] buf, int pos, long n) {
+        if (n < 0) {
+            if (n == Long.MIN_VALUE) {
+                System.arraycopy(LONG_MIN_VALUE, 0, buf, pos, LONG_MIN_VALUE.length);
+                return pos + LONG_MIN_VALUE.length;
+            }
+            buf[pos++] = '-';
+            n = -n;
+        }
+        int end = pos + digitCount(n);
+        writeDigits(buf, end, n);
+        return end;
+    }
+
+    /**
+     * Write a decimal value in plain notation, i.e. {@code unscaled * 10^-scale},
+     * like {@link java.math.BigDecimal#toPlainString()} does.
+     *
+     * @param buf Buffer.
+     * @param pos Position of the first byte.
+     * @param unscaled Unscaled value, {@code Long.MIN_VALUE} is not supported.
+     * @param scale Scale, between 0 and 18.
+     * @return Position after the last byte.
+     */
+    static int writeDecimal(byte[] buf, int pos, long unscaled, int scale) {
+        if (scale == 0) {
+            return writeLong(buf, pos, unscaled);
+        }
+        if (unscaled < 0) {
+            buf[pos++] = '-';
+            unscaled = -unscaled;
+        }
+        int n = digitCount(unscaled);
+        if (n <= scale) {
+            buf[pos++] = '0';
+            buf[pos++] = '.';
+            for (int i = n; i < scale; ++i) {
+                buf[pos++] = '0';
+            }
+            int end = pos + n;
+            writeDigits(buf, end, unscaled);
+            return end;
+        }
+        return writeWithPoint(buf, pos, unscaled, n, n - scale);
+    }
+
+    /**
+     * Write a double value, using the shortest decimal representation which
+     * reads back as the same value.
+     *
+     * @param buf Buffer.
+     * @param pos Position of the first byte.
+     * @param v Value.
+     * @return Position after the last byte.
+     */
+    static int writeDouble(byte[] buf, int pos, double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & D_T_MASK;
+        int bq = (int) (bits >>> (D_P - 1)) & D_BQ_MASK;
+        if (bq == D_BQ_MASK) {
+            return writeNonFinite(buf, pos, t != 0, bits < 0);
+        }
+        if (bq == 0 && t == 0) {
+            buf[pos] = '0';
+            return pos + 1;
+        }
+        if (bits < 0) {
+            buf[pos++] = '-';
+        }
+        if (bq != 0) {
+            // Normal value: v = c 2^q with q = -mq
+            int mq = -D_Q_MIN + 1 - bq;
+            long c = D_C_MIN | t;
+            if (0 < mq && mq < D_P) {
+                // Fast path for integral values
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return writeFloating(buf, pos, f, 0);
+                }
+            }
+            return toDecimal(buf, pos, -mq, c, 0);
+        }
+        // Subnormal value
+        return t < D_C_TINY
+                ? toDecimal(buf, pos, D_Q_MIN, 10 * t, -1)
+                : toDecimal(buf, pos, D_Q_MIN, t, 0);
+    }
+
+    /**
+     * Write a float value, using the shortest decimal representation which
+     * reads back as the same value.
+     *
+     * @param buf Buffer.
+     * @param pos Position of the first byte.
+     * @param v Value.
+     * @return Position after the last byte.
+     */
+    static int writeFloat(byte[] buf, int pos, float v) {
+        int bits = Float.floatToRawIntBits(v);
+        int t = bits & F_T_MASK;
+        int bq = (bits >>> (F_P - 1)) & F_BQ_MASK;
+        if (bq == F_BQ_MASK) {
+            return writeNonFinite(buf, pos, t != 0, bits < 0);
+        }
+        if (bq == 0 && t == 0) {
+            buf[pos] = '0';
+            return pos + 1;
+        }
+        if (bits < 0) {
+            buf[pos++] = '-';
+        }
+        if (bq != 0) {
+            int mq = -F_Q_MIN + 1 - bq;
+            int c = F_C_MIN | t;
+            if (0 < mq && mq < F_P) {
+                int f = c >> mq;
+                if (f << mq == c) {
+                    return writeFloating(buf, pos, f, 0);
+                }
+            }
+            return toDecimal(buf, pos, -mq, c, 0);
+        }
+        return t < F_C_TINY
+                ? toDecimal(buf, pos, F_Q_MIN, 10 * t, -1)
+                : toDecimal(buf, pos, F_Q_MIN, t, 0);
+    }
+
+    private static int writeNonFinite(byte[] buf, int pos, boolean nan, boolean negative) {
+        byte[] s;
+        if (nan) {
+            s = NAN;
+        } else {
+            if (negative) {
+                buf[pos++] = '-';
+            }
+            s = INFINITY;
+        }
+        System.arraycopy(s, 0, buf, pos, s.length);
+        return pos + s.length;
+    }
+
+    /**
+     * Schubfach core for doubles: find the shortest decimal in the rounding
+     * interval of {@code c 2^q}, picking the closest one when there are
+     * several.
+     */
+    private static int toDecimal(byte[] buf, int pos, int q, long c, int dk) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != D_C_MIN || q == D_Q_MIN) {
+            // Regular spacing
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // Irregular spacing
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+
+        long g1 = G[2 * (k - K_MIN)];
+        long g0 = G[2 * (k - K_MIN) + 1];
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // sp10 = 10 floor(s / 10)
+            long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return writeFloating(buf, pos, upin ? sp10 : tp10, k);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return writeFloating(buf, pos, uin ? s : t, k + dk);
+        }
+        // Both s and t are in the interval: pick the closest one, or the even one on ties
+        long cmp = vb - ((s + t) << 1);
+        return writeFloating(buf, pos, cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk);
+    }
+
+    /**
+     * Schubfach core for floats, see {@link #toDecimal(byte[], int, int, long, int)}.
+     */
+    private static int toDecimal(byte[] buf, int pos, int q, int c, int dk) {
+        int out = c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != F_C_MIN || q == F_Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 33;
+
+        long g = G[2 * (k - K_MIN)] + 1;
+
+        int vb = rop(g, cb << h);
+        int vbl = rop(g, cbl << h);
+        int vbr = rop(g, cbr << h);
+
+        int s = vb >> 2;
+        if (s >= 100) {
+            // sp10 = 10 floor(s / 10)
+            int sp10 = 10 * (int) (s * 1_717_986_919L >>> 34);
+            int tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return writeFloating(buf, pos, upin ? sp10 : tp10, k);
+            }
+        }
+        int t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return writeFloating(buf, pos, uin ? s : t, k + dk);
+        }
+        int cmp = vb - ((s + t) << 1);
+        return writeFloating(buf, pos, cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk);
+    }
+
+    /**
+     * Write the positive decimal {@code f 10^e}, in plain or scientific
+     * notation depending on its magnitude.
+     *
+     * @param buf Buffer.
+     * @param pos Position of the first byte.
+     * @param f Decimal significand, strictly positive.
+     * @param e Decimal exponent.
+     * @return Position after the last byte.
+     */
+    private static int writeFloating(byte[] buf, int pos, long f, int e) {
+        while (f % 10 == 0) {
+            f /= 10;
+            ++e;
+        }
+        int n = digitCount(f);
+        // Exponent in scientific notation
+        int exp = n + e - 1;
+        if (exp >= -3 && exp < 7) {
+            if (e >= 0) {
+                int end = pos + n;
+                writeDigits(buf, end, f);
+                for (int i = 0; i < e; ++i) {
+                    buf[end++] = '0';
+                }
+                return end;
+            } else if (exp >= 0) {
+                return writeWithPoint(buf, pos, f, n, exp + 1);
+            } else {
+                buf[pos++] = '0';
+                buf[pos++] = '.';
+                for (int i = -1; i > exp; --i) {
+                    buf[pos++] = '0';
+                }
+                int end = pos + n;
+                writeDigits(buf, end, f);
+                return end;
+            }
+        }
+        if (n > 1) {
+            pos = writeWithPoint(buf, pos, f, n, 1);
+        } else {
+            buf[pos++] = (byte) ('0' + f);
+        }
+        buf[pos++] = 'E';
+        return writeLong(buf, pos, exp);
+    }
+
+    /**
+     * Write the digits of a positive value with a decimal point.
+     *
+     * @param buf Buffer.
+     * @param pos Position of the first byte.
+     * @param f Value.
+     * @param n Number of digits of {@code f}.
+     * @param intDigits Number of digits before the decimal point.
+     * @return Position after the last byte.
+     */
+    private static int writeWithPoint(byte[] buf, int pos, long f, int n, int intDigits) {
+        int end = pos + n + 1;
+        writeDigits(buf, end, f);
+        System.arraycopy(buf, pos + 1, buf, pos, intDigits);
+        buf[pos + intDigits] = '.';
+        return end;
+    }
+
+    /**
+     * Number of decimal digits of a non-negative value.
+     */
+    private static int digitCount(long n) {
+        if (n < 10) {
+            return 1;
+        }
+        int d = (64 - Long.numberOfLeadingZeros(n)) * 1233 >>> 12;
+        return d >= POW10.length || n >= POW10[d] ? d + 1 : d;
+    }
+
+    /**
+     * Write the digits of a non-negative value, two at a time, backwards from
+     * {@code end}.
+     */
+    private static void writeDigits(byte[] buf, int end, long n) {
+        while (n > Integer.MAX_VALUE) {
+            long q = n / 100;
+            int r = (int) (n - q * 100) << 1;
+            buf[--end] = DIGIT_PAIRS[r + 1];
+            buf[--end] = DIGIT_PAIRS[r];
+            n = q;
+        }
+        int i = (int) n;
+        while (i >= 100) {
+            int q = i / 100;
+            int r = (i - q * 100) << 1;
+            buf[--end] = DIGIT_PAIRS[r + 1];
+            buf[--end] = DIGIT_PAIRS[r];
+            i = q;
+        }
+        if (i >= 10) {
+            buf[--end] = DIGIT_PAIRS[(i << 1) + 1];
+            buf[--end] = DIGIT_PAIRS[i << 1];
+        } else {
+            buf[--end] = (byte) ('0' + i);
+        }
+    }
+
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+    }
+
+    private static int rop(long g, long cp) {
+        long x1 = multiplyHigh(g, cp);
+        long vbp = x1 >>> 31;
+        return (int) (vbp | ((x1 & MASK_32) + MASK_32) >>> 32);
+    }
+
+    /**
+     * Same as {@code Math.multiplyHigh}, which is not available in Java 8.
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & MASK_32;
+        long y1 = y >> 32;
+        long y2 = y & MASK_32;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & MASK_32;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /**
+     * floor(log10(2^e))
+     */
+    private static int flog10pow2(int e) {
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    /**
+     * floor(log10(3/4 2^e))
+     */
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661_971_961_083L - 274_743_187_321L >> 41);
+    }
+
+    /**
+     * floor(log2(10^e))
+     */
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+}
@@ -16,6 +16,7 @@
 package org.dhatim.fastexcel;
 
 import java.util.*;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.IntStream;
 
 /**
@@ -258,33 +259,14 @@ public class Range implements Ref {
         this.folderScope = folderScope;
     }
 
-    /**
-     * Return the set of styles used by the cells in this range.
-     *
-     * @return Set of styles.
-     */
-    Set<Integer> getStyles() {
-        Set<Integer> result = new HashSet<>();
-        for (int r = top; r <= bottom; ++r) {
-            for (int c = left; c <= right; ++c) {
-                result.add(getWorksheet().cell(r, c).getStyle());
-            }
-        }
-        return result;
-    }
-
     /**
      * Apply new (merged) styles to the cells in this range.
      *
-     * @param styles Map giving new style for each old style.
+     * @param merge Function merging the current style of a cell with new
+     * style elements.
      */
-    void applyStyle(Map<Integer, Integer> styles) {
-        for (int r = top; r <= bottom; ++r) {
-            for (int c = left; c <= right; ++c) {
-                Cell cell = getWorksheet().cell(r, c);
-                cell.setStyle(styles.get(cell.getStyle()));
-            }
-        }
+    void applyStyle(IntUnaryOperator merge) {
+        worksheet.applyStyle(top, left, bottom, right, merge);
     }
     public void setHyperlink(HyperLink hyperLink){
         this.worksheet.value(top,left,hyperLink.getDisplayStr());
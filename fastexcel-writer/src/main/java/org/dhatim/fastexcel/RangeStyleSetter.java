@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+/**
+ * Generic helper class to set style elements on a range of cells of a
+ * worksheet, adding row shading and conditional formatting to the style
+ * elements of cells.
+ */
+abstract class RangeStyleSetter<STYLE_SETTER extends RangeStyleSetter<STYLE_SETTER>> extends GenericStyleSetter<STYLE_SETTER> {
+
+    /**
+     * Worksheet in which this styling is applied
+     */
+    private final Worksheet worksheet;
+    /**
+     * RGB color for shading of alternate rows.
+     */
+    private String alternateShadingFillColor;
+    /**
+     * RGB color for shading Nth rows.
+     */
+    private String shadingFillColor;
+    /**
+     * Shading row frequency.
+     */
+    private int eachNRows;
+
+    /**
+     * Constructor.
+     *
+     * @param worksheet Worksheet in which this styling is applied
+     */
+    RangeStyleSetter(Worksheet worksheet) {
+        super(worksheet.getWorkbook());
+        this.worksheet = worksheet;
+    }
+
+    /**
+     * Shade alternate rows.
+     *
+     * @param rgb RGB shading color.
+     * @return This style setter.
+     */
+    public STYLE_SETTER shadeAlternateRows(String rgb) {
+        this.alternateShadingFillColor = rgb;
+        return getThis();
+    }
+
+    /**
+     * Shade Nth rows.
+     *
+     * @param rgb RGB shading color.
+     * @param eachNRows shading frequency.
+     * @return This style setter.
+     */
+    public STYLE_SETTER shadeRows(String rgb, int eachNRows) {
+        this.shadingFillColor = rgb;
+        this.eachNRows = eachNRows;
+        return getThis();
+    }
+
+    /**
+     * Apply style elements. <b>Do not forget to call this method when you are
+     * done otherwise style changes are lost!</b>
+     *
+     * @param shadingEnabled Whether shading should be enabled in this styling
+     * @param stylesFunction A function which applies the merge of current
+     * styles with style elements to styled property
+     */
+    protected void setStyle(boolean shadingEnabled, StylesFunction stylesFunction) {
+        setStyle(stylesFunction);
+        if (shadingEnabled) {
+            // Shading color for alternate rows is cached separately
+            if (alternateShadingFillColor != null) {
+                getRange().shadeAlternateRows(Fill.fromColor(alternateShadingFillColor, false));
+            }
+
+            if (shadingFillColor != null) {
+                getRange().shadeRows(Fill.fromColor(shadingFillColor, false), eachNRows);
+            }
+        }
+    }
+
+    /**
+     * Apply style elements conditionally
+     * @param conditionalFormattingRule Conditional formatting rule to apply
+     */
+    public void set(ConditionalFormattingRule conditionalFormattingRule) {
+        conditionalFormattingRule.setDxfId(cacheDifferentialFormat());
+        ConditionalFormatting conditionalFormatting = new ConditionalFormatting(getRange(), conditionalFormattingRule);
+        worksheet.addConditionalFormatting(conditionalFormatting);
+    }
+
+    protected abstract Range getRange();
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Union of cell ranges, coalesced into as few rectangles as practical for the
+ * {@code sqref} attribute of conditional formattings and data validations.
+ * Ranges spanning the same columns are merged when their rows overlap or are
+ * adjacent, then ranges spanning the same rows are merged when their columns
+ * overlap or are adjacent, and ranges contained in another are dropped, and so
+ * on until no more ranges can be merged.
+ */
+final class RangeUnion {
+
+    private RangeUnion() {
+    }
+
+    /**
+     * Get the union of ranges.
+     *
+     * @param ranges Ranges, possibly overlapping.
+     * @return Rectangles covering the ranges, none of which contains another,
+     * from top to bottom and left to right.
+     */
+    static List<Range> union(List<Range> ranges) {
+        if (ranges.size() == 1) {
+            return ranges;
+        }
+        List<int[]> rects = new ArrayList<>(ranges.size());
+        for (Range range : ranges) {
+            rects.add(new int[]{range.getTop(), range.getLeft(), range.getBottom(), range.getRight()});
+        }
+        int size;
+        do {
+            size = rects.size();
+            rects = mergeRows(rects);
+            rects = mergeColumns(rects);
+            rects = dropContained(rects);
+        } while (rects.size() < size);
+        rects.sort(Comparator.<int[]>comparingInt(r -> r[0]).thenComparingInt(r -> r[1]));
+        Worksheet worksheet = ranges.get(0).getWorksheet();
+        List<Range> union = new ArrayList<>(rects.size());
+        for (int[] rect : rects) {
+            union.add(new Range(worksheet, rect[0], rect[1], rect[2], rect[3]));
+        }
+        return union;
+    }
+
+    /**
+     * Split the union of ranges so that formulas can be read relative to the
+     * top-left cell of the first range of each part. Applications disagree on
+     * whether the formulas of a multi-range {@code sqref} are relative to its
+     * first range or to its bounding box, so the union is kept whole only
+     * when both have the same top-left cell; otherwise each range is a part.
+     *
+     * @param union Union of ranges, as returned by {@link #union(List)}.
+     * @return Parts of the union.
+     */
+    static List<List<Range>> anchoredParts(List<Range> union) {
+        int left = Integer.MAX_VALUE;
+        for (Range range : union) {
+            left = Math.min(left, range.getLeft());
+        }
+        if (union.get(0).getLeft() == left) {
+            return Collections.singletonList(union);
+        }
+        List<List<Range>> parts = new ArrayList<>(union.size());
+        for (Range range : union) {
+            parts.add(Collections.singletonList(range));
+        }
+        return parts;
+    }
+
+    /**
+     * Get the space-separated references of ranges.
+     *
+     * @param ranges Ranges.
+     * @return {@code sqref} attribute value.
+     */
+    static String sqref(List<Range> ranges) {
+        if (ranges.size() == 1) {
+            return ranges.get(0).toString();
+        }
+        StringBuilder sqref = new StringBuilder();
+        for (Range range : ranges) {
+            if (sqref.length() > 0) {
+                sqref.append(' ');
+            }
+            sqref.append(range);
+        }
+        return sqref.toString();
+    }
+
+    /**
+     * Merge rectangles spanning the same columns whose rows overlap or are
+     * adjacent.
+     */
+    private static List<int[]> mergeRows(List<int[]> rects) {
+        rects.sort(Comparator.<int[]>comparingInt(r -> r[1]).thenComparingInt(r -> r[3]).thenComparingInt(r -> r[0]));
+        List<int[]> merged = new ArrayList<>(rects.size());
+        int[] last = null;
+        for (int[] rect : rects) {
+            if (last != null && last[1] == rect[1] && last[3] == rect[3] && rect[0] <= last[2] + 1) {
+                last[2] = Math.max(last[2], rect[2]);
+            } else {
+                last = rect;
+                merged.add(rect);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Merge rectangles spanning the same rows whose columns overlap or are
+     * adjacent.
+     */
+    private static List<int[]> mergeColumns(List<int[]> rects) {
+        rects.sort(Comparator.<int[]>comparingInt(r -> r[0]).thenComparingInt(r -> r[2]).thenComparingInt(r -> r[1]));
+        List<int[]> merged = new ArrayList<>(rects.size());
+        int[] last = null;
+        for (int[] rect : rects) {
+            if (last != null && last[0] == rect[0] && last[2] == rect[2] && rect[1] <= last[3] + 1) {
+                last[3] = Math.max(last[3], rect[3]);
+            } else {
+                last = rect;
+                merged.add(rect);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Drop rectangles contained in another. Rectangles are swept from top to
+     * bottom, tallest first, so that a rectangle can only be contained in one
+     * seen before it whose rows have not ended yet.
+     */
+    private static List<int[]> dropContained(List<int[]> rects) {
+        rects.sort(Comparator.<int[]>comparingInt(r -> r[0]).thenComparingInt(r -> -r[2])
+                .thenComparingInt(r -> r[1]).thenComparingInt(r -> -r[3]));
+        List<int[]> kept = new ArrayList<>(rects.size());
+        List<int[]> active = new ArrayList<>();
+        for (int[] rect : rects) {
+            boolean contained = false;
+            for (int i = active.size() - 1; i >= 0 && !contained; --i) {
+                int[] other = active.get(i);
+                if (other[2] < rect[0]) {
+                    active.set(i, active.get(active.size() - 1));
+                    active.remove(active.size() - 1);
+                } else {
+                    contained = other[2] >= rect[2] && other[1] <= rect[1] && other[3] >= rect[3];
+                }
+            }
+            if (!contained) {
+                kept.add(rect);
+                active.add(rect);
+            }
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+/**
+ * Spatial index of cell rectangles, such as merged ranges, tables or styled
+ * ranges, each with a value. Rectangles are kept in a treap ordered by their
+ * top left corner, each node holding the bounding box of its subtree, so that
+ * queries only visit the subtrees which may contain matching rectangles:
+ * O(log n) on average for rectangles laid out in rows or columns, plus the
+ * number of matches for overlapping ones.
+ *
+ * @param <T> Type of the values of rectangles.
+ */
+final class RectangleIndex<T> {
+
+    private static final class Node<T> {
+
+        final int top;
+        final int left;
+        final int bottom;
+        final int right;
+        final T value;
+        final int priority;
+        Node<T> lower;
+        Node<T> higher;
+        /**
+         * Bounding box of the rectangles of the subtree, except its top,
+         * which is bounded by the order of the tree.
+         */
+        int maxBottom;
+        int minLeft;
+        int maxRight;
+        /**
+         * Bottom of the rectangle of the subtree ending first.
+         */
+        int minBottom;
+
+        Node(int top, int left, int bottom, int right, T value, int priority) {
+            this.top = top;
+            this.left = left;
+            this.bottom = bottom;
+            this.right = right;
+            this.value = value;
+            this.priority = priority;
+            update();
+        }
+
+        boolean isBefore(int t, int l) {
+            return top < t || top == t && left < l;
+        }
+
+        void update() {
+            maxBottom = bottom;
+            minLeft = left;
+            maxRight = right;
+            minBottom = bottom;
+            include(lower);
+            include(higher);
+        }
+
+        private void include(Node<T> child) {
+            if (child != null) {
+                maxBottom = Math.max(maxBottom, child.maxBottom);
+                minLeft = Math.min(minLeft, child.minLeft);
+                maxRight = Math.max(maxRight, child.maxRight);
+                minBottom = Math.min(minBottom, child.minBottom);
+            }
+        }
+    }
+
+    private Node<T> root;
+    /**
+     * State of the generator of node priorities, seeded so that the shape of
+     * the tree is reproducible.
+     */
+    private int seed = 0x2545F491;
+
+    /**
+     * Check whether this index holds no rectangle.
+     *
+     * @return {@code true} if empty.
+     */
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Add a rectangle.
+     *
+     * @param top Zero-based number of the top row.
+     * @param left Zero-based number of the left column.
+     * @param bottom Zero-based number of the bottom row.
+     * @param right Zero-based number of the right column.
+     * @param value Value of the rectangle.
+     */
+    void add(int top, int left, int bottom, int right, T value) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        root = insert(root, new Node<>(top, left, bottom, right, value, seed));
+    }
+
+    private static <T> Node<T> insert(Node<T> node, Node<T> added) {
+        if (node == null) {
+            return added;
+        }
+        if (added.isBefore(node.top, node.left)) {
+            node.lower = insert(node.lower, added);
+            if (node.lower.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.higher = insert(node.higher, added);
+            if (node.higher.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private static <T> Node<T> rotateRight(Node<T> node) {
+        Node<T> pivot = node.lower;
+        node.lower = pivot.higher;
+        node.update();
+        pivot.higher = node;
+        return pivot;
+    }
+
+    private static <T> Node<T> rotateLeft(Node<T> node) {
+        Node<T> pivot = node.higher;
+        node.higher = pivot.lower;
+        node.update();
+        pivot.lower = node;
+        return pivot;
+    }
+
+    /**
+     * Check whether a rectangle overlaps a rectangle of this index.
+     *
+     * @param top Zero-based number of the top row.
+     * @param left Zero-based number of the left column.
+     * @param bottom Zero-based number of the bottom row.
+     * @param right Zero-based number of the right column.
+     * @return {@code true} if at least one cell belongs to both.
+     */
+    boolean overlaps(int top, int left, int bottom, int right) {
+        return overlaps(root, top, left, bottom, right);
+    }
+
+    private static boolean overlaps(Node<?> node, int top, int left, int bottom, int right) {
+        while (node != null && node.maxBottom >= top && node.maxRight >= left && node.minLeft <= right) {
+            if (node.top <= bottom && node.bottom >= top && node.left <= right && node.right >= left) {
+                return true;
+            }
+            if (overlaps(node.lower, top, left, bottom, right)) {
+                return true;
+            }
+            // Rectangles of the higher subtree start at or below this one
+            node = node.top <= bottom ? node.higher : null;
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a cell belongs to a rectangle of this index.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @return {@code true} if the cell is covered.
+     */
+    boolean contains(int r, int c) {
+        return overlaps(root, r, c, r, c);
+    }
+
+    /**
+     * Visit the values of the rectangles overlapping a rectangle, in no
+     * particular order.
+     *
+     * @param top Zero-based number of the top row.
+     * @param left Zero-based number of the left column.
+     * @param bottom Zero-based number of the bottom row.
+     * @param right Zero-based number of the right column.
+     * @param action Action called with each value.
+     */
+    void forEachOverlapping(int top, int left, int bottom, int right, Consumer<? super T> action) {
+        forEachOverlapping(root, top, left, bottom, right, action);
+    }
+
+    private static <T> void forEachOverlapping(Node<T> node, int top, int left, int bottom, int right, Consumer<? super T> action) {
+        while (node != null && node.maxBottom >= top && node.maxRight >= left && node.minLeft <= right) {
+            if (node.top <= bottom && node.bottom >= top && node.left <= right && node.right >= left) {
+                action.accept(node.value);
+            }
+            forEachOverlapping(node.lower, top, left, bottom, right, action);
+            node = node.top <= bottom ? node.higher : null;
+        }
+    }
+
+    /**
+     * Get the columns of a row covered by the rectangles of this index.
+     *
+     * @param r Zero-based row number.
+     * @param columns Set of columns, to which the covered columns are added.
+     */
+    void coveredColumns(int r, BitSet columns) {
+        coveredColumns(root, r, columns);
+    }
+
+    private static void coveredColumns(Node<?> node, int r, BitSet columns) {
+        while (node != null && node.maxBottom >= r) {
+            if (node.top <= r && node.bottom >= r) {
+                columns.set(node.left, node.right + 1);
+            }
+            coveredColumns(node.lower, r, columns);
+            node = node.top <= r ? node.higher : null;
+        }
+    }
+
+    /**
+     * Remove the rectangles ending above a row. Only the subtrees holding
+     * such rectangles are visited.
+     *
+     * @param r Zero-based row number.
+     */
+    void removeRowsBefore(int r) {
+        root = removeRowsBefore(root, r);
+    }
+
+    private static <T> Node<T> removeRowsBefore(Node<T> node, int r) {
+        if (node == null || node.minBottom >= r) {
+            return node;
+        }
+        if (node.maxBottom < r) {
+            return null;
+        }
+        node.lower = removeRowsBefore(node.lower, r);
+        node.higher = removeRowsBefore(node.higher, r);
+        if (node.bottom < r) {
+            return join(node.lower, node.higher);
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * Join two treaps, the rectangles of the first one being ordered before
+     * the ones of the second one.
+     */
+    private static <T> Node<T> join(Node<T> lower, Node<T> higher) {
+        if (lower == null) {
+            return higher;
+        } else if (higher == null) {
+            return lower;
+        } else if (lower.priority > higher.priority) {
+            lower.higher = join(lower.higher, higher);
+            lower.update();
+            return lower;
+        } else {
+            higher.lower = join(lower, higher.lower);
+            higher.update();
+            return higher;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import static org.dhatim.fastexcel.Worksheet.MAX_COLS;
+import static org.dhatim.fastexcel.Worksheet.MAX_ROWS;
+
+/**
+ * Relative cell references in A1-style formulas, such as those of conditional
+ * formattings and data validations, which are read relative to the top-left
+ * cell of the range they apply to.
+ * <p>
+ * Moving references wraps around the edges of the sheet, as Excel does when it
+ * evaluates such a formula for other cells of the range, so that a reference
+ * moved back and forth is unchanged. Absolute rows and columns, string
+ * literals, quoted sheet names, structured references and names are left
+ * unchanged.
+ */
+final class RelativeReferences {
+
+    private static final int COLUMN = 1;
+    private static final int ROW = 2;
+
+    private RelativeReferences() {
+    }
+
+    /**
+     * Move the relative references of a formula.
+     *
+     * @param formula Formula expression.
+     * @param rows Number of rows to move references down, or up if negative.
+     * @param columns Number of columns to move references right, or left if
+     * negative.
+     * @return Formula expression with moved references.
+     */
+    static String move(String formula, int rows, int columns) {
+        if (rows == 0 && columns == 0) {
+            return formula;
+        }
+        StringBuilder sb = new StringBuilder(formula.length() + 8);
+        int len = formula.length();
+        int i = 0;
+        while (i < len) {
+            char ch = formula.charAt(i);
+            if (ch == '"' || ch == '\'') {
+                i = copyQuoted(formula, i, ch, sb);
+            } else if (ch == '[') {
+                i = copyBracketed(formula, i, sb);
+            } else if (isNamePart(ch) || ch == '$') {
+                int end = moveReference(formula, i, rows, columns, sb);
+                if (end < 0) {
+                    end = i + 1;
+                    while (end < len && isNamePart(formula.charAt(end))) {
+                        ++end;
+                    }
+                    sb.append(formula, i, end);
+                }
+                i = end;
+            } else {
+                sb.append(ch);
+                ++i;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Copy a string literal or quoted sheet name, where the quote is escaped
+     * by doubling it.
+     */
+    private static int copyQuoted(String formula, int start, char quote, StringBuilder sb) {
+        int i = start + 1;
+        int len = formula.length();
+        while (i < len) {
+            if (formula.charAt(i++) == quote) {
+                if (i < len && formula.charAt(i) == quote) {
+                    ++i;
+                } else {
+                    break;
+                }
+            }
+        }
+        sb.append(formula, start, i);
+        return i;
+    }
+
+    /**
+     * Copy a structured reference, which may contain nested brackets.
+     */
+    private static int copyBracketed(String formula, int start, StringBuilder sb) {
+        int i = start;
+        int depth = 0;
+        int len = formula.length();
+        do {
+            char ch = formula.charAt(i++);
+            if (ch == '[') {
+                ++depth;
+            } else if (ch == ']') {
+                --depth;
+            }
+        } while (depth > 0 && i < len);
+        sb.append(formula, start, i);
+        return i;
+    }
+
+    /**
+     * Move the reference starting at the given index, if any: a cell such as
+     * {@code $B3}, a range of columns such as {@code A:$C} or a range of rows
+     * such as {@code 2:$4}. Ranges of cells are handled as two cells.
+     *
+     * @return Index following the reference, or -1 if the name or number at
+     * the given index is not a reference.
+     */
+    private static int moveReference(String formula, int start, int rows, int columns, StringBuilder sb) {
+        int len = formula.length();
+        // [$]letters[$]digits, [$]letters:[$]letters or [$]digits:[$]digits
+        int[] first = new int[3];
+        int i = parsePart(formula, start, first);
+        if (i < 0) {
+            return -1;
+        }
+        if (first[0] == COLUMN && i < len && (formula.charAt(i) == '$' || isDigit(formula.charAt(i)))) {
+            int[] row = new int[3];
+            int end = parsePart(formula, i, row);
+            if (end < 0 || row[0] != ROW || !isEnd(formula, end)) {
+                return -1;
+            }
+            appendPart(first, columns, sb);
+            appendPart(row, rows, sb);
+            return end;
+        }
+        if (i < len && formula.charAt(i) == ':') {
+            int[] last = new int[3];
+            int end = parsePart(formula, i + 1, last);
+            if (end < 0 || last[0] != first[0] || !isEnd(formula, end)) {
+                return -1;
+            }
+            int moved = first[0] == COLUMN ? columns : rows;
+            appendPart(first, moved, sb);
+            sb.append(':');
+            appendPart(last, moved, sb);
+            return end;
+        }
+        return -1;
+    }
+
+    /**
+     * Parse an optionally absolute column or row.
+     *
+     * @param part Set to the kind of part, its zero-based index and 1 if it
+     * is absolute.
+     * @return Index following the part, or -1 if there is none.
+     */
+    private static int parsePart(String formula, int start, int[] part) {
+        int len = formula.length();
+        int i = start;
+        boolean absolute = i < len && formula.charAt(i) == '$';
+        if (absolute) {
+            ++i;
+        }
+        int from = i;
+        long value = 0;
+        if (i < len && isLetter(formula.charAt(i))) {
+            while (i < len && isLetter(formula.charAt(i)) && i - from < 3) {
+                value = value * 26 + (Character.toUpperCase(formula.charAt(i)) - 'A' + 1);
+                ++i;
+            }
+            if (value > MAX_COLS) {
+                return -1;
+            }
+            part[0] = COLUMN;
+        } else if (i < len && isDigit(formula.charAt(i))) {
+            while (i < len && isDigit(formula.charAt(i)) && i - from < 7) {
+                value = value * 10 + (formula.charAt(i) - '0');
+                ++i;
+            }
+            if (value < 1 || value > MAX_ROWS) {
+                return -1;
+            }
+            part[0] = ROW;
+        } else {
+            return -1;
+        }
+        part[1] = (int) value - 1;
+        part[2] = absolute ? 1 : 0;
+        return i;
+    }
+
+    private static void appendPart(int[] part, int moved, StringBuilder sb) {
+        int index = part[1];
+        if (part[2] != 0) {
+            sb.append('$');
+        } else {
+            index = Math.floorMod(index + moved, part[0] == COLUMN ? MAX_COLS : MAX_ROWS);
+        }
+        if (part[0] == COLUMN) {
+            appendColumn(index, sb);
+        } else {
+            sb.append(index + 1);
+        }
+    }
+
+    private static void appendColumn(int col, StringBuilder sb) {
+        int at = sb.length();
+        while (col >= 0) {
+            sb.insert(at, (char) ('A' + col % 26));
+            col = col / 26 - 1;
+        }
+    }
+
+    /**
+     * Check whether a reference ends at the given index, rather than being
+     * the start of a longer name, a function call or a sheet name.
+     */
+    private static boolean isEnd(String formula, int i) {
+        if (i == formula.length()) {
+            return true;
+        }
+        char ch = formula.charAt(i);
+        return !isNamePart(ch) && ch != '(' && ch != '!' && ch != '$';
+    }
+
+    private static boolean isNamePart(char ch) {
+        return isLetter(ch) || isDigit(ch) || ch == '_' || ch == '.' || ch == '\\' || ch > 0x7f;
+    }
+
+    private static boolean isLetter(char ch) {
+        return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z');
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+}
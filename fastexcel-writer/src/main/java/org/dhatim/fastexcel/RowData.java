@@ -0,0 +1,649 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Cells of a row kept in memory until the worksheet is flushed. Cells are
+ * stored by column in primitive arrays: a type tag, a 64-bit value holding
+ * numbers, booleans and shared string indexes, and a cached style index.
+ * Other values (formulas, inline strings, numbers with no primitive
+ * representation) and the strings of shared strings are kept in an object
+ * array, which is only allocated if needed.
+ * <p>
+ * Wide rows with few cells are stored sparsely: the arrays then hold only the
+ * cells which were set, in column order, along with their column numbers.
+ * Such a row switches to one slot per column once it gets dense enough.
+ */
+final class RowData implements Ref {
+
+    private static final byte[] CELL_START = Writer.bytes("<c r=\"");
+    private static final byte[] STYLE_ATTR = Writer.bytes("\" s=\"");
+    private static final byte[] TYPE_ATTR = Writer.bytes("\" t=\"");
+    private static final byte[] VALUE_START = Writer.bytes("\"><v>");
+    private static final byte[] VALUE_END = Writer.bytes("</v></c>");
+
+    private static final byte NONE = 0;
+    private static final byte SHARED_STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte OBJECT = 6;
+
+    /**
+     * Approximate size of an object header, or of an array header, in bytes.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Number of columns above which rows may be stored sparsely.
+     */
+    static final int SPARSE_COLUMNS = 64;
+
+    /**
+     * Number of slots of a new sparse row.
+     */
+    private static final int SPARSE_CAPACITY = 8;
+
+    /**
+     * Number of columns.
+     */
+    private int length;
+    /**
+     * Column of each slot, in increasing order, or {@code null} if this row
+     * has one slot per column.
+     */
+    private int[] columns;
+    /**
+     * Number of slots in use, when {@link #columns} is not {@code null}.
+     */
+    private int count;
+    /**
+     * Type of the value of each cell.
+     */
+    private byte[] types;
+    /**
+     * Primitive value of each cell: integer, double bits, boolean (0 or 1)
+     * or shared string index.
+     */
+    private long[] values;
+    /**
+     * Cached style index of each cell.
+     */
+    private int[] styles;
+    /**
+     * Sequence number of the last style rectangle folded into the style of
+     * each cell, see {@link StyleRectangles}, {@code null} until needed.
+     */
+    private int[] styleSequences;
+    /**
+     * Object value of each cell, {@code null} until needed.
+     */
+    private Object[] objects;
+    /**
+     * Estimated size of the objects in {@link #objects}, in bytes.
+     */
+    private long objectBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param length Number of columns.
+     */
+    RowData(int length) {
+        this(length, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param length Number of columns.
+     * @param sparse Whether to store the cells sparsely, which is ignored
+     * for rows of at most {@link #SPARSE_COLUMNS} columns.
+     */
+    RowData(int length, boolean sparse) {
+        this.length = length;
+        int capacity = length;
+        if (sparse && length > SPARSE_COLUMNS) {
+            columns = new int[SPARSE_CAPACITY];
+            capacity = SPARSE_CAPACITY;
+        }
+        types = new byte[capacity];
+        values = new long[capacity];
+        styles = new int[capacity];
+    }
+
+    /**
+     * Get the number of columns of this row.
+     *
+     * @return Number of columns.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Check whether the cells of this row are stored sparsely.
+     *
+     * @return {@code true} if only the cells which were set are stored.
+     */
+    boolean isSparse() {
+        return columns != null;
+    }
+
+    /**
+     * Make room for more columns. A row growing much wider than it was
+     * becomes sparse.
+     *
+     * @param length New number of columns, not less than the current one.
+     */
+    void setLength(int length) {
+        if (columns == null && length > SPARSE_COLUMNS && length > 4 * this.length) {
+            toSparse();
+        }
+        if (columns == null) {
+            resize(length);
+        }
+        this.length = length;
+    }
+
+    private void resize(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        values = Arrays.copyOf(values, capacity);
+        styles = Arrays.copyOf(styles, capacity);
+        if (columns != null) {
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        if (styleSequences != null) {
+            styleSequences = Arrays.copyOf(styleSequences, capacity);
+        }
+        if (objects != null) {
+            objects = Arrays.copyOf(objects, capacity);
+        }
+    }
+
+    /**
+     * Keep only the cells which have a value or a style, one slot each.
+     */
+    private void toSparse() {
+        int n = 0;
+        for (int c = 0; c < types.length; ++c) {
+            if (isSet(c)) {
+                ++n;
+            }
+        }
+        int[] cols = new int[Math.max(n, SPARSE_CAPACITY)];
+        n = 0;
+        for (int c = 0; c < types.length; ++c) {
+            if (isSet(c)) {
+                cols[n] = c;
+                moveSlot(c, n++);
+            }
+        }
+        for (int i = n; i < Math.min(cols.length, types.length); ++i) {
+            clearSlot(i);
+        }
+        columns = cols;
+        count = n;
+        resize(cols.length);
+    }
+
+    /**
+     * Switch to one slot per column.
+     */
+    private void toDense() {
+        int[] cols = columns;
+        columns = null;
+        int n = count;
+        count = 0;
+        resize(length);
+        // Slots only move right, so go from the last one
+        for (int i = n - 1; i >= 0; --i) {
+            if (cols[i] != i) {
+                moveSlot(i, cols[i]);
+                clearSlot(i);
+            }
+        }
+    }
+
+    private boolean isSet(int slot) {
+        return types[slot] != NONE || styles[slot] != 0 || styleSequences != null && styleSequences[slot] != 0;
+    }
+
+    private void moveSlot(int from, int to) {
+        types[to] = types[from];
+        values[to] = values[from];
+        styles[to] = styles[from];
+        if (styleSequences != null) {
+            styleSequences[to] = styleSequences[from];
+        }
+        if (objects != null) {
+            objects[to] = objects[from];
+        }
+    }
+
+    private void clearSlot(int slot) {
+        types[slot] = NONE;
+        values[slot] = 0;
+        styles[slot] = 0;
+        if (styleSequences != null) {
+            styleSequences[slot] = 0;
+        }
+        if (objects != null) {
+            objects[slot] = null;
+        }
+    }
+
+    /**
+     * Find the slot of a cell.
+     *
+     * @param c Zero-based column number.
+     * @return Slot, or a negative value if the row is sparse and the cell
+     * has none.
+     */
+    private int find(int c) {
+        if (columns == null) {
+            return c;
+        } else if (count > 0 && columns[count - 1] < c) {
+            // Cells are usually set from left to right
+            return -count - 1;
+        }
+        return Arrays.binarySearch(columns, 0, count, c);
+    }
+
+    /**
+     * Get the slot of a cell, creating it if needed.
+     *
+     * @param c Zero-based column number.
+     * @return Slot.
+     */
+    private int slot(int c) {
+        int slot = find(c);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (4 * (count + 1) > length) {
+            toDense();
+            return c;
+        }
+        slot = -slot - 1;
+        if (count == types.length) {
+            resize(2 * count);
+        }
+        int moved = count - slot;
+        if (moved > 0) {
+            System.arraycopy(columns, slot, columns, slot + 1, moved);
+            System.arraycopy(types, slot, types, slot + 1, moved);
+            System.arraycopy(values, slot, values, slot + 1, moved);
+            System.arraycopy(styles, slot, styles, slot + 1, moved);
+            if (styleSequences != null) {
+                System.arraycopy(styleSequences, slot, styleSequences, slot + 1, moved);
+            }
+            if (objects != null) {
+                System.arraycopy(objects, slot, objects, slot + 1, moved);
+            }
+            clearSlot(slot);
+        }
+        columns[slot] = c;
+        ++count;
+        return slot;
+    }
+
+    /**
+     * Estimate the memory used by this row, in bytes.
+     *
+     * @return Estimated size.
+     */
+    long memoryUsage() {
+        long usage = 4 * HEADER_SIZE + 13L * types.length;
+        if (columns != null) {
+            usage += HEADER_SIZE + 4L * columns.length;
+        }
+        if (styleSequences != null) {
+            usage += HEADER_SIZE + 4L * styleSequences.length;
+        }
+        if (objects != null) {
+            usage += HEADER_SIZE + 4L * objects.length + objectBytes;
+        }
+        return usage;
+    }
+
+    private static long memoryUsage(Object object) {
+        if (object == null) {
+            return 0;
+        } else if (object instanceof String) {
+            return 2 * HEADER_SIZE + 2L * ((String) object).length();
+        } else if (object instanceof Formula) {
+            return 3 * HEADER_SIZE + 2L * ((Formula) object).getExpression().length();
+        } else {
+            return 2 * HEADER_SIZE;
+        }
+    }
+
+    private void set(int c, byte type, long value, Object object) {
+        if (type == NONE && find(c) < 0) {
+            // Nothing to clear
+            return;
+        }
+        int slot = slot(c);
+        types[slot] = type;
+        values[slot] = value;
+        if (objects != null) {
+            objectBytes -= memoryUsage(objects[slot]);
+        }
+        objectBytes += memoryUsage(object);
+        if (object != null) {
+            if (objects == null) {
+                objects = new Object[types.length];
+            }
+            objects[slot] = object;
+        } else if (objects != null) {
+            objects[slot] = null;
+        }
+    }
+
+    /**
+     * Remove the value of a cell, keeping its style.
+     *
+     * @param c Zero-based column number.
+     */
+    void clearValue(int c) {
+        set(c, NONE, 0, null);
+    }
+
+    /**
+     * Set a shared string value.
+     *
+     * @param c Zero-based column number.
+     * @param s String value.
+     * @param index Index of the string in the shared strings table.
+     */
+    void setSharedString(int c, String s, int index) {
+        set(c, SHARED_STRING, index, s);
+    }
+
+    /**
+     * Set a number value.
+     *
+     * @param c Zero-based column number.
+     * @param v Number value, or {@code null}.
+     */
+    void setNumber(int c, Number v) {
+        if (v == null) {
+            clearValue(c);
+        } else if (v instanceof Integer) {
+            set(c, INTEGER, v.intValue(), null);
+        } else if (v instanceof Long) {
+            set(c, LONG, v.longValue(), null);
+        } else if (v instanceof Double) {
+            setDouble(c, v.doubleValue());
+        } else {
+            set(c, OBJECT, 0, v);
+        }
+    }
+
+    /**
+     * Set a long value.
+     *
+     * @param c Zero-based column number.
+     * @param v Long value.
+     */
+    void setLong(int c, long v) {
+        set(c, LONG, v, null);
+    }
+
+    /**
+     * Set a double value.
+     *
+     * @param c Zero-based column number.
+     * @param v Double value.
+     */
+    void setDouble(int c, double v) {
+        set(c, DOUBLE, Double.doubleToRawLongBits(v), null);
+    }
+
+    /**
+     * Set a boolean value.
+     *
+     * @param c Zero-based column number.
+     * @param v Boolean value, or {@code null}.
+     */
+    void setBoolean(int c, Boolean v) {
+        if (v == null) {
+            clearValue(c);
+        } else {
+            set(c, BOOLEAN, v ? 1 : 0, null);
+        }
+    }
+
+    /**
+     * Set an inline string or a {@link Formula}.
+     *
+     * @param c Zero-based column number.
+     * @param v Value, or {@code null}.
+     */
+    void setObject(int c, Object v) {
+        set(c, v == null ? NONE : OBJECT, 0, v);
+    }
+
+    /**
+     * Get the value of a cell.
+     *
+     * @param c Zero-based column number.
+     * @return Value or {@link Formula}, or {@code null}.
+     */
+    Object getValue(int c) {
+        int slot = find(c);
+        if (slot < 0) {
+            return null;
+        }
+        switch (types[slot]) {
+            case SHARED_STRING:
+            case OBJECT:
+                return objects[slot];
+            case INTEGER:
+                return (int) values[slot];
+            case LONG:
+                return values[slot];
+            case DOUBLE:
+                return Double.longBitsToDouble(values[slot]);
+            case BOOLEAN:
+                return values[slot] != 0;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the number of characters of the value of a cell, to compute
+     * best-fit column widths. Numbers are measured as they are written, which
+     * does not allocate for primitive values.
+     *
+     * @param c Zero-based column number.
+     * @param scratch Buffer of at least {@link NumberWriter#MAX_LENGTH} bytes.
+     * @return Number of characters, 0 for empty cells and formulas.
+     */
+    int valueLength(int c, byte[] scratch) {
+        int slot = find(c);
+        if (slot < 0) {
+            return 0;
+        }
+        switch (types[slot]) {
+            case INTEGER:
+            case LONG:
+                return NumberWriter.writeLong(scratch, 0, values[slot]);
+            case DOUBLE:
+                return NumberWriter.writeDouble(scratch, 0, Double.longBitsToDouble(values[slot]));
+            case BOOLEAN:
+                return values[slot] != 0 ? 4 : 5;
+            case SHARED_STRING:
+            case OBJECT:
+                Object object = objects[slot];
+                return object instanceof Formula ? 0 : object.toString().length();
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Get the style of a cell.
+     *
+     * @param c Zero-based column number.
+     * @return Cached style index.
+     */
+    int getStyle(int c) {
+        int slot = find(c);
+        return slot < 0 ? 0 : styles[slot];
+    }
+
+    /**
+     * Set the style of a cell.
+     *
+     * @param c Zero-based column number.
+     * @param style Cached style index.
+     */
+    void setStyle(int c, int style) {
+        if (style != 0 || find(c) >= 0) {
+            styles[slot(c)] = style;
+        }
+    }
+
+    /**
+     * Set the style of a cell, which already includes the style rectangles
+     * up to the given one.
+     *
+     * @param c Zero-based column number.
+     * @param style Cached style index.
+     * @param sequence Sequence number of the last style rectangle included.
+     */
+    void setStyle(int c, int style, int sequence) {
+        if (style == 0 && sequence == 0 && find(c) < 0) {
+            return;
+        }
+        int slot = slot(c);
+        styles[slot] = style;
+        if (styleSequences == null) {
+            if (sequence == 0) {
+                return;
+            }
+            styleSequences = new int[styles.length];
+        }
+        styleSequences[slot] = sequence;
+    }
+
+    /**
+     * Get the sequence number of the last style rectangle included in the
+     * style of a cell.
+     *
+     * @param c Zero-based column number.
+     * @return Sequence number, 0 if none.
+     */
+    int getStyleSequence(int c) {
+        int slot = styleSequences == null ? -1 : find(c);
+        return slot < 0 ? 0 : styleSequences[slot];
+    }
+
+    /**
+     * Write the cells of this row as XML elements.
+     * <p>
+     * Empty cells which only have the default style of the row, or of their
+     * column if the row has none, are omitted. Other cells with no style of
+     * their own get the default style of the row.
+     *
+     * @param w Output writer.
+     * @param r Zero-based row number.
+     * @param rowStyle Default style of the row, 0 if none.
+     * @param columnStyles Default style of each column.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(Writer w, int r, int rowStyle, int[] columnStyles) throws IOException {
+        int slots = columns == null ? types.length : count;
+        for (int slot = 0; slot < slots; ++slot) {
+            int c = columns == null ? slot : columns[slot];
+            byte type = types[slot];
+            int style = styles[slot];
+            if (type == NONE && (style == 0 || style == (rowStyle != 0 ? rowStyle : c < columnStyles.length ? columnStyles[c] : 0))) {
+                continue;
+            }
+            if (style == 0) {
+                style = rowStyle;
+            }
+            w.append(CELL_START).append(colToString(c)).append(r + 1);
+            if (style != 0) {
+                w.append(STYLE_ATTR).append(style);
+            }
+            Object object = type == OBJECT ? objects[slot] : null;
+            if (object instanceof Formula) {
+                w.append("\"><f>").append(((Formula) object).getExpression()).append("</f></c>");
+                continue;
+            }
+            if (type != NONE) {
+                w.append(TYPE_ATTR).append(getCellType(type, object));
+            }
+            if (object instanceof String) {
+                w.append("\"><is><t>").appendEscaped((String) object).append("</t></is></c>");
+            } else if (type != NONE) {
+                w.append(VALUE_START);
+                writeValue(w, type, values[slot], object);
+                w.append(VALUE_END);
+            } else {
+                w.append("\"></c>");
+            }
+        }
+    }
+
+    private static String getCellType(byte type, Object object) {
+        if (type == SHARED_STRING) {
+            return "s";
+        } else if (type == BOOLEAN) {
+            return "b";
+        } else if (object instanceof String) {
+            return "inlineStr";
+        } else {
+            return "n";
+        }
+    }
+
+    private static void writeValue(Writer w, byte type, long value, Object object) throws IOException {
+        switch (type) {
+            case SHARED_STRING:
+            case INTEGER:
+            case LONG:
+                w.append(value);
+                break;
+            case DOUBLE:
+                w.append(Double.longBitsToDouble(value));
+                break;
+            case BOOLEAN:
+                w.append(value != 0 ? '1' : '0');
+                break;
+            default:
+                if (object instanceof Float) {
+                    w.append((float) object);
+                } else if (object instanceof BigDecimal) {
+                    w.append((BigDecimal) object);
+                } else if (object instanceof Short || object instanceof Byte) {
+                    w.append(((Number) object).intValue());
+                } else {
+                    w.append(object.toString());
+                }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.util.Arrays;
+
+/**
+ * Rows of a worksheet kept in memory, by row number. Rows are stored in pages
+ * of {@link #PAGE_SIZE} rows, allocated when a row is first set in them and
+ * released once all their rows are removed, so that distant or scattered rows
+ * only use memory for the pages holding them.
+ */
+final class RowIndex {
+
+    private static final int PAGE_SHIFT = 10;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * Pages of rows, {@code null} for pages holding no row.
+     */
+    private RowData[][] pages = new RowData[16][];
+    /**
+     * Number of rows held by each page.
+     */
+    private int[] counts = new int[16];
+    /**
+     * Number of the highest row set since this index was cleared, plus one.
+     */
+    private int size;
+
+    /**
+     * Get a row.
+     *
+     * @param r Zero-based row number.
+     * @return Row, or {@code null} if none.
+     */
+    RowData get(int r) {
+        int p = r >>> PAGE_SHIFT;
+        RowData[] page = p < pages.length ? pages[p] : null;
+        return page == null ? null : page[r & PAGE_MASK];
+    }
+
+    /**
+     * Set or remove a row.
+     *
+     * @param r Zero-based row number.
+     * @param row Row, or {@code null} to remove it.
+     */
+    void set(int r, RowData row) {
+        int p = r >>> PAGE_SHIFT;
+        if (p >= pages.length) {
+            if (row == null) {
+                return;
+            }
+            int length = Math.max(p + 1, 2 * pages.length);
+            pages = Arrays.copyOf(pages, length);
+            counts = Arrays.copyOf(counts, length);
+        }
+        RowData[] page = pages[p];
+        if (page == null) {
+            if (row == null) {
+                return;
+            }
+            page = new RowData[PAGE_SIZE];
+            pages[p] = page;
+        }
+        RowData previous = page[r & PAGE_MASK];
+        page[r & PAGE_MASK] = row;
+        if (previous == null && row != null) {
+            ++counts[p];
+            size = Math.max(size, r + 1);
+        } else if (previous != null && row == null && --counts[p] == 0) {
+            pages[p] = null;
+        }
+    }
+
+    /**
+     * Get the number of the highest row set since this index was cleared,
+     * plus one. Removing rows does not change it.
+     *
+     * @return Number of rows.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Find the first row held by this index in a range, skipping pages
+     * holding no row.
+     *
+     * @param from Zero-based number of the first row of the range.
+     * @param to Zero-based number of the row ending the range, excluded.
+     * @return Zero-based number of the first row found, or {@code to} if
+     * none.
+     */
+    int next(int from, int to) {
+        int r = from;
+        while (r < to) {
+            int p = r >>> PAGE_SHIFT;
+            if (p >= pages.length) {
+                return to;
+            }
+            RowData[] page = pages[p];
+            if (page == null) {
+                r = (p + 1) << PAGE_SHIFT;
+                continue;
+            }
+            int end = Math.min(to, (p + 1) << PAGE_SHIFT);
+            for (; r < end; ++r) {
+                if (page[r & PAGE_MASK] != null) {
+                    return r;
+                }
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Remove all rows.
+     */
+    void clear() {
+        Arrays.fill(pages, null);
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import static org.dhatim.fastexcel.Worksheet.MAX_COLS;
+
+/**
+ * Helper class to set the default style of a row. This class implements the
+ * builder pattern to easily modify a bunch of attributes.<p>
+ * For example:
+ * <blockquote><pre>
+ *  Worksheet ws = ...
+ *  ws.rowStyle(0).bold().fillColor(Color.GRAY4).set();
+ * </pre></blockquote>
+ * The style of a row applies to its empty cells, and to the cells which have
+ * no style of their own.
+ */
+public class RowStyleSetter extends RangeStyleSetter<RowStyleSetter> {
+
+    /**
+     * Worksheet where the style is applied.
+     */
+    private final Worksheet worksheet;
+    /**
+     * Row where the style is applied.
+     */
+    private final int row;
+
+    /**
+     * Constructor.
+     *
+     * @param worksheet Worksheet where style is modified.
+     * @param row Zero-based row number.
+     */
+    RowStyleSetter(Worksheet worksheet, int row) {
+        super(worksheet);
+        this.worksheet = worksheet;
+        this.row = row;
+    }
+
+    /**
+     * Apply style elements. <b>Do not forget to call this method when you are
+     * done otherwise style changes are lost!</b>
+     */
+    @Override
+    public void set() {
+        super.setStyle(false, merge -> worksheet.applyRowStyle(row, merge));
+    }
+
+    @Override
+    protected Range getRange() {
+        return worksheet.range(row, 0, row, MAX_COLS - 1);
+    }
+
+    @Override
+    protected RowStyleSetter getThis() {
+        return this;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Rows detached from a worksheet, with everything needed to write them, so
+ * that they can be written by a {@link BackgroundWriter} while the worksheet
+ * is being filled, or serialized in parallel.
+ * <p>
+ * Style and shared string indexes of cells are already resolved, so chunks
+ * of rows can be serialized independently into separate buffers, which are
+ * then written in order.
+ */
+final class RowWindow {
+
+    /**
+     * Number of rows serialized by each task when serializing in parallel.
+     * Windows of less than two chunks are serialized on the calling thread.
+     */
+    static final int CHUNK_ROWS = 1024;
+
+    /**
+     * Maximum number of chunks being serialized or waiting to be written, so
+     * that memory usage remains bounded when the executor is slower than the
+     * writer.
+     */
+    private static final int MAX_PENDING_CHUNKS = 2 * Runtime.getRuntime().availableProcessors() + 2;
+
+    private final int[] columnStyles;
+    private int size;
+    private int[] numbers = new int[64];
+    private boolean[] hidden = new boolean[64];
+    private byte[] groupLevels = new byte[64];
+    private Double[] heights = new Double[64];
+    private int[] rowStyles = new int[64];
+    private RowData[] rows = new RowData[64];
+
+    /**
+     * Constructor.
+     *
+     * @param columnStyles Default style of each column, not modified
+     * afterwards.
+     */
+    RowWindow(int[] columnStyles) {
+        this.columnStyles = columnStyles;
+    }
+
+    /**
+     * Add a row.
+     *
+     * @param r Zero-based row number.
+     * @param isHidden Whether the row is hidden.
+     * @param groupLevel Outline level of the row.
+     * @param height Height of the row, or {@code null}.
+     * @param rowStyle Default style of the row, 0 if none.
+     * @param row Cells of the row, with resolved styles, or {@code null}.
+     */
+    void add(int r, boolean isHidden, byte groupLevel, Double height, int rowStyle, RowData row) {
+        if (size == numbers.length) {
+            int length = 2 * size;
+            numbers = Arrays.copyOf(numbers, length);
+            hidden = Arrays.copyOf(hidden, length);
+            groupLevels = Arrays.copyOf(groupLevels, length);
+            heights = Arrays.copyOf(heights, length);
+            rowStyles = Arrays.copyOf(rowStyles, length);
+            rows = Arrays.copyOf(rows, length);
+        }
+        numbers[size] = r;
+        hidden[size] = isHidden;
+        groupLevels[size] = groupLevel;
+        heights[size] = height;
+        rowStyles[size] = rowStyle;
+        rows[size] = row;
+        ++size;
+    }
+
+    /**
+     * Check whether this window holds no rows.
+     *
+     * @return {@code true} if empty.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Write the rows of this window.
+     *
+     * @param w Output writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(Writer w) throws IOException {
+        write(w, 0, size);
+    }
+
+    /**
+     * Write the rows of this window, serializing chunks of rows concurrently
+     * on the given executor if the window is large enough.
+     *
+     * @param w Output writer.
+     * @param executor Executor serializing chunks, or {@code null} to write
+     * rows on the calling thread.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(Writer w, Executor executor) throws IOException {
+        if (executor == null || size < 2 * CHUNK_ROWS) {
+            write(w);
+            return;
+        }
+        Deque<CompletableFuture<Writer>> pending = new ArrayDeque<>();
+        for (int from = 0; from < size; from += CHUNK_ROWS) {
+            int start = from;
+            int end = Math.min(size, from + CHUNK_ROWS);
+            pending.addLast(CompletableFuture.supplyAsync(() -> serialize(start, end), executor));
+            // Write chunks which are done, in order, and wait if too many are pending
+            while (!pending.isEmpty() && (pending.peekFirst().isDone() || pending.size() > MAX_PENDING_CHUNKS)) {
+                writeChunk(w, pending.removeFirst());
+            }
+        }
+        while (!pending.isEmpty()) {
+            writeChunk(w, pending.removeFirst());
+        }
+    }
+
+    private void write(Writer w, int start, int end) throws IOException {
+        for (int i = start; i < end; ++i) {
+            Worksheet.writeRow(w, numbers[i], hidden[i], groupLevels[i], heights[i], rowStyles[i], rows[i], columnStyles);
+            rows[i] = null;
+        }
+    }
+
+    /**
+     * Serialize a chunk of rows into memory.
+     *
+     * @param start Index of the first row.
+     * @param end Index of the row to stop at, excluded.
+     * @return In-memory writer holding the chunk.
+     */
+    private Writer serialize(int start, int end) {
+        Writer chunk = new Writer(64 * 1024);
+        try {
+            write(chunk, start, end);
+        } catch (IOException ex) {
+            // In-memory writers do not throw
+            throw new UncheckedIOException(ex);
+        }
+        return chunk;
+    }
+
+    private static void writeChunk(Writer w, CompletableFuture<Writer> future) throws IOException {
+        Writer chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while serializing rows");
+        } catch (ExecutionException ex) {
+            throw new IOException("Row serialization failed", ex.getCause());
+        }
+        w.append(chunk.buffer(), 0, chunk.length());
+    }
+}
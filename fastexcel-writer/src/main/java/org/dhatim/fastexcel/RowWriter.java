@@ -0,0 +1,516 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.BitSet;
+import java.util.Date;
+
+/**
+ * Writer of rows appended in order to a worksheet, created by
+ * {@link Worksheet#sequentialWriter(ColumnSchema)}. Cells are serialized
+ * directly to the output as their values are given, from the first column
+ * of the schema, without being kept in memory. Column references, style and
+ * type attributes are encoded once, from the schema.
+ * <p>
+ * For example:
+ * <blockquote><pre>
+ *  RowWriter rw = ws.sequentialWriter(schema);
+ *  for (Order order : orders) {
+ *      rw.value(order.getCustomer()).value(order.getAmount()).value(order.getDate()).endRow();
+ *  }
+ * </pre></blockquote>
+ * Each row starts after the rows holding values or styles set through the
+ * worksheet so far, which are written first. Hidden rows, grouped rows,
+ * row heights and row styles set before a row is started apply to it, as do
+ * merged cells and other worksheet features written by
+ * {@link Worksheet#finish()}. Like {@link Worksheet#flush()}, writing rows
+ * takes over the output stream, unless the workbook generates worksheets in
+ * parallel.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class RowWriter implements Ref {
+
+    private static final byte[] STYLE_ATTR = Writer.bytes("\" s=\"");
+    private static final byte[] NUMBER_VALUE = Writer.bytes("\" t=\"n\"><v>");
+    private static final byte[] BOOLEAN_VALUE = Writer.bytes("\" t=\"b\"><v>");
+    private static final byte[] SHARED_STRING_VALUE = Writer.bytes("\" t=\"s\"><v>");
+    private static final byte[] INLINE_STRING_VALUE = Writer.bytes("\" t=\"inlineStr\"><is><t>");
+    private static final byte[] VALUE_END = Writer.bytes("</v></c>");
+    private static final byte[] INLINE_STRING_END = Writer.bytes("</t></is></c>");
+
+    private final Worksheet worksheet;
+    private final ColumnType[] types;
+    /**
+     * Style of each column, 0 if none.
+     */
+    private final int[] styles;
+    /**
+     * Beginning of the cells of each column, up to the row number.
+     */
+    private final byte[][] cellStarts;
+    /**
+     * Style attribute of each column, empty if it has no style.
+     */
+    private final byte[][] styleAttrs;
+    /**
+     * Zero-based number of the current row, -1 if no row is started.
+     */
+    private int row = -1;
+    /**
+     * Zero-based number of the next column of the current row.
+     */
+    private int col;
+    /**
+     * Default style of the current row.
+     */
+    private int rowStyle;
+    /**
+     * Whether cell styles of the current row must be resolved, because the
+     * row has a default style or styled ranges may contain it.
+     */
+    private boolean resolveStyles;
+    /**
+     * Columns of the current row contained in styled ranges, whose cells are
+     * written even if empty so that they keep the style of the ranges.
+     */
+    private final BitSet styledColumns = new BitSet();
+    /**
+     * Whether value lengths are tracked for column widths.
+     */
+    private boolean trackLengths;
+    /**
+     * Output writer, once the row element is written, {@code null} before.
+     */
+    private Writer writer;
+    private final byte[] rowNumber = new byte[NumberWriter.MAX_LENGTH];
+    private int rowNumberLength;
+    private final byte[] lengthScratch = new byte[NumberWriter.MAX_LENGTH];
+
+    /**
+     * Constructor.
+     *
+     * @param worksheet Worksheet rows are appended to.
+     * @param schema Columns of the rows.
+     */
+    RowWriter(Worksheet worksheet, ColumnSchema schema) {
+        this.worksheet = worksheet;
+        int n = schema.size();
+        types = new ColumnType[n];
+        styles = new int[n];
+        cellStarts = new byte[n][];
+        styleAttrs = new byte[n][];
+        for (int c = 0; c < n; ++c) {
+            types[c] = schema.getType(c);
+            StyleHandle style = schema.getStyle(c);
+            styles[c] = style == null ? 0 : style.getStyle(worksheet);
+            cellStarts[c] = Writer.bytes("<c r=\"" + colToString(c));
+            styleAttrs[c] = styles[c] == 0 ? new byte[0] : Writer.bytes("\" s=\"" + styles[c]);
+        }
+    }
+
+    /**
+     * Get the number of the current row, or of the next row to be written if
+     * none is started.
+     *
+     * @return Zero-based row number.
+     */
+    public int getRow() {
+        return row >= 0 ? row : worksheet.nextSequentialRow();
+    }
+
+    /**
+     * Set the string value of the next cell of the current row, starting a
+     * row if needed.
+     *
+     * @param value String value, {@code null} leaves the cell empty.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter value(String value) throws IOException {
+        if (value == null) {
+            return skip();
+        }
+        int c = col;
+        Writer w = cell(ColumnType.STRING);
+        if (worksheet.isInlineString(c, value)) {
+            w.append(INLINE_STRING_VALUE).appendEscaped(value).append(INLINE_STRING_END);
+        } else {
+            w.append(SHARED_STRING_VALUE).append(worksheet.getWorkbook().cacheString(value)).append(VALUE_END);
+        }
+        if (trackLengths) {
+            worksheet.trackValueLength(row, c, value.length());
+        }
+        return this;
+    }
+
+    /**
+     * Set the number value of the next cell of the current row, starting a
+     * row if needed.
+     *
+     * @param value Number value.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter value(double value) throws IOException {
+        int c = col;
+        cell(ColumnType.NUMBER).append(NUMBER_VALUE).append(value).append(VALUE_END);
+        if (trackLengths) {
+            worksheet.trackValueLength(row, c, NumberWriter.writeDouble(lengthScratch, 0, value));
+        }
+        return this;
+    }
+
+    /**
+     * Set the number value of the next cell of the current row, starting a
+     * row if needed.
+     *
+     * @param value Number value.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter value(long value) throws IOException {
+        int c = col;
+        cell(ColumnType.NUMBER).append(NUMBER_VALUE).append(value).append(VALUE_END);
+        if (trackLengths) {
+            worksheet.trackValueLength(row, c, NumberWriter.writeLong(lengthScratch, 0, value));
+        }
+        return this;
+    }
+
+    /**
+     * Set the number value of the next cell of the current row, starting a
+     * row if needed.
+     *
+     * @param value Number value, {@code null} leaves the cell empty.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter value(Number value) throws IOException {
+        if (value == null) {
+            return skip();
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value(value.longValue());
+        } else if (value instanceof Double) {
+            return value(value.doubleValue());
+        }
+        int c = col;
+        Writer w = cell(ColumnType.NUMBER).append(NUMBER_VALUE);
+        if (value instanceof Float) {
+            w.append(value.floatValue());
+        } else if (value instanceof BigDecimal) {
+            w.append((BigDecimal) value);
+        } else {
+            w.append(value.toString());
+        }
+        w.append(VALUE_END);
+        if (trackLengths) {
+            worksheet.trackValueLength(row, c, value.toString().length());
+        }
+        return this;
+    }
+
+    /**
+     * Set the boolean value of the next cell of the current row, starting a
+     * row if needed.
+     *
+     * @param value Boolean value.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter value(boolean value) throws IOException {
+        int c = col;
+        cell(ColumnType.BOOLEAN).append(BOOLEAN_VALUE).append(value ? '1' : '0').append(VALUE_END);
+        if (trackLengths) {
+            worksheet.trackValueLength(row, c, value ? 4 : 5);
+        }
+        return this;
+    }
+
+    /**
+     * Set the date value of the next cell of the current row, starting a row
+     * if needed.
+     *
+     * @param value Date value, {@code null} leaves the cell empty.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter value(Date value) throws IOException {
+        return value == null ? skip() : date(TimestampUtil.serialNumber(value));
+    }
+
+    /**
+     * Set the date value of the next cell of the current row, starting a row
+     * if needed.
+     *
+     * @param value Date value, {@code null} leaves the cell empty.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter value(LocalDateTime value) throws IOException {
+        return value == null ? skip() : date(TimestampUtil.serialNumber(value));
+    }
+
+    /**
+     * Set the date value of the next cell of the current row, starting a row
+     * if needed.
+     *
+     * @param value Date value, {@code null} leaves the cell empty.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter value(LocalDate value) throws IOException {
+        return value == null ? skip() : date(TimestampUtil.serialNumber(value));
+    }
+
+    /**
+     * Set the date value of the next cell of the current row, starting a row
+     * if needed.
+     *
+     * @param value Date value, {@code null} leaves the cell empty.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter value(ZonedDateTime value) throws IOException {
+        return value == null ? skip() : date(TimestampUtil.serialNumber(value));
+    }
+
+    /**
+     * Set the timestamp value of the next cell of the current row, starting
+     * a row if needed. The timestamp is written with its local date and time
+     * in the given timezone.
+     *
+     * @param epochMillis Timestamp, in milliseconds since the epoch.
+     * @param zone Timezone.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter value(long epochMillis, ZoneId zone) throws IOException {
+        return date(TimestampUtil.serialNumber(epochMillis, zone));
+    }
+
+    /**
+     * Set the date value of the next cell of the current row, starting a row
+     * if needed.
+     *
+     * @param epochDay Date, in days since 1970-01-01.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter valueEpochDay(long epochDay) throws IOException {
+        return date(TimestampUtil.epochDaySerialNumber(epochDay));
+    }
+
+    private RowWriter date(double value) throws IOException {
+        int c = col;
+        cell(ColumnType.DATE).append(NUMBER_VALUE).append(value).append(VALUE_END);
+        if (trackLengths) {
+            worksheet.trackValueLength(row, c, NumberWriter.writeDouble(lengthScratch, 0, value));
+        }
+        return this;
+    }
+
+    /**
+     * Leave the next cell of the current row empty, starting a row if
+     * needed. The cell is still written if styled ranges contain it.
+     *
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter skip() throws IOException {
+        if (row < 0) {
+            beginRow();
+        }
+        if (col >= types.length) {
+            throw new IllegalStateException("Row " + (row + 1) + " has more cells than the schema has columns");
+        }
+        if (styledColumns.get(col)) {
+            emptyCell(col);
+        }
+        ++col;
+        return this;
+    }
+
+    /**
+     * End the current row, starting an empty one if none is started. The
+     * remaining cells of the row are left empty, and written only if styled
+     * ranges contain them.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void endRow() throws IOException {
+        if (row < 0) {
+            beginRow();
+        }
+        for (int c = styledColumns.nextSetBit(col); c >= 0; c = styledColumns.nextSetBit(c + 1)) {
+            emptyCell(c);
+        }
+        if (writer == null && worksheet.hasRowAttributes(row)) {
+            writer = worksheet.beginRowElement(row);
+        }
+        if (writer != null) {
+            writer.append("</row>");
+        }
+        writer = null;
+        row = -1;
+    }
+
+    /**
+     * Write a row, from the first column of the schema. Elements may be of
+     * any type accepted by the {@code value} methods, {@code null} elements
+     * leave cells empty. If an element cannot be written, the row is ended
+     * with the cells written so far.
+     *
+     * @param values Cell values.
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalArgumentException If an element has an unsupported
+     * type, or a type not matching its column.
+     */
+    public void writeRow(Object... values) throws IOException {
+        if (row >= 0) {
+            throw new IllegalStateException("Row " + (row + 1) + " is not ended");
+        }
+        try {
+            writeValues(values);
+        } catch (RuntimeException e) {
+            try {
+                completeRow();
+            } catch (IOException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        endRow();
+    }
+
+    private void writeValues(Object[] values) throws IOException {
+        for (Object value : values) {
+            if (value == null) {
+                skip();
+            } else if (value instanceof String) {
+                value((String) value);
+            } else if (value instanceof Number) {
+                value((Number) value);
+            } else if (value instanceof Boolean) {
+                value(((Boolean) value).booleanValue());
+            } else if (value instanceof Date) {
+                value((Date) value);
+            } else if (value instanceof LocalDateTime) {
+                value((LocalDateTime) value);
+            } else if (value instanceof LocalDate) {
+                value((LocalDate) value);
+            } else if (value instanceof ZonedDateTime) {
+                value((ZonedDateTime) value);
+            } else {
+                throw new IllegalArgumentException("No supported cell type for " + value.getClass());
+            }
+        }
+    }
+
+    /**
+     * End the current row, if any, before the worksheet writes other rows.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void completeRow() throws IOException {
+        if (row >= 0) {
+            endRow();
+        }
+    }
+
+    private void beginRow() throws IOException {
+        int r = worksheet.beginSequentialRow(this, types.length);
+        row = r;
+        col = 0;
+        rowStyle = worksheet.defaultRowStyle(r);
+        styledColumns.clear();
+        if (worksheet.mayHaveStyledRanges(r)) {
+            worksheet.styledRangeColumns(r, styledColumns);
+        }
+        resolveStyles = rowStyle != 0 || !styledColumns.isEmpty();
+        trackLengths = worksheet.isTrackingValueLengths();
+        rowNumberLength = NumberWriter.writeLong(rowNumber, 0, r + 1);
+    }
+
+    /**
+     * Write an empty cell of the current row contained in styled ranges,
+     * unless its style is the default one.
+     *
+     * @param c Zero-based column number, which may be beyond the schema.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void emptyCell(int c) throws IOException {
+        int own = c < styles.length ? styles[c] : 0;
+        int style = worksheet.resolveStyle(row, c, own == 0 ? rowStyle : own);
+        if (style == 0 || style == (rowStyle != 0 ? rowStyle : worksheet.columnDefaultStyle(c))) {
+            return;
+        }
+        Writer w = writer;
+        if (w == null) {
+            w = worksheet.beginRowElement(row);
+            writer = w;
+        }
+        if (c < cellStarts.length) {
+            w.append(cellStarts[c]);
+        } else {
+            w.append("<c r=\"").append(colToString(c));
+        }
+        w.append(rowNumber, 0, rowNumberLength).append(STYLE_ATTR).append(style).append("\"></c>");
+    }
+
+    /**
+     * Write the beginning of the next cell of the current row, up to its
+     * style attribute, starting a row if needed.
+     *
+     * @param type Type of the value of the cell.
+     * @return Output writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    private Writer cell(ColumnType type) throws IOException {
+        if (row < 0) {
+            beginRow();
+        }
+        int c = col;
+        if (c >= types.length) {
+            throw new IllegalStateException("Row " + (row + 1) + " has more cells than the schema has columns");
+        }
+        if (types[c] != type && !(type == ColumnType.NUMBER && types[c] == ColumnType.DATE)) {
+            throw new IllegalArgumentException("Column " + colToString(c) + " holds values of type " + types[c]);
+        }
+        Writer w = writer;
+        if (w == null) {
+            w = worksheet.beginRowElement(row);
+            writer = w;
+        }
+        w.append(cellStarts[c]).append(rowNumber, 0, rowNumberLength);
+        if (resolveStyles) {
+            int style = worksheet.resolveStyle(row, c, styles[c] == 0 ? rowStyle : styles[c]);
+            if (style != 0) {
+                w.append(STYLE_ATTR).append(style);
+            }
+        } else {
+            w.append(styleAttrs[c]);
+        }
+        ++col;
+        return w;
+    }
+}
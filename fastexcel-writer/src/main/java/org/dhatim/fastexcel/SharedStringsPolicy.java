@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+/**
+ * Policy deciding whether string cell values are stored in the shared strings
+ * table or inline in worksheets.
+ */
+public enum SharedStringsPolicy {
+
+    /**
+     * Strings are shared, unless their column turns out to hold mostly
+     * distinct values: the number of distinct strings of each column is
+     * estimated as values are written, and the column switches to inline
+     * strings when deduplication stops paying off.
+     */
+    AUTO,
+
+    /**
+     * Strings are stored once in the shared strings table and referenced by
+     * index from cells. Best when the same values are repeated.
+     */
+    SHARED,
+
+    /**
+     * Strings are written inline in cells, as with
+     * {@link Worksheet#inlineString(int, int, String)}. Best for mostly
+     * distinct values, which then do not need to be kept in memory until
+     * the workbook is finished.
+     */
+    INLINE
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Append-only store of byte strings, each prefixed with its length. Bytes are
+ * kept in segments of {@link #SEGMENT_SIZE} bytes. The first segment starts
+ * small on the heap and grows as needed, so that small workbooks do not hold
+ * off-heap memory; the following ones are direct buffers, taken from a pool
+ * shared by all arenas, to which {@link #clear()} returns them. When the
+ * arenas sharing a {@link Spill} use more memory than its budget, their
+ * oldest full segments are moved to a temporary file, and their buffers are
+ * reused for new segments. Bytes moved to the file are read back in blocks,
+ * kept in a small cache, so that looking up the same strings again does not
+ * read the file each time.
+ * <p>
+ * This class is not thread-safe, except for
+ * {@link #equals(long, byte[], int)}, which may be called concurrently with
+ * appends.
+ */
+final class StringArena {
+
+    private static final int SEGMENT_SHIFT = 18;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    /**
+     * Initial capacity of the first segment.
+     */
+    private static final int INITIAL_CAPACITY = 4096;
+    /**
+     * Maximum number of free direct buffers kept for reuse.
+     */
+    private static final int MAX_FREE_BUFFERS = 16;
+    private static final ArrayDeque<ByteBuffer> FREE_BUFFERS = new ArrayDeque<>();
+
+    /**
+     * Memory budget and temporary file shared by several arenas.
+     */
+    static final class Spill implements Closeable {
+
+        private static final int BLOCK_SHIFT = 12;
+        private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+        private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+        private static final int CACHED_BLOCKS = 64;
+
+        private volatile long budget;
+        private final AtomicLong inMemory = new AtomicLong();
+        private final AtomicLong fileSize = new AtomicLong();
+        /**
+         * Recently read blocks of the temporary file, by block number modulo
+         * {@link #CACHED_BLOCKS}.
+         */
+        private final AtomicReferenceArray<Block> blocks = new AtomicReferenceArray<>(CACHED_BLOCKS);
+        private Path file;
+        private FileChannel channel;
+
+        /**
+         * Constructor.
+         *
+         * @param budget Number of bytes arenas may keep in memory.
+         */
+        Spill(long budget) {
+            this.budget = budget;
+        }
+
+        void setBudget(long budget) {
+            this.budget = budget;
+        }
+
+        private synchronized FileChannel channel() throws IOException {
+            if (channel == null) {
+                file = Files.createTempFile("fastexcel", ".strings");
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return channel;
+        }
+
+        private long write(ByteBuffer segment) throws IOException {
+            long position = fileSize.getAndAdd(SEGMENT_SIZE);
+            FileChannel ch = channel();
+            segment.clear();
+            while (segment.hasRemaining()) {
+                ch.write(segment, position + segment.position());
+            }
+            return position;
+        }
+
+        private void read(ByteBuffer dst, long position) throws IOException {
+            FileChannel ch = channel();
+            while (dst.hasRemaining()) {
+                int n = ch.read(dst, position);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                position += n;
+            }
+        }
+
+        /**
+         * Get the block of the temporary file holding the given position,
+         * reading it unless cached. Segments are written whole, so blocks
+         * never change once read.
+         *
+         * @param position Position in the temporary file.
+         * @return Block.
+         * @throws IOException If an I/O error occurs.
+         */
+        private Block block(long position) throws IOException {
+            long number = position >>> BLOCK_SHIFT;
+            int slot = (int) (number % CACHED_BLOCKS);
+            Block block = blocks.get(slot);
+            if (block == null || block.number != number) {
+                byte[] bytes = new byte[BLOCK_SIZE];
+                read(ByteBuffer.wrap(bytes), number << BLOCK_SHIFT);
+                block = new Block(number, bytes);
+                blocks.set(slot, block);
+            }
+            return block;
+        }
+
+        /**
+         * Delete the temporary file, if any.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            for (int i = 0; i < CACHED_BLOCKS; ++i) {
+                blocks.set(i, null);
+            }
+            if (channel != null) {
+                channel.close();
+                Files.deleteIfExists(file);
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Block of the temporary file, read back in memory.
+     */
+    private static final class Block {
+
+        final long number;
+        final byte[] bytes;
+
+        Block(long number, byte[] bytes) {
+            this.number = number;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Segment of an arena, in memory or in the temporary file. Fields are
+     * final, so that segments can be read without locking.
+     */
+    private static final class Segment {
+
+        /**
+         * Bytes of the segment, {@code null} once moved to the temporary
+         * file. Only read with absolute methods, without changing its
+         * position.
+         */
+        final ByteBuffer buffer;
+        /**
+         * Position of the segment in the temporary file, if moved there.
+         */
+        final long position;
+
+        Segment(ByteBuffer buffer, long position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+    }
+
+    private final Spill spill;
+    /**
+     * Segments, grown by copy so that readers get a consistent array.
+     */
+    private volatile Segment[] segments = new Segment[16];
+    /**
+     * Held for writing while a segment is moved to the temporary file, so
+     * that readers which may have read its buffer after it was reused
+     * retry.
+     */
+    private final StampedLock evictions = new StampedLock();
+    /**
+     * Number of segments.
+     */
+    private int segmentCount;
+    /**
+     * Index of the oldest segment still in memory.
+     */
+    private int firstInMemory;
+    /**
+     * Number of bytes in this arena.
+     */
+    private long size;
+    /**
+     * Capacity of the buffers of the segments in memory.
+     */
+    private long memory;
+    private final byte[] lengthBytes = new byte[4];
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Constructor.
+     *
+     * @param spill Memory budget and temporary file.
+     */
+    StringArena(Spill spill) {
+        this.spill = spill;
+    }
+
+    /**
+     * Append a byte string.
+     *
+     * @param b Bytes.
+     * @param len Number of bytes.
+     * @return Offset of the byte string in this arena.
+     * @throws IOException If an I/O error occurs.
+     */
+    long append(byte[] b, int len) throws IOException {
+        long offset = size;
+        lengthBytes[0] = (byte) (len >>> 24);
+        lengthBytes[1] = (byte) (len >>> 16);
+        lengthBytes[2] = (byte) (len >>> 8);
+        lengthBytes[3] = (byte) len;
+        put(lengthBytes, 4);
+        put(b, len);
+        return offset;
+    }
+
+    /**
+     * Compare a stored byte string with the given bytes.
+     *
+     * @param offset Offset of the byte string.
+     * @param b Bytes.
+     * @param len Number of bytes.
+     * @return {@code true} if the byte strings are equal.
+     * @throws IOException If an I/O error occurs.
+     */
+    boolean equals(long offset, byte[] b, int len) throws IOException {
+        long stamp = evictions.tryOptimisticRead();
+        boolean equal = compare(segments, offset, b, len);
+        if (evictions.validate(stamp)) {
+            return equal;
+        }
+        stamp = evictions.readLock();
+        try {
+            return compare(segments, offset, b, len);
+        } finally {
+            evictions.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Compare a stored byte string with the given bytes. The buffer of a
+     * segment moved to the temporary file meanwhile may hold other bytes:
+     * the result is then wrong, but no exception is thrown.
+     */
+    private boolean compare(Segment[] segs, long offset, byte[] b, int len) throws IOException {
+        if (readInt(segs, offset) != len) {
+            return false;
+        }
+        offset += 4;
+        int off = 0;
+        while (off < len) {
+            Segment segment = segment(segs, offset);
+            if (segment == null) {
+                return false;
+            }
+            int pos = (int) (offset & SEGMENT_MASK);
+            int n = Math.min(len - off, SEGMENT_SIZE - pos);
+            ByteBuffer buffer = segment.buffer;
+            if (buffer == null) {
+                long position = segment.position + pos;
+                Block block = spill.block(position);
+                int blockPos = (int) (position & Spill.BLOCK_MASK);
+                n = Math.min(n, Spill.BLOCK_SIZE - blockPos);
+                for (int i = 0; i < n; ++i) {
+                    if (block.bytes[blockPos + i] != b[off + i]) {
+                        return false;
+                    }
+                }
+            } else {
+                if (pos + n > buffer.capacity()) {
+                    return false;
+                }
+                for (int i = 0; i < n; ++i) {
+                    if (buffer.get(pos + i) != b[off + i]) {
+                        return false;
+                    }
+                }
+            }
+            off += n;
+            offset += n;
+        }
+        return true;
+    }
+
+    /**
+     * Get the length of a stored byte string.
+     *
+     * @param offset Offset of the byte string.
+     * @return Number of bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    int length(long offset) throws IOException {
+        return readInt(segments, offset);
+    }
+
+    private int readInt(Segment[] segs, long offset) throws IOException {
+        Segment segment = segment(segs, offset);
+        int pos = (int) (offset & SEGMENT_MASK);
+        if (segment != null && segment.buffer != null && pos + 4 <= segment.buffer.capacity()) {
+            return segment.buffer.getInt(pos);
+        }
+        // Spilled, or spanning two segments
+        int value = 0;
+        for (int i = 0; i < 4; ++i) {
+            int b = byteAt(segs, offset + i);
+            if (b < 0) {
+                return -1;
+            }
+            value = value << 8 | b;
+        }
+        return value;
+    }
+
+    /**
+     * Get a stored byte.
+     *
+     * @return Unsigned byte, or -1 if out of the arena, which only happens
+     * when comparing with the reused buffer of a segment.
+     */
+    private int byteAt(Segment[] segs, long offset) throws IOException {
+        Segment segment = segment(segs, offset);
+        if (segment == null) {
+            return -1;
+        }
+        int pos = (int) (offset & SEGMENT_MASK);
+        if (segment.buffer == null) {
+            long position = segment.position + pos;
+            return spill.block(position).bytes[(int) (position & Spill.BLOCK_MASK)] & 0xff;
+        }
+        return pos < segment.buffer.capacity() ? segment.buffer.get(pos) & 0xff : -1;
+    }
+
+    private static Segment segment(Segment[] segs, long offset) {
+        int index = (int) (offset >>> SEGMENT_SHIFT);
+        return index < segs.length ? segs[index] : null;
+    }
+
+    /**
+     * Read a stored byte string.
+     *
+     * @param offset Offset of the byte string.
+     * @return Array holding the byte string at its beginning, only valid until
+     * the next call.
+     * @throws IOException If an I/O error occurs.
+     */
+    byte[] read(long offset) throws IOException {
+        int len = length(offset);
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, 2 * scratch.length)];
+        }
+        get(segments, offset + 4, scratch, len);
+        return scratch;
+    }
+
+    private void put(byte[] b, int len) throws IOException {
+        int off = 0;
+        while (off < len) {
+            int segment = (int) (size >>> SEGMENT_SHIFT);
+            int pos = (int) (size & SEGMENT_MASK);
+            if (segment == segmentCount) {
+                addSegment();
+            }
+            ByteBuffer buffer = segments[segment].buffer;
+            int n = Math.min(len - off, SEGMENT_SIZE - pos);
+            if (pos + n > buffer.capacity()) {
+                buffer = grow(segment, pos, pos + n);
+            }
+            buffer.position(pos);
+            buffer.put(b, off, n);
+            off += n;
+            size += n;
+        }
+    }
+
+    private void get(Segment[] segs, long offset, byte[] b, int len) throws IOException {
+        int off = 0;
+        while (off < len) {
+            Segment segment = segs[(int) (offset >>> SEGMENT_SHIFT)];
+            int pos = (int) (offset & SEGMENT_MASK);
+            int n = Math.min(len - off, SEGMENT_SIZE - pos);
+            ByteBuffer buffer = segment.buffer;
+            if (buffer != null) {
+                for (int i = 0; i < n; ++i) {
+                    b[off + i] = buffer.get(pos + i);
+                }
+            } else {
+                long position = segment.position + pos;
+                int blockPos = (int) (position & Spill.BLOCK_MASK);
+                n = Math.min(n, Spill.BLOCK_SIZE - blockPos);
+                System.arraycopy(spill.block(position).bytes, blockPos, b, off, n);
+            }
+            off += n;
+            offset += n;
+        }
+    }
+
+    /**
+     * Replace the buffer of the first segment, which starts small, with a
+     * larger one.
+     *
+     * @param segment Index of the segment.
+     * @param used Number of bytes used in the segment.
+     * @param needed Number of bytes needed.
+     * @return New buffer.
+     */
+    private ByteBuffer grow(int segment, int used, int needed) {
+        Segment[] segs = segments;
+        ByteBuffer old = segs[segment].buffer;
+        int capacity = old.capacity();
+        while (capacity < needed) {
+            capacity *= 2;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        // Readers holding the former buffer still find the same bytes there
+        System.arraycopy(old.array(), 0, buffer.array(), 0, used);
+        segs[segment] = new Segment(buffer, -1);
+        segments = segs;
+        memory += capacity - old.capacity();
+        spill.inMemory.addAndGet(capacity - old.capacity());
+        return buffer;
+    }
+
+    private void addSegment() throws IOException {
+        Segment[] segs = segments;
+        if (segmentCount == segs.length) {
+            segs = Arrays.copyOf(segs, 2 * segs.length);
+            segments = segs;
+        }
+        ByteBuffer buffer = null;
+        if (segmentCount == 0) {
+            buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+            memory += INITIAL_CAPACITY;
+            spill.inMemory.addAndGet(INITIAL_CAPACITY);
+        } else {
+            memory += SEGMENT_SIZE;
+            long inMemory = spill.inMemory.addAndGet(SEGMENT_SIZE);
+            // Move full segments to the temporary file while over budget, reusing the buffer of the first one
+            while (inMemory > spill.budget && firstInMemory < segmentCount) {
+                ByteBuffer evicted = evict(segs);
+                if (buffer == null) {
+                    buffer = evicted;
+                } else {
+                    release(evicted);
+                }
+                memory -= SEGMENT_SIZE;
+                inMemory = spill.inMemory.addAndGet(-SEGMENT_SIZE);
+            }
+            if (buffer == null) {
+                buffer = allocate();
+            }
+        }
+        segs[segmentCount++] = new Segment(buffer, -1);
+        segments = segs;
+    }
+
+    /**
+     * Move the oldest full segment in memory to the temporary file.
+     *
+     * @param segs Current segments.
+     * @return Buffer of the segment, which may be reused.
+     * @throws IOException If an I/O error occurs.
+     */
+    private ByteBuffer evict(Segment[] segs) throws IOException {
+        ByteBuffer buffer = segs[firstInMemory].buffer;
+        long position = spill.write(buffer);
+        long stamp = evictions.writeLock();
+        try {
+            segs[firstInMemory] = new Segment(null, position);
+        } finally {
+            evictions.unlockWrite(stamp);
+        }
+        ++firstInMemory;
+        return buffer;
+    }
+
+    private static ByteBuffer allocate() {
+        ByteBuffer buffer;
+        synchronized (FREE_BUFFERS) {
+            buffer = FREE_BUFFERS.poll();
+        }
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(SEGMENT_SIZE);
+    }
+
+    private static void release(ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            synchronized (FREE_BUFFERS) {
+                if (FREE_BUFFERS.size() < MAX_FREE_BUFFERS) {
+                    FREE_BUFFERS.add(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Release memory held by this arena, returning its direct buffers to the
+     * pool. It must not be used afterwards.
+     */
+    void clear() {
+        Segment[] segs = segments;
+        for (int i = firstInMemory; i < segmentCount; ++i) {
+            release(segs[i].buffer);
+        }
+        spill.inMemory.addAndGet(-memory);
+        segments = new Segment[16];
+        segmentCount = 0;
+        firstInMemory = 0;
+        size = 0;
+        memory = 0;
+    }
+}
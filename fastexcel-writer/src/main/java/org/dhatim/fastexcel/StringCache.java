@@ -15,64 +15,282 @@
  */
 package org.dhatim.fastexcel;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map.Entry;
-import java.util.stream.Stream;
-
-import static java.util.Comparator.comparingInt;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Thread-safe cache for shared strings. Each string is uniquely identified by
- * an integer. See {@link CachedString}.
+ * an integer.
+ * <p>
+ * Unique strings are not kept on the heap: they are stored XML-escaped and
+ * UTF-8 encoded in {@link StringArena}s, and located through compact open
+ * addressing hash tables, so that {@code xl/sharedStrings.xml} is written by
+ * streaming the arenas. Strings are spread over several stripes, each with
+ * its own lock, table and arena. Strings already in the cache are looked up
+ * without locking, and new strings only lock their stripe while they are
+ * added, so that concurrent writers filling different worksheets rarely
+ * contend. Beyond a memory budget, arenas spill to a temporary file, which is
+ * deleted by {@link #close()}; strings moved there are read back without
+ * holding any lock.
  */
-class StringCache {
+class StringCache implements Closeable {
+
+    /**
+     * Default number of bytes kept in memory by arenas.
+     */
+    static final long DEFAULT_MEMORY_BUDGET = Math.min(64L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int CHUNK_SHIFT = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final byte[] SI_START = Writer.bytes("<si><t xml:space=\"preserve\">");
+    private static final byte[] SI_END = Writer.bytes("</t></si>");
+    /**
+     * Escaped bytes of the string being looked up, for each thread.
+     */
+    private static final ThreadLocal<Writer> SCRATCH = ThreadLocal.withInitial(() -> new Writer(256));
 
     /**
      * Number of strings, including duplicates.
      */
-    private long count;
+    private final LongAdder count = new LongAdder();
     /**
-     * Map giving string index for each unique string.
+     * Index of the next unique string.
      */
-    private final HashMap<String, CachedString> strings = new HashMap<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final StringArena.Spill spill = new StringArena.Spill(DEFAULT_MEMORY_BUDGET);
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    /**
+     * Location of each unique string, by index, in chunks: offset in the
+     * arena of its stripe, shifted left by {@link #STRIPE_BITS}, or'ed with
+     * the stripe number.
+     */
+    private volatile long[][] locations = new long[16][];
+
+    StringCache() {
+        for (int i = 0; i < STRIPES; ++i) {
+            stripes[i] = new Stripe(i);
+        }
+    }
+
+    /**
+     * Set the number of bytes unique strings may take in memory before they
+     * spill to a temporary file.
+     *
+     * @param bytes Memory budget.
+     */
+    void setMemoryBudget(long bytes) {
+        spill.setBudget(bytes);
+    }
 
     /**
      * Add a string to this cache.
      *
      * @param s String to cache.
-     * @return Cached string.
+     * @return Index of the cached string.
      */
-    CachedString cacheString(String s) {
-        CachedString result;
-        synchronized (strings) {
-            ++count;
-            result = strings.get(s);
-            if (result == null) {
-                result = new CachedString(s, strings.size());
-                strings.put(s, result);
+    int cacheString(String s) {
+        count.increment();
+        int h = s.hashCode();
+        h ^= h >>> 16;
+        Stripe stripe = stripes[h & (STRIPES - 1)];
+        Writer scratch = SCRATCH.get();
+        try {
+            scratch.reset();
+            scratch.appendEscaped(s);
+            byte[] bytes = scratch.buffer();
+            int len = scratch.length();
+            while (true) {
+                Table table = stripe.table;
+                int found = stripe.find(table, bytes, len, h);
+                if (found >= 0) {
+                    return found;
+                }
+                int slot = -1 - found;
+                synchronized (stripe) {
+                    // Strings added since the lookup may be equal: look up again
+                    if (stripe.table == table && table.indexes.get(slot) == 0) {
+                        return stripe.add(table, slot, bytes, len, h);
+                    }
+                }
             }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private long location(int index) {
+        return locations[index >>> CHUNK_SHIFT][index & (CHUNK_SIZE - 1)];
+    }
+
+    private void setLocation(int index, long location) {
+        int chunk = index >>> CHUNK_SHIFT;
+        long[][] dir = locations;
+        if (chunk >= dir.length || dir[chunk] == null) {
+            dir = addChunk(chunk);
         }
-        return result;
+        dir[chunk][index & (CHUNK_SIZE - 1)] = location;
+    }
+
+    private synchronized long[][] addChunk(int chunk) {
+        long[][] dir = locations;
+        if (chunk >= dir.length) {
+            dir = Arrays.copyOf(dir, Math.max(2 * dir.length, chunk + 1));
+        }
+        if (dir[chunk] == null) {
+            dir[chunk] = new long[CHUNK_SIZE];
+        }
+        locations = dir;
+        return dir;
     }
 
     /**
-     * Write this cache as an XML file.
+     * Write this cache as an XML file. Strings are written in index order;
+     * this must not be called concurrently with
+     * {@link #cacheString(String)}.
      *
      * @param w Output writer.
      * @throws IOException If an I/O error occurs.
      */
     void write(Writer w) throws IOException {
-        w.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"").append(count).append("\" uniqueCount=\"").append(strings.size()).append("\">");
-        Stream<String> sortedStrings = strings.entrySet().stream()
-                .sorted(comparingInt(e -> e.getValue().getIndex()))
-                .map(Entry::getKey);
-        Iterator<String> it = sortedStrings.iterator();
-        while (it.hasNext()) {
-            w.append("<si><t xml:space=\"preserve\">").appendEscaped(it.next()).append("</t></si>");
+        int uniqueCount = nextIndex.get();
+        w.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"").append(count.sum()).append("\" uniqueCount=\"").append(uniqueCount).append("\">");
+        for (int i = 0; i < uniqueCount; ++i) {
+            long location = location(i);
+            StringArena arena = stripes[(int) location & (STRIPES - 1)].arena;
+            long offset = location >>> STRIPE_BITS;
+            int len = arena.length(offset);
+            w.append(SI_START).append(arena.read(offset), 0, len).append(SI_END);
         }
         w.append("</sst>");
     }
+
+    /**
+     * Release memory and delete the temporary file, if any. This cache must
+     * not be used afterwards.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.arena.clear();
+            }
+        }
+        spill.close();
+    }
+
+    /**
+     * Open addressing hash table of a stripe. Slots are filled while holding
+     * the lock of the stripe, and read without locking: the index of a string
+     * is set last, so that its hash code, location and bytes are visible to
+     * threads which see it.
+     */
+    private static final class Table {
+
+        /**
+         * Hash codes of strings.
+         */
+        final int[] hashes;
+        /**
+         * String indexes plus one, 0 for empty slots.
+         */
+        final AtomicIntegerArray indexes;
+
+        Table(int capacity) {
+            hashes = new int[capacity];
+            indexes = new AtomicIntegerArray(capacity);
+        }
+    }
+
+    /**
+     * Part of the cache holding strings whose hash code falls in the same
+     * bucket. Strings are added while holding its lock.
+     */
+    private final class Stripe {
+
+        private final int number;
+        private final StringArena arena = new StringArena(spill);
+        /**
+         * Hash table, replaced by a larger one as strings are added.
+         */
+        private volatile Table table = new Table(64);
+        private int size;
+
+        Stripe(int number) {
+            this.number = number;
+        }
+
+        /**
+         * Look up a string, without locking.
+         *
+         * @param t Hash table.
+         * @param bytes Escaped bytes of the string.
+         * @param len Number of bytes.
+         * @param h Hash code of the string.
+         * @return Index of the string, or {@code -1 - slot} if not found,
+         * {@code slot} being the empty slot where it belongs.
+         * @throws IOException If an I/O error occurs.
+         */
+        int find(Table t, byte[] bytes, int len, int h) throws IOException {
+            int mask = t.hashes.length - 1;
+            int slot = (h >>> STRIPE_BITS) & mask;
+            int entry;
+            while ((entry = t.indexes.get(slot)) != 0) {
+                int index = entry - 1;
+                if (t.hashes[slot] == h && arena.equals(location(index) >>> STRIPE_BITS, bytes, len)) {
+                    return index;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1 - slot;
+        }
+
+        /**
+         * Add a string, while holding the lock of this stripe.
+         *
+         * @param t Hash table, which must be the current one.
+         * @param slot Empty slot where the string belongs.
+         * @param bytes Escaped bytes of the string.
+         * @param len Number of bytes.
+         * @param h Hash code of the string.
+         * @return Index of the string.
+         * @throws IOException If an I/O error occurs.
+         */
+        int add(Table t, int slot, byte[] bytes, int len, int h) throws IOException {
+            int index = nextIndex.getAndIncrement();
+            long offset = arena.append(bytes, len);
+            setLocation(index, offset << STRIPE_BITS | number);
+            t.hashes[slot] = h;
+            t.indexes.set(slot, index + 1);
+            if (++size > t.hashes.length / 2) {
+                rehash(t);
+            }
+            return index;
+        }
+
+        private void rehash(Table old) {
+            Table t = new Table(2 * old.hashes.length);
+            int mask = t.hashes.length - 1;
+            for (int i = 0; i < old.hashes.length; ++i) {
+                int entry = old.indexes.get(i);
+                if (entry != 0) {
+                    int slot = (old.hashes[i] >>> STRIPE_BITS) & mask;
+                    while (t.indexes.get(slot) != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    t.hashes[slot] = old.hashes[i];
+                    t.indexes.set(slot, entry);
+                }
+            }
+            table = t;
+        }
+    }
 }
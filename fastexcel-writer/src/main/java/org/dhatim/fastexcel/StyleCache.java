@@ -17,10 +17,12 @@ package org.dhatim.fastexcel;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
@@ -37,6 +39,16 @@ final class StyleCache {
     private final ConcurrentMap<Border, Integer> borders = new ConcurrentHashMap<>();
     private final ConcurrentMap<Style, Integer> styles = new ConcurrentHashMap<>();
     private final ConcurrentMap<DifferentialFormat, Integer> dxfs = new ConcurrentHashMap<>();
+    /**
+     * Styles by index, reverse of {@link #styles}. Grown and filled while
+     * holding the lock of {@link #styles}.
+     */
+    private volatile Style[] stylesByIndex = new Style[16];
+    /**
+     * Memo of {@link #mergeAndCacheStyle}, so that applying the same style
+     * attributes to the same styles again costs a single lookup.
+     */
+    private final ConcurrentMap<StyleMerge, Integer> mergedStyles = new ConcurrentHashMap<>();
 
     /**
      * Default constructor. Pre-cache Excel-reserved stuff.
@@ -125,15 +137,64 @@ final class StyleCache {
         return cacheStuff(dxfs, f);
     }
 
+    /**
+     * Merge style attributes into a cached style, and cache the resulting
+     * style.
+     *
+     * @param currentStyle Index of the cached style.
+     * @param numberingFormat Numbering format, or {@code null} to keep the
+     * current one.
+     * @param font Font, or {@link Font#DEFAULT} to keep the current one.
+     * @param fill Fill pattern, or {@link Fill#NONE} to keep the current one.
+     * @param border Border, or {@link Border#NONE} to keep the current one.
+     * @param alignment Alignment, or {@code null} to keep the current one.
+     * @param protection Protection, or {@code null} to keep the current one.
+     * @return Index of the cached merged style.
+     */
     int mergeAndCacheStyle(int currentStyle, String numberingFormat, Font font, Fill fill, Border border, Alignment alignment, Protection protection) {
-        Style original = styles.entrySet().stream().filter(e -> e.getValue().equals(currentStyle)).map(Entry::getKey).findFirst().orElse(null);
-        Style s = new Style(original, cacheValueFormatting(numberingFormat), cacheFont(font), cacheFill(fill), cacheBorder(border), alignment, protection);
-        return cacheStuff(styles, s);
+        StyleMerge merge = new StyleMerge(currentStyle, numberingFormat, font, fill, border, alignment, protection);
+        Integer result = mergedStyles.get(merge);
+        if (result == null) {
+            Style[] byIndex = stylesByIndex;
+            Style original = currentStyle >= 0 && currentStyle < byIndex.length ? byIndex[currentStyle] : null;
+            Style s = new Style(original, cacheValueFormatting(numberingFormat), cacheFont(font), cacheFill(fill), cacheBorder(border), alignment, protection);
+            result = cacheStyle(s);
+            mergedStyles.putIfAbsent(merge, result);
+        }
+        return result;
+    }
+
+    /**
+     * Cache the given style.
+     *
+     * @param s Style.
+     * @return Index of the cached style.
+     */
+    private int cacheStyle(Style s) {
+        Integer index = styles.get(s);
+        if (index == null) {
+            synchronized (styles) {
+                index = styles.get(s);
+                if (index == null) {
+                    index = styles.size();
+                    Style[] byIndex = stylesByIndex;
+                    if (index == byIndex.length) {
+                        byIndex = Arrays.copyOf(byIndex, 2 * byIndex.length);
+                    }
+                    byIndex[index] = s;
+                    stylesByIndex = byIndex;
+                    styles.put(s, index);
+                }
+            }
+        }
+        return index;
     }
 
     void replaceDefaultFont(Font font) {
         fonts.entrySet().removeIf(entry->entry.getValue()==0);
         fonts.putIfAbsent(font,0);
+        // Merged styles may refer to the former default font
+        mergedStyles.clear();
     }
 
     /**
@@ -175,4 +236,52 @@ final class StyleCache {
         });
         w.append("</styleSheet>");
     }
+
+    /**
+     * Key of {@link #mergedStyles}: style attributes merged into a cached
+     * style.
+     */
+    private static final class StyleMerge {
+
+        private final int currentStyle;
+        private final String numberingFormat;
+        private final Font font;
+        private final Fill fill;
+        private final Border border;
+        private final Alignment alignment;
+        private final Protection protection;
+
+        StyleMerge(int currentStyle, String numberingFormat, Font font, Fill fill, Border border, Alignment alignment, Protection protection) {
+            this.currentStyle = currentStyle;
+            this.numberingFormat = numberingFormat;
+            this.font = font;
+            this.fill = fill;
+            this.border = border;
+            this.alignment = alignment;
+            this.protection = protection;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(currentStyle, numberingFormat, font, fill, border, alignment, protection);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            boolean result;
+            if (obj != null && obj.getClass() == this.getClass()) {
+                StyleMerge other = (StyleMerge) obj;
+                result = currentStyle == other.currentStyle
+                        && Objects.equals(numberingFormat, other.numberingFormat)
+                        && Objects.equals(font, other.font)
+                        && Objects.equals(fill, other.fill)
+                        && Objects.equals(border, other.border)
+                        && Objects.equals(alignment, other.alignment)
+                        && Objects.equals(protection, other.protection);
+            } else {
+                result = false;
+            }
+            return result;
+        }
+    }
 }
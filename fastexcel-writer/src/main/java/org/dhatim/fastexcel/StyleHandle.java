@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+/**
+ * Style compiled once by {@link Workbook#compileStyle(java.util.function.Consumer)},
+ * holding the index of the resolved cell format. Applying it to cells, e.g.
+ * with {@link Worksheet#value(int, int, String, StyleHandle)}, replaces
+ * their style without any merge or allocation.
+ * <p>
+ * Handles are immutable and may be shared by the worksheets of the workbook
+ * which compiled them, from any thread.
+ */
+public final class StyleHandle {
+
+    private final Workbook workbook;
+    private final int style;
+
+    /**
+     * Constructor.
+     *
+     * @param workbook Workbook caching the style.
+     * @param style Cached style index.
+     */
+    StyleHandle(Workbook workbook, int style) {
+        this.workbook = workbook;
+        this.style = style;
+    }
+
+    /**
+     * Get the cached style index, checking this handle can be used in the
+     * given worksheet.
+     *
+     * @param worksheet Worksheet.
+     * @return Cached style index.
+     * @throws IllegalArgumentException If this handle was compiled by
+     * another workbook.
+     */
+    int getStyle(Worksheet worksheet) {
+        if (worksheet.getWorkbook() != workbook) {
+            throw new IllegalArgumentException("Style compiled by another workbook");
+        }
+        return style;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Styles applied to rectangles of cells of a worksheet, resolved lazily: the
+ * style of each cell is only computed when its row is written, so that
+ * memory does not depend on the styled area.
+ * <p>
+ * Rectangles are numbered in the order they are added, starting from 1. The
+ * effective style of a cell is its own style merged with each rectangle
+ * containing it, in order, and skipping rectangles already included in its
+ * own style (see {@link RowData#getStyleSequence(int)}). Rectangles are kept
+ * in a {@link RectangleIndex}, so that the rectangles containing a cell are
+ * found without visiting the others. Rows are written in increasing order:
+ * rectangles overlapping the rows being written are selected once, sorted by
+ * top row, and each of them is activated when its first row is written and
+ * deactivated after its last row. Rectangles are dropped from the index once
+ * all their rows are written.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class StyleRectangles {
+
+    /**
+     * Rectangle of cells and the style merged into them.
+     */
+    private static final class Rectangle {
+
+        private final int sequence;
+        private final int top;
+        private final int left;
+        private final int bottom;
+        private final int right;
+        private final IntUnaryOperator merge;
+        /**
+         * Result of {@link #merge} for each style index, plus one; 0 if not
+         * computed yet.
+         */
+        private int[] merged = new int[16];
+
+        Rectangle(int sequence, int top, int left, int bottom, int right, IntUnaryOperator merge) {
+            this.sequence = sequence;
+            this.top = top;
+            this.left = left;
+            this.bottom = bottom;
+            this.right = right;
+            this.merge = merge;
+        }
+
+        int apply(int style) {
+            if (style >= merged.length) {
+                merged = Arrays.copyOf(merged, Math.max(style + 1, 2 * merged.length));
+            }
+            int result = merged[style];
+            if (result == 0) {
+                result = merge.applyAsInt(style) + 1;
+                merged[style] = result;
+            }
+            return result - 1;
+        }
+    }
+
+    private static final Comparator<Rectangle> BY_SEQUENCE = Comparator.comparingInt(rect -> rect.sequence);
+    private static final Comparator<Rectangle> BY_TOP = Comparator.comparingInt(rect -> rect.top);
+
+    private final RectangleIndex<Rectangle> rectangles = new RectangleIndex<>();
+    /**
+     * Rectangles overlapping the rows being written, sorted by top row.
+     */
+    private final List<Rectangle> window = new ArrayList<>();
+    /**
+     * Index in {@link #window} of the first rectangle not activated yet.
+     */
+    private int pending;
+    /**
+     * Rectangles containing the row being written, sorted by sequence
+     * number.
+     */
+    private final List<Rectangle> active = new ArrayList<>();
+    /**
+     * Bottom row of {@link #active} rectangles, -1 if none.
+     */
+    private int activeBottom = -1;
+    /**
+     * Rectangles containing the cell being resolved by
+     * {@link #resolve(int, int, int, int)}.
+     */
+    private final List<Rectangle> matches = new ArrayList<>();
+    private final Consumer<Rectangle> addMatch = matches::add;
+    private int sequence;
+    private int lastRow = -1;
+
+    /**
+     * Add a rectangle.
+     *
+     * @param top Top row.
+     * @param left Left column.
+     * @param bottom Bottom row.
+     * @param right Right column.
+     * @param merge Function merging the style of a cell with the style of
+     * the rectangle.
+     */
+    void add(int top, int left, int bottom, int right, IntUnaryOperator merge) {
+        rectangles.add(top, left, bottom, right, new Rectangle(++sequence, top, left, bottom, right, merge));
+        lastRow = Math.max(lastRow, bottom);
+    }
+
+    /**
+     * Get the sequence number of the last rectangle added.
+     *
+     * @return Sequence number, 0 if none.
+     */
+    int sequence() {
+        return sequence;
+    }
+
+    /**
+     * Get the bottom row of rectangles.
+     *
+     * @return Zero-based row number, -1 if none.
+     */
+    int lastRow() {
+        return lastRow;
+    }
+
+    /**
+     * Compute the effective style of a cell.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param style Own style of the cell.
+     * @param since Sequence number of the last rectangle included in its own
+     * style.
+     * @return Cached style index.
+     */
+    int resolve(int r, int c, int style, int since) {
+        if (since >= sequence || rectangles.isEmpty()) {
+            return style;
+        }
+        rectangles.forEachOverlapping(r, c, r, c, addMatch);
+        if (matches.size() > 1) {
+            matches.sort(BY_SEQUENCE);
+        }
+        for (int i = 0; i < matches.size(); ++i) {
+            Rectangle rect = matches.get(i);
+            if (rect.sequence > since) {
+                style = rect.apply(style);
+            }
+        }
+        matches.clear();
+        return style;
+    }
+
+    /**
+     * Get the columns of a row covered by rectangles.
+     *
+     * @param r Zero-based row number.
+     * @param columns Set of columns, to which the covered columns are added.
+     */
+    void coveredColumns(int r, BitSet columns) {
+        rectangles.coveredColumns(r, columns);
+    }
+
+    /**
+     * Select the rectangles overlapping the rows about to be written.
+     *
+     * @param fromRow Zero-based number of the first row.
+     * @param endRow Zero-based number of the row to stop at, excluded.
+     */
+    void selectRows(int fromRow, int endRow) {
+        window.clear();
+        active.clear();
+        pending = 0;
+        activeBottom = -1;
+        if (fromRow < endRow) {
+            rectangles.forEachOverlapping(fromRow, 0, endRow - 1, Integer.MAX_VALUE, window::add);
+            window.sort(BY_TOP);
+        }
+    }
+
+    /**
+     * Find the next row of the selected rectangles.
+     *
+     * @param from Zero-based number of the first candidate row.
+     * @param endRow Zero-based number of the row to stop at, excluded.
+     * @return Zero-based row number, or {@code endRow}.
+     */
+    int nextRow(int from, int endRow) {
+        if (activeBottom >= from) {
+            return from;
+        } else if (pending < window.size()) {
+            return Math.min(endRow, Math.max(window.get(pending).top, from));
+        }
+        return endRow;
+    }
+
+    /**
+     * Select the rectangles containing a row about to be written, among the
+     * ones selected by {@link #selectRows(int, int)}. Rows must be selected in
+     * increasing order, without skipping rows of selected rectangles (see
+     * {@link #nextRow(int, int)}).
+     *
+     * @param r Zero-based row number.
+     * @return Number of columns the row needs to hold the selected
+     * rectangles, 0 if none.
+     */
+    int selectRow(int r) {
+        if (activeBottom < r) {
+            active.clear();
+        } else {
+            active.removeIf(rect -> rect.bottom < r);
+        }
+        for (; pending < window.size() && window.get(pending).top <= r; ++pending) {
+            Rectangle rect = window.get(pending);
+            if (rect.bottom >= r) {
+                int i = Collections.binarySearch(active, rect, BY_SEQUENCE);
+                active.add(-i - 1, rect);
+            }
+        }
+        int length = 0;
+        activeBottom = -1;
+        for (int i = 0; i < active.size(); ++i) {
+            Rectangle rect = active.get(i);
+            length = Math.max(length, rect.right + 1);
+            activeBottom = Math.max(activeBottom, rect.bottom);
+        }
+        return length;
+    }
+
+    /**
+     * Set the effective style of the cells of a row in the selected
+     * rectangles. The row must be written right after, as sequence numbers
+     * of its cells are left as is.
+     *
+     * @param row Row, with enough columns for the selected rectangles.
+     * @param rowStyle Default style of the row, merged instead of the style
+     * of cells which have none.
+     */
+    void resolveRow(RowData row, int rowStyle) {
+        for (int i = 0; i < active.size(); ++i) {
+            Rectangle rect = active.get(i);
+            for (int c = rect.left; c <= rect.right; ++c) {
+                if (rect.sequence > row.getStyleSequence(c)) {
+                    int style = row.getStyle(c);
+                    row.setStyle(c, rect.apply(style == 0 ? rowStyle : style));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the rectangles whose rows are all written.
+     *
+     * @param endRow Zero-based number of the first row not written.
+     */
+    void removeRowsBefore(int endRow) {
+        rectangles.removeRowsBefore(endRow);
+        window.clear();
+        active.clear();
+        pending = 0;
+        activeBottom = -1;
+    }
+}
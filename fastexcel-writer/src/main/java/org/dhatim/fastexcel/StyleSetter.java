@@ -24,7 +24,7 @@ package org.dhatim.fastexcel;
  *  ws.range(1, 1, 1, 10).style().borderStyle("thin").bold().fillColor(Color.GRAY4).horizontalAlignment("center").set();
  * </pre></blockquote>
  */
-public class StyleSetter extends GenericStyleSetter<StyleSetter>{
+public class StyleSetter extends RangeStyleSetter<StyleSetter>{
 
     /**
      * Range of cells where the style is applied.
@@ -56,7 +56,7 @@ public class StyleSetter extends GenericStyleSetter<StyleSetter>{
      * done otherwise style changes are lost!</b>
      */
     public void set() {
-        super.setStyle(true, range.getStyles(), range::applyStyle);
+        super.setStyle(true, range::applyStyle);
     }
 
     @Override
@@ -17,15 +17,18 @@ package org.dhatim.fastexcel;
 
 import java.time.*;
 import java.time.chrono.ChronoZonedDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.Calendar;
 import java.util.Date;
+import java.util.Objects;
 import java.util.TimeZone;
 
 /**
  * Excel timestamp utility methods. For more information, check
  * <a href="https://support.office.com/en-us/article/DATEVALUE-function-df8b07d4-7761-4a93-bc33-b7471bbff252">this</a>
  * out.
+ * <p>
+ * Serial numbers are computed from epoch days, with offsets of timezones
+ * cached between their transitions, so that the {@code serialNumber} methods
+ * do not allocate. The {@code convert} methods return the same values, boxed.
  */
 public final class TimestampUtil {
 
@@ -36,6 +39,31 @@ public final class TimestampUtil {
     public static final int SECONDS_PER_DAY = (HOURS_PER_DAY * MINUTES_PER_HOUR * SECONDS_PER_MINUTE);
     public static final long DAY_MILLISECONDS = SECONDS_PER_DAY * 1000L;
 
+    /**
+     * Epoch day of 1900-01-01, whose serial number is 1.
+     */
+    private static final long EPOCH_DAY_1900 = LocalDate.of(1900, 1, 1).toEpochDay();
+
+    /**
+     * Offsets of the system timezone, with the identifier of that timezone.
+     */
+    private static final class DefaultZone {
+
+        final String id;
+        final ZoneOffsets offsets;
+
+        DefaultZone(TimeZone tz) {
+            this.id = tz.getID();
+            this.offsets = ZoneOffsets.of(tz.toZoneId());
+        }
+    }
+
+    /**
+     * Last used system timezone, checked against the default timezone on each
+     * call so that {@link TimeZone#setDefault(TimeZone)} is honoured.
+     */
+    private static volatile DefaultZone defaultZone;
+
     /**
      * Convert a {@link Date} to a serial number. Note Excel timestamps do not
      * carry any timezone information; this method uses the system timezone to
@@ -47,25 +75,11 @@ public final class TimestampUtil {
      * @return Serial number value.
      */
     public static Double convertDate(Date date) {
-        Calendar calStart = Calendar.getInstance();
-        calStart.setTime(date);
-        int year = calStart.get(Calendar.YEAR);
-        int dayOfYear = calStart.get(Calendar.DAY_OF_YEAR);
-        int hour = calStart.get(Calendar.HOUR_OF_DAY);
-        int minute = calStart.get(Calendar.MINUTE);
-        int second = calStart.get(Calendar.SECOND);
-        int milliSecond = calStart.get(Calendar.MILLISECOND);
-        return internalGetExcelDate(year, dayOfYear, hour, minute, second, milliSecond);
+        return serialNumber(date);
     }
 
     public static Double convertDate(LocalDateTime date) {
-        int year = date.getYear();
-        int dayOfYear = date.getDayOfYear();
-        int hour = date.getHour();
-        int minute = date.getMinute();
-        int second = date.getSecond();
-        int milliSecond = date.getNano() / 1_000_000;
-        return internalGetExcelDate(year, dayOfYear, hour, minute, second, milliSecond);
+        return serialNumber(date);
     }
 
     /**
@@ -75,13 +89,7 @@ public final class TimestampUtil {
      * @return Serial number value.
      */
     public static Double convertDate(LocalDate date) {
-        int year = date.getYear();
-        int dayOfYear = date.getDayOfYear();
-        int hour = 0;
-        int minute = 0;
-        int second = 0;
-        int milliSecond = 0;
-        return internalGetExcelDate(year, dayOfYear, hour, minute, second, milliSecond);
+        return serialNumber(date);
     }
 
     /**
@@ -91,11 +99,99 @@ public final class TimestampUtil {
      * @return Serial number value.
      */
     public static Double convertZonedDateTime(ZonedDateTime zdt) {
-        return convertDate(zdt.toLocalDateTime());
+        return serialNumber(zdt);
     }
 
-    private static double internalGetExcelDate(int year, int dayOfYear, int hour, int minute, int second, int milliSecond) {
-        if (year < 1900) {
+    /**
+     * Convert a {@link Date} to a serial number, in the system timezone. See
+     * {@link #convertDate(Date)}.
+     *
+     * @param date Date value.
+     * @return Serial number value.
+     */
+    public static double serialNumber(Date date) {
+        TimeZone tz = TimeZone.getDefault();
+        DefaultZone zone = defaultZone;
+        if (zone == null || !zone.id.equals(tz.getID())) {
+            zone = new DefaultZone(tz);
+            defaultZone = zone;
+        }
+        return serialNumber(date.getTime(), zone.offsets);
+    }
+
+    /**
+     * Convert a {@link Date} to a serial number, using its local date and
+     * time in the given timezone.
+     *
+     * @param date Date value.
+     * @param zone Timezone.
+     * @return Serial number value.
+     */
+    public static double serialNumber(Date date, ZoneId zone) {
+        return serialNumber(date.getTime(), zone);
+    }
+
+    /**
+     * Convert a {@link LocalDateTime} to a serial number.
+     *
+     * @param date Local date and time value.
+     * @return Serial number value.
+     */
+    public static double serialNumber(LocalDateTime date) {
+        return serialNumber(date.toLocalDate().toEpochDay(), date.toLocalTime().toNanoOfDay() / 1_000_000);
+    }
+
+    /**
+     * Convert a {@link LocalDate} to a serial number.
+     *
+     * @param date Local date value.
+     * @return Serial number value.
+     */
+    public static double serialNumber(LocalDate date) {
+        return serialNumber(date.toEpochDay(), 0);
+    }
+
+    /**
+     * Convert a {@link ZonedDateTime} to a serial number, using its local date
+     * and time.
+     *
+     * @param zdt Date and timezone values.
+     * @return Serial number value.
+     */
+    public static double serialNumber(ZonedDateTime zdt) {
+        return serialNumber(zdt.toLocalDateTime());
+    }
+
+    /**
+     * Convert an instant to a serial number, using its local date and time in
+     * the given timezone.
+     *
+     * @param epochMillis Instant, in milliseconds since the epoch.
+     * @param zone Timezone.
+     * @return Serial number value.
+     */
+    public static double serialNumber(long epochMillis, ZoneId zone) {
+        Objects.requireNonNull(zone, "Timezone must not be null");
+        return serialNumber(epochMillis, ZoneOffsets.of(zone));
+    }
+
+    /**
+     * Convert a day to a serial number.
+     *
+     * @param epochDay Number of days since 1970-01-01.
+     * @return Serial number value.
+     */
+    public static double epochDaySerialNumber(long epochDay) {
+        return serialNumber(epochDay, 0);
+    }
+
+    private static double serialNumber(long epochMillis, ZoneOffsets offsets) {
+        long localMillis = epochMillis + offsets.offsetMillis(epochMillis);
+        return serialNumber(Math.floorDiv(localMillis, DAY_MILLISECONDS), Math.floorMod(localMillis, DAY_MILLISECONDS));
+    }
+
+    private static double serialNumber(long epochDay, long millisOfDay) {
+        if (epochDay < EPOCH_DAY_1900) {
             return BAD_DATE;
         }
 
@@ -106,10 +202,11 @@ public final class TimestampUtil {
         // be 4 hours.
         // E.g. 2004-03-28 04:00 CEST - 2004-03-28 00:00 CET is 3 hours
         // and 2004-10-31 04:00 CET - 2004-10-31 00:00 CEST is 5 hours
-        double fraction = (((hour * 60.0 + minute) * 60.0 + second) * 1000.0 + milliSecond) / DAY_MILLISECONDS;
+        double fraction = (double) millisOfDay / DAY_MILLISECONDS;
 
-        double value = fraction + absoluteDay(year, dayOfYear);
+        double value = fraction + (epochDay - EPOCH_DAY_1900 + 1);
 
+        // Excel wrongly considers 1900 a leap year
         if (value >= 60) {
             value++;
         }
@@ -117,21 +214,4 @@ public final class TimestampUtil {
         return value;
     }
 
-    private static int absoluteDay(int year, int dayOfYear) {
-        return dayOfYear + daysInPriorYears(year);
-    }
-
-    static int daysInPriorYears(int yr) {
-        if (yr < 1900) {
-            throw new IllegalArgumentException("'year' must be 1900 or greater");
-        }
-        int yr1 = yr - 1;
-        int leapDays = yr1 / 4   // plus julian leap days in prior years
-                - yr1 / 100 // minus prior century years
-                + yr1 / 400 // plus years divisible by 400
-                - 460;      // leap days in previous 1900 years
-
-        return 365 * (yr - 1900) + leapDays;
-    }
-
 }
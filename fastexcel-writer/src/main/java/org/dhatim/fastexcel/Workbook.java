@@ -15,8 +15,6 @@
  */
 package org.dhatim.fastexcel;
 
-import com.github.rzymek.opczip.OpcOutputStream;
-
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -25,10 +23,11 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
 
 
 /**
@@ -44,8 +43,20 @@ public class Workbook implements Closeable {
     private final StringCache stringCache = new StringCache();
     private final StyleCache styleCache = new StyleCache();
     private final Properties properties = new Properties();
-    private final OpcOutputStream os;
+    private final XlsxOutputStream os;
     private final Writer writer;
+    private int compressionLevel;
+    private boolean parallelWorksheets;
+    private Executor compressionExecutor;
+    private Executor serializationExecutor;
+    private SharedStringsPolicy sharedStringsPolicy = SharedStringsPolicy.SHARED;
+    private volatile long rowsMemoryBudget;
+    private volatile int asyncFlushCapacity;
+    /**
+     * Worksheet being written to the output stream, when worksheets are not
+     * generated in parallel.
+     */
+    private Worksheet outputWorksheet;
     private final AtomicInteger maxTableIndex = new AtomicInteger(1);
 
     /**
@@ -60,7 +71,7 @@ public class Workbook implements Closeable {
      *                           page</a> for details.
      */
     public Workbook(OutputStream os, String applicationName, String applicationVersion) {
-        this.os = new OpcOutputStream(os);
+        this.os = new XlsxOutputStream(os);
         /* Tests showed that:
          * The default (-1) is level 6
          * Level 4 gives best size and very good time
@@ -87,6 +98,222 @@ public class Workbook implements Closeable {
      */
     public void setCompressionLevel(int level) {
         this.os.setLevel(level);
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Enable or disable parallel worksheet generation. When enabled, each
+     * worksheet is deflated into its own temporary file as it is flushed, on
+     * the thread calling {@link Worksheet#flush()} or
+     * {@link Worksheet#finish()}, instead of being written to the output
+     * stream. Worksheets can then be filled, flushed and finished
+     * concurrently from different threads. The deflated data is copied into
+     * the output stream without being compressed again when the worksheet is
+     * finished.
+     * <p>
+     * This must be set before any worksheet is flushed. Default is
+     * {@code false}.
+     *
+     * @param parallelWorksheets {@code true} to generate worksheets in
+     *                           parallel.
+     */
+    public void setParallelWorksheets(boolean parallelWorksheets) {
+        this.parallelWorksheets = parallelWorksheets;
+    }
+
+    /**
+     * Deflate worksheets concurrently on the given executor: worksheet files
+     * are split into blocks of 512 KiB, which are deflated in parallel and
+     * concatenated into a single zip entry. This lets a single huge worksheet
+     * use several cores, at the cost of a slightly larger output. Other files
+     * of the workbook are small and always deflated on the calling thread.
+     * <p>
+     * This must be set before any worksheet is flushed. Default is
+     * {@code null}, i.e. worksheets are deflated on the thread writing them.
+     *
+     * @param executor Executor deflating blocks, e.g.
+     *                 {@link java.util.concurrent.ForkJoinPool#commonPool()},
+     *                 or {@code null}.
+     */
+    public void setCompressionExecutor(Executor executor) {
+        this.compressionExecutor = executor;
+    }
+
+    /**
+     * Serialize large batches of flushed rows concurrently on the given
+     * executor: when a worksheet flushes at least 2048 rows at once, they
+     * are split into chunks of 1024 rows, which are formatted as XML in
+     * parallel into separate buffers, then written to the worksheet in order.
+     * Smaller flushes are serialized on the thread writing them.
+     * <p>
+     * This must be set before any worksheet is flushed. Default is
+     * {@code null}, i.e. rows are serialized on the thread writing them.
+     *
+     * @param executor Executor serializing chunks of rows, e.g.
+     *                 {@link java.util.concurrent.ForkJoinPool#commonPool()},
+     *                 or {@code null}.
+     */
+    public void setSerializationExecutor(Executor executor) {
+        this.serializationExecutor = executor;
+    }
+
+    /**
+     * Get the executor serializing chunks of flushed rows.
+     *
+     * @return Executor, or {@code null} if rows are serialized on the thread
+     * writing them.
+     */
+    Executor getSerializationExecutor() {
+        return serializationExecutor;
+    }
+
+    /**
+     * Set the amount of memory used to store unique shared strings. Strings
+     * are kept XML-escaped and UTF-8 encoded outside of the Java heap; beyond
+     * this budget, the oldest ones are moved to a temporary file until the
+     * workbook is finished. Default is 64 MiB, or an eighth of the maximum
+     * heap size if smaller.
+     *
+     * @param bytes Number of bytes shared strings may keep in memory.
+     */
+    public void setSharedStringsMemoryBudget(long bytes) {
+        stringCache.setMemoryBudget(bytes);
+    }
+
+    /**
+     * Set the policy deciding whether string values are written to the shared
+     * strings table or inline. It applies to columns of all worksheets whose
+     * policy is not set with
+     * {@link Worksheet#sharedStringsPolicy(int, SharedStringsPolicy)}, and
+     * should be set before any string is written. Strings written with
+     * {@link Worksheet#inlineString(int, int, String)} are always inline.
+     * Default is {@link SharedStringsPolicy#SHARED}.
+     *
+     * @param policy Shared strings policy.
+     */
+    public void setSharedStringsPolicy(SharedStringsPolicy policy) {
+        this.sharedStringsPolicy = Objects.requireNonNull(policy);
+    }
+
+    /**
+     * Get the default shared strings policy of columns.
+     *
+     * @return Shared strings policy.
+     */
+    SharedStringsPolicy getSharedStringsPolicy() {
+        return sharedStringsPolicy;
+    }
+
+    /**
+     * Set a memory budget for the rows each worksheet keeps in memory. When
+     * the estimated size of the rows of a worksheet exceeds this budget as a
+     * value is set, the rows before the last row written so far are flushed,
+     * as with {@link Worksheet#flush()}. Automatic flushing thus expects rows
+     * to be written from top to bottom, and styles and merged ranges to be
+     * set before the rows they apply to are flushed.
+     * <p>
+     * Unless worksheets are generated in parallel (see
+     * {@link #setParallelWorksheets(boolean)}), a worksheet is not flushed
+     * automatically while another worksheet is being written to the output
+     * stream. See {@link Worksheet#getBufferedBytesHighWaterMark()} for the
+     * memory actually used. Default is {@code 0}, i.e. rows are only flushed
+     * explicitly.
+     *
+     * @param bytes Estimated number of bytes of rows each worksheet may keep in
+     *              memory, or {@code 0} to disable automatic flushing.
+     */
+    public void setRowsMemoryBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative");
+        }
+        this.rowsMemoryBudget = bytes;
+    }
+
+    /**
+     * Get the memory budget for the rows of each worksheet.
+     *
+     * @return Number of bytes, or {@code 0} if rows are only flushed
+     * explicitly.
+     */
+    long getRowsMemoryBudget() {
+        return rowsMemoryBudget;
+    }
+
+    /**
+     * Serialize the rows flushed from each worksheet on a background thread.
+     * {@link Worksheet#flush()}, and automatic flushes (see
+     * {@link #setRowsMemoryBudget(long)}), then only detach the rows to write
+     * and hand them over to a thread dedicated to the worksheet, which formats
+     * them as XML, deflates them and writes them to the output, while the
+     * calling thread goes on producing rows.
+     * <p>
+     * Flushed rows stay in memory until written: when the given number of
+     * flushes are pending, flushing blocks until the oldest one is written.
+     * An error raised by the background thread is thrown by the next flush,
+     * or by {@link Worksheet#finish()}, which waits for pending rows to be
+     * written. This must be set before any worksheet is flushed. Default is
+     * {@code 0}, i.e. rows are serialized on the thread flushing them.
+     *
+     * @param maxPendingFlushes Number of flushes which may wait to be
+     *                          written, or {@code 0} to disable background
+     *                          serialization.
+     */
+    public void setAsyncFlush(int maxPendingFlushes) {
+        if (maxPendingFlushes < 0) {
+            throw new IllegalArgumentException("Number of pending flushes must not be negative");
+        }
+        this.asyncFlushCapacity = maxPendingFlushes;
+    }
+
+    /**
+     * Get the number of flushes of a worksheet which may wait to be written
+     * by a background thread.
+     *
+     * @return Number of flushes, or {@code 0} if rows are serialized on the
+     * thread flushing them.
+     */
+    int getAsyncFlushCapacity() {
+        return asyncFlushCapacity;
+    }
+
+    /**
+     * Check whether a worksheet may be written to the output stream now and,
+     * if so, reserve the output stream for it until
+     * {@link #releaseOutput(Worksheet)}. This is always the case when
+     * worksheets are generated in parallel.
+     *
+     * @param ws Worksheet.
+     * @return {@code true} if the worksheet may be written.
+     */
+    synchronized boolean acquireOutput(Worksheet ws) {
+        if (parallelWorksheets || outputWorksheet == ws) {
+            return true;
+        } else if (outputWorksheet == null) {
+            outputWorksheet = ws;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Release the output stream once a worksheet has been written.
+     *
+     * @param ws Worksheet.
+     */
+    synchronized void releaseOutput(Worksheet ws) {
+        if (outputWorksheet == ws) {
+            outputWorksheet = null;
+        }
+    }
+
+    /**
+     * Check whether worksheets are deflated into temporary files, see
+     * {@link #setParallelWorksheets(boolean)}.
+     *
+     * @return {@code true} if worksheets are generated in parallel.
+     */
+    boolean isParallelWorksheets() {
+        return parallelWorksheets;
     }
 
     public void setActiveTab(int tabIndex) {
@@ -122,7 +349,8 @@ public class Workbook implements Closeable {
 
     /**
      * Complete workbook generation: this writes worksheets and additional files
-     * as zip entries to the output stream.
+     * as zip entries to the output stream. If an error occurs, temporary files
+     * of worksheets are deleted and the workbook can no longer be used.
      *
      * @throws IOException In case of I/O error.
      */
@@ -134,7 +362,25 @@ public class Workbook implements Closeable {
         if (worksheets.isEmpty()) {
             throw new IllegalArgumentException("A workbook must contain at least one worksheet.");
         }
+        try {
+            writeFiles();
+        } catch (Throwable t) {
+            // Delete the temporary files of worksheets not written yet
+            finished = true;
+            for (Worksheet ws : worksheets) {
+                ws.abort(t);
+            }
+            try {
+                stringCache.close();
+            } catch (IOException | RuntimeException ex) {
+                t.addSuppressed(ex);
+            }
+            throw t;
+        }
+        finished = true;
+    }
 
+    private void writeFiles() throws IOException {
         for (Worksheet ws : worksheets) {
             ws.close();
         }
@@ -192,10 +438,13 @@ public class Workbook implements Closeable {
             }
             w.append("</Relationships>");
         });
-        writeFile("xl/sharedStrings.xml", stringCache::write);
+        try {
+            writeFile("xl/sharedStrings.xml", stringCache::write);
+        } finally {
+            stringCache.close();
+        }
         writeFile("xl/styles.xml", styleCache::write);
         this.os.finish();
-        finished = true;
     }
 
     private void writeProperties() throws IOException {
@@ -388,17 +637,51 @@ public class Workbook implements Closeable {
      */
     void writeFile(String name, ThrowingConsumer<Writer> consumer) throws IOException {
         synchronized (os) {
-            beginFile(name);
+            os.putNextEntry(name);
             consumer.accept(writer);
             endFile();
         }
     }
 
+    /**
+     * Begin a worksheet file, deflated on the compression executor if any.
+     * The file is completed by {@link #endFile()}.
+     *
+     * @param name File name.
+     * @return Output writer.
+     * @throws IOException If an I/O error occurs.
+     */
     Writer beginFile(String name) throws IOException {
-        os.putNextEntry(new ZipEntry(name));
+        os.putNextEntry(name, compressionExecutor);
         return writer;
     }
 
+    /**
+     * Create a temporary file to deflate a worksheet file into, using the
+     * compression level and executor of this workbook. Once complete, it is
+     * copied into the output stream with
+     * {@link #writeDeflatedFile(String, DeflatedSpill)}.
+     *
+     * @return New spill.
+     * @throws IOException If an I/O error occurs.
+     */
+    DeflatedSpill newSpill() throws IOException {
+        return new DeflatedSpill(compressionLevel, compressionExecutor);
+    }
+
+    /**
+     * Copy a deflated file as a zip entry to the output stream.
+     *
+     * @param name  File name.
+     * @param spill Deflated contents.
+     * @throws IOException If an I/O error occurs.
+     */
+    void writeDeflatedFile(String name, DeflatedSpill spill) throws IOException {
+        synchronized (os) {
+            spill.copyTo(os, name);
+        }
+    }
+
     void endFile() throws IOException {
         writer.flush();
         os.closeEntry();
@@ -408,12 +691,30 @@ public class Workbook implements Closeable {
      * Cache the given string.
      *
      * @param s String to cache.
-     * @return Cached string.
+     * @return Index of the cached string.
      */
-    CachedString cacheString(String s) {
+    int cacheString(String s) {
         return stringCache.cacheString(s);
     }
 
+    /**
+     * Compile a style once, to apply it to many cells without building it
+     * again for each of them. For example:
+     * <blockquote><pre>
+     *  StyleHandle total = wb.compileStyle(s -&gt; s.bold().format("0.00"));
+     *  ws.value(r, c, amount, total);
+     * </pre></blockquote>
+     *
+     * @param style Consumer defining style elements.
+     * @return Immutable style handle.
+     */
+    public StyleHandle compileStyle(Consumer<? super CompiledStyleSetter> style) {
+        CompiledStyleSetter setter = new CompiledStyleSetter(this);
+        style.accept(setter);
+        setter.set();
+        return new StyleHandle(this, setter.getStyle());
+    }
+
     /**
      * Merge given style attributes with cached style.
      *
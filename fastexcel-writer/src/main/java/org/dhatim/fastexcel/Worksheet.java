@@ -17,14 +17,18 @@ package org.dhatim.fastexcel;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.IntStream;
 
-import static org.dhatim.fastexcel.XmlEscapeHelper.escape;
-
 /**
  * A worksheet is a set of cells.
  */
@@ -55,21 +59,46 @@ public class Worksheet implements Closeable {
      */
     public static final double MAX_ROW_HEIGHT = 409.5;
 
+    /**
+     * Number of cells up to which the style of a range is merged into its
+     * cells right away, instead of being resolved as rows are written.
+     */
+    private static final int EAGER_STYLE_CELLS = 1024;
+    /**
+     * Number of strings after which, and between which, a column with the
+     * {@link SharedStringsPolicy#AUTO} policy checks the number of distinct
+     * strings it holds.
+     */
+    private static final int AUTO_SHARED_STRINGS_SAMPLE = 1024;
+    /**
+     * Proportion of distinct strings beyond which a column with the
+     * {@link SharedStringsPolicy#AUTO} policy switches to inline strings.
+     */
+    private static final double AUTO_SHARED_STRINGS_MAX_DISTINCT_RATIO = 0.5;
+
+    private static final byte[] ROW_START = Writer.bytes("<row r=\"");
+    private static final byte[] ROW_END = Writer.bytes("</row>");
+
     private final Workbook workbook;
     private final String name;
     /**
-     * List of rows. A row is an array of cells.
-     * Flushed rows are null.
+     * Rows in memory, by row number. A row holds the cells of each column.
+     * Flushed rows are removed.
      */
-    private final List<Cell[]> rows = new ArrayList<>();
+    private final RowIndex rows = new RowIndex();
     /**
      * Ranges of merged cells.
      */
     private final Set<Range> mergedRanges = new HashSet<>();
     /**
-     * Matrix of merged cells.
+     * Spatial index of merged cells.
+     */
+    private final RectangleIndex<Range> mergedIndex = new RectangleIndex<>();
+    /**
+     * Merged columns of row {@link #mergedColumnsRow}, -1 if not computed.
      */
-    private final DynamicBitMatrix mergedMatrix = new DynamicBitMatrix(MAX_COLS, MAX_ROWS);
+    private final BitSet mergedColumns = new BitSet();
+    private int mergedColumnsRow = -1;
     /**
      * List of conditional formattings for this worksheet
      */
@@ -89,7 +118,7 @@ public class Worksheet implements Closeable {
     /**
      * List of rows to hide
      */
-    private final Set<Integer> hiddenRows = new HashSet<>();
+    private final NavigableSet<Integer> hiddenRows = new TreeSet<>();
 
     /**
      * List of columns to hide
@@ -109,6 +138,42 @@ public class Worksheet implements Closeable {
      */
     private final Map<Integer, Double> colWidths = new HashMap<>();
 
+    /**
+     * Styles of large ranges, resolved as rows are written.
+     */
+    private final StyleRectangles styleRectangles = new StyleRectangles();
+
+    /**
+     * Greatest number of characters of the values of each column, excluding
+     * formulas, hidden rows and merged cells, tracked as values are set.
+     */
+    private int[] maxValueLengths = new int[0];
+
+    /**
+     * Columns whose tracked value lengths may be too large, because a value
+     * was overwritten, a row was hidden or shown, or cells were merged after
+     * values were set. Their widths are computed again from the rows in
+     * memory.
+     */
+    private final BitSet dirtyValueLengths = new BitSet();
+
+    /**
+     * Whether value lengths are still tracked, i.e. until column widths are
+     * written.
+     */
+    private boolean trackValueLengths = true;
+
+    /**
+     * Whether column widths are computed from all the rows of this worksheet,
+     * instead of the ones in memory when it is first flushed.
+     */
+    private boolean columnWidthsFromAllRows;
+
+    /**
+     * Buffer for numbers being measured.
+     */
+    private final byte[] lengthScratch = new byte[NumberWriter.MAX_LENGTH];
+
     /**
      * Map of columns and their representations with styles
      */
@@ -119,11 +184,49 @@ public class Worksheet implements Closeable {
      */
     private final Map<Integer, Double> rowHeights = new HashMap<>();
 
+    /**
+     * Map of rows not flushed yet and their default styles
+     */
+    private final NavigableMap<Integer, Integer> rowStyles = new TreeMap<>();
+
+    /**
+     * Zero-based number of the last row with a default style, flushed or not.
+     */
+    private int lastStyledRow;
+
+    /**
+     * Default style of each column, as written in column definitions, or
+     * {@code null} until rows are written.
+     */
+    private int[] columnDefaultStyles;
+
+    /**
+     * Map of columns and their shared strings policy, overriding the one of
+     * the workbook.
+     */
+    private final Map<Integer, SharedStringsPolicy> sharedStringsPolicies = new HashMap<>();
+
+    /**
+     * Shared strings policy in effect for each column, {@code null} until a
+     * string is written to the column. {@link SharedStringsPolicy#AUTO} is
+     * replaced with {@link SharedStringsPolicy#INLINE} once decided.
+     */
+    private SharedStringsPolicy[] columnStringPolicies = new SharedStringsPolicy[0];
+
+    /**
+     * Cardinality of strings written to each column with the
+     * {@link SharedStringsPolicy#AUTO} policy.
+     */
+    private CardinalityEstimator[] columnStringCardinalities = new CardinalityEstimator[0];
+
     final Comments comments = new Comments();
 
     final Map<String,Table> tables = new LinkedHashMap<>();
 
-    private final DynamicBitMatrix tablesMatrix = new DynamicBitMatrix(MAX_COLS, MAX_ROWS);
+    /**
+     * Spatial index of table ranges.
+     */
+    private final RectangleIndex<Range> tablesIndex = new RectangleIndex<>();
 
     /**
      * Is this worksheet construction completed?
@@ -265,7 +368,17 @@ public class Worksheet implements Closeable {
      */
     private Map<String, Range> namedRanges = new LinkedHashMap<>();
 
-    private Map<HyperLink, Ref> hyperlinkRanges = new LinkedHashMap<>();
+    private Map<HyperLink, PendingHyperlink> hyperlinkRanges = new LinkedHashMap<>();
+    /**
+     * Hyperlinks not written yet, by bottom row, so that flushing rows only
+     * visits the hyperlinks of these rows.
+     */
+    private final TreeMap<Integer, List<HyperLink>> hyperlinksByBottom = new TreeMap<>();
+    private long hyperlinkSequence;
+    /**
+     * Hyperlink elements of flushed rows.
+     */
+    private final FragmentSpill hyperlinkSpill = new FragmentSpill();
 
     /**
      * The set of protection options that are applied on the sheet.
@@ -274,14 +387,59 @@ public class Worksheet implements Closeable {
 
     private Writer writer;
 
+    /**
+     * Thread writing flushed rows to {@link #writer}, when flushes are
+     * asynchronous.
+     */
+    private BackgroundWriter backgroundWriter;
+
+    /**
+     * Temporary file this worksheet is deflated into, when the workbook
+     * generates worksheets in parallel or when column widths are computed
+     * from all rows.
+     */
+    private DeflatedSpill spill;
+
     /**
      * Number of rows written to {@link #writer}.
-     * Those rows are set to null in {@link #rows}
+     * Those rows are removed from {@link #rows}
      */
     private int flushedRows = 0;
 
+    /**
+     * Greatest number of columns of a row.
+     */
+    private int maxRowLength;
+
+    /**
+     * Highest row a value was written to.
+     */
+    private int writeFrontier = -1;
+
+    /**
+     * Estimated memory used by rows in {@link #rows}, in bytes, not counting
+     * changes to {@link #lastRow} since it was returned.
+     */
+    private long bufferedBytes;
+
+    /**
+     * Highest value of {@link #bufferedBytes}.
+     */
+    private long bufferedBytesHighWaterMark;
+
+    /**
+     * Row whose value was last set, and its memory usage at that time.
+     */
+    private RowData lastRow;
+    private long lastRowUsage;
+
     private String tabColor;
 
+    /**
+     * Writer of the rows appended last in order, if any.
+     */
+    private RowWriter rowWriter;
+
     /**
      * Constructor.
      *
@@ -352,39 +510,184 @@ public class Worksheet implements Closeable {
     }
 
     /**
-     * Get the cell at the given coordinates.
+     * Get the row holding the cell at the given coordinates.
      *
      * @param r Zero-based row number.
      * @param c Zero-based column number.
-     * @return An existing or newly created cell.
+     * @return An existing or newly created row, with at least {@code c + 1}
+     * columns.
      */
-    Cell cell(int r, int c) {
+    RowData row(int r, int c) {
         // Check limits
         if (r < 0 || r >= MAX_ROWS || c < 0 || c >= MAX_COLS) {
             throw new IllegalArgumentException();
         }
         flushedCheck(r);
 
-        // Add null for missing rows.
-        while (r >= rows.size()) {
-            rows.add(null);
-        }
-        Cell[] row = rows.get(r);
+        RowData row = rows.get(r);
+        RowData previous = r > 0 ? rows.get(r - 1) : null;
         if (row == null) {
-            int columns = Math.max(c + 1, (r > 0 && rows.get(r - 1) != null) ? rows.get(r - 1).length : (c + 1));
-            row = new Cell[columns];
-            rows.set(r, row);
-        } else if (c >= row.length) {
-            int columns = Math.max(c + 1, (r > 0 && rows.get(r - 1) != null) ? rows.get(r - 1).length : (c + 1));
-            Cell[] tmp = new Cell[columns];
-            System.arraycopy(row, 0, tmp, 0, row.length);
-            row = tmp;
+            int columns = Math.max(c + 1, previous != null ? previous.length() : (c + 1));
+            // Rows as wide as a dense row above them are likely dense too
+            row = new RowData(columns, previous == null || previous.isSparse() || previous.length() < columns);
             rows.set(r, row);
+            bufferedBytes += row.memoryUsage();
+            maxRowLength = Math.max(maxRowLength, columns);
+        } else if (c >= row.length()) {
+            int columns = Math.max(c + 1, previous != null ? previous.length() : (c + 1));
+            long usage = row.memoryUsage();
+            row.setLength(columns);
+            bufferedBytes += row.memoryUsage() - usage;
+            maxRowLength = Math.max(maxRowLength, columns);
+        }
+        return row;
+    }
+
+    /**
+     * Get the row holding the cell at the given coordinates, to set its
+     * value. Before that, if the rows in memory exceed the memory budget of
+     * the workbook, rows below the current one are flushed.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @return An existing or newly created row, with at least {@code c + 1}
+     * columns.
+     */
+    private RowData rowForValue(int r, int c) {
+        return rowForValues(r, c, c);
+    }
+
+    /**
+     * Get the row holding the cells at the given coordinates, to set their
+     * values, see {@link #rowForValue(int, int)}.
+     *
+     * @param r Zero-based row number.
+     * @param firstCol Zero-based number of the first column.
+     * @param lastCol Zero-based number of the last column.
+     * @return An existing or newly created row, with at least
+     * {@code lastCol + 1} columns.
+     */
+    private RowData rowForValues(int r, int firstCol, int lastCol) {
+        if (firstCol < 0 || lastCol >= MAX_COLS) {
+            throw new IllegalArgumentException((firstCol == lastCol ? "Column " + firstCol : "Columns " + firstCol + " to " + lastCol)
+                    + " of row " + r + " out of range");
+        }
+        updateBufferedBytes();
+        long budget = workbook.getRowsMemoryBudget();
+        if (budget > 0 && bufferedBytes > budget && r >= writeFrontier && writeFrontier > flushedRows) {
+            try {
+                flush(writeFrontier);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        writeFrontier = Math.max(writeFrontier, r);
+        RowData row = row(r, lastCol);
+        if (trackValueLengths) {
+            for (int c = firstCol; c <= lastCol; ++c) {
+                if (row.valueLength(c, lengthScratch) > 0) {
+                    // The overwritten value may be the longest of its column
+                    dirtyValueLengths.set(c);
+                }
+            }
+        }
+        bufferedBytesHighWaterMark = Math.max(bufferedBytesHighWaterMark, bufferedBytes);
+        lastRow = row;
+        lastRowUsage = row.memoryUsage();
+        return row;
+    }
+
+    /**
+     * Account for the length of a value which was just set, for best-fit
+     * column widths.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param row Row holding the value.
+     */
+    private void trackValueLength(int r, int c, RowData row) {
+        if (trackValueLengths) {
+            trackValueLength(r, c, row.valueLength(c, lengthScratch));
+        }
+    }
+
+    /**
+     * Account for the length of a value which was just written, for best-fit
+     * column widths.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param length Number of characters of the value.
+     */
+    void trackValueLength(int r, int c, int length) {
+        if (length > 0 && !isExcludedFromWidth(r, c)) {
+            if (c >= maxValueLengths.length) {
+                maxValueLengths = Arrays.copyOf(maxValueLengths, Math.max(c + 1, 2 * maxValueLengths.length));
+            }
+            maxValueLengths[c] = Math.max(maxValueLengths[c], length);
+        }
+    }
+
+    /**
+     * Check whether a cell does not count for best-fit column widths: cells
+     * of hidden rows and merged cells.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @return {@code true} if the cell is excluded.
+     */
+    private boolean isExcludedFromWidth(int r, int c) {
+        return !hiddenRows.isEmpty() && hiddenRows.contains(r) || !mergedRanges.isEmpty() && mergedColumns(r).get(c);
+    }
+
+    /**
+     * Get the merged columns of a row. They are kept until another row is
+     * queried, as cells are usually checked row by row.
+     *
+     * @param r Zero-based row number.
+     * @return Set of zero-based column numbers, not to be modified.
+     */
+    private BitSet mergedColumns(int r) {
+        if (r != mergedColumnsRow) {
+            mergedColumns.clear();
+            mergedIndex.coveredColumns(r, mergedColumns);
+            mergedColumnsRow = r;
         }
-        if (row[c] == null) {
-            row[c] = new Cell();
+        return mergedColumns;
+    }
+
+    /**
+     * Account for changes to the memory used by the row whose value was last
+     * set.
+     */
+    private void updateBufferedBytes() {
+        if (lastRow != null) {
+            long usage = lastRow.memoryUsage();
+            bufferedBytes += usage - lastRowUsage;
+            lastRowUsage = usage;
         }
-        return row[c];
+    }
+
+    /**
+     * Get the estimated memory used by the rows of this worksheet which are
+     * not flushed yet.
+     *
+     * @return Estimated size in bytes.
+     */
+    public long getBufferedBytes() {
+        updateBufferedBytes();
+        return bufferedBytes;
+    }
+
+    /**
+     * Get the highest estimated memory used by the rows of this worksheet
+     * which were not flushed yet, see {@link Workbook#setRowsMemoryBudget(long)}.
+     *
+     * @return Estimated size in bytes.
+     */
+    public long getBufferedBytesHighWaterMark() {
+        updateBufferedBytes();
+        return Math.max(bufferedBytesHighWaterMark, bufferedBytes);
     }
 
     private void flushedCheck(int r) {
@@ -399,9 +702,13 @@ public class Worksheet implements Closeable {
      * @param range Range of cells.
      */
     void merge(Range range) {
-        if (!mergedMatrix.isConflict(range.getTop(),range.getLeft(),range.getBottom(),range.getRight())){
+        if (!mergedIndex.overlaps(range.getTop(),range.getLeft(),range.getBottom(),range.getRight())){
             if (mergedRanges.add(range)) {
-                mergedMatrix.setRegion(range.getTop(),range.getLeft(),range.getBottom(),range.getRight());
+                mergedIndex.add(range.getTop(),range.getLeft(),range.getBottom(),range.getRight(), range);
+                mergedColumnsRow = -1;
+                if (trackValueLengths) {
+                    dirtyValueLengths.set(range.getLeft(), range.getRight() + 1);
+                }
             }
         }else {
             throw new IllegalArgumentException("Merge conflicted:" +range);
@@ -436,6 +743,66 @@ public class Worksheet implements Closeable {
         dataValidations.add(validation);
     }
 
+    /**
+     * Group conditional formattings with identical rules: same type, style,
+     * options and formula, once its relative references are moved to be
+     * relative to cell A1 instead of the top-left cell of the range. Their
+     * ranges are then written as a single element where possible, keeping
+     * the priority of the first one.
+     *
+     * @return Groups, in order of their first conditional formatting.
+     * @throws IOException If an I/O error occurs.
+     */
+    private Collection<List<ConditionalFormatting>> groupConditionalFormattings() throws IOException {
+        Map<String, List<ConditionalFormatting>> groups = new LinkedHashMap<>();
+        Writer scratch = new Writer(256);
+        for (ConditionalFormatting v : conditionalFormattings) {
+            ConditionalFormattingRule rule = v.getConditionalFormattingRule();
+            rule.setPriority(0);
+            scratch.reset();
+            rule.write(scratch, -v.getRange().getTop(), -v.getRange().getLeft());
+            groups.computeIfAbsent(new String(scratch.buffer(), 0, scratch.length(), StandardCharsets.UTF_8), k -> new ArrayList<>()).add(v);
+        }
+        return groups.values();
+    }
+
+    /**
+     * Group identical data validations: same type, options and formula, once
+     * its relative references are moved to be relative to cell A1 instead of
+     * the top-left cell of the range. Their ranges are then written as a
+     * single element where possible.
+     *
+     * @return Groups, in order of their first data validation.
+     * @throws IOException If an I/O error occurs.
+     */
+    private Collection<List<DataValidation>> groupDataValidations() throws IOException {
+        Map<String, List<DataValidation>> groups = new LinkedHashMap<>();
+        Writer scratch = new Writer(256);
+        for (DataValidation v : dataValidations) {
+            scratch.reset();
+            v.write(scratch, "", 0, 0);
+            groups.computeIfAbsent(new String(scratch.buffer(), 0, scratch.length(), StandardCharsets.UTF_8), k -> new ArrayList<>()).add(v);
+        }
+        return groups.values();
+    }
+
+    /**
+     * Get the union of the ranges of a group, split in parts that can each be
+     * written as a single element with formulas relative to the top-left cell
+     * of their first range.
+     *
+     * @param group Conditional formattings or data validations.
+     * @param range Function returning the range of an element of the group.
+     * @return Parts of the union of ranges.
+     */
+    private static <T> List<List<Range>> anchoredParts(List<T> group, Function<T, Range> range) {
+        List<Range> ranges = new ArrayList<>(group.size());
+        for (T t : group) {
+            ranges.add(range.apply(t));
+        }
+        return RangeUnion.anchoredParts(RangeUnion.union(ranges));
+    }
+
     /**
      * Sets the visibility state of the sheet
      * <p>
@@ -457,6 +824,7 @@ public class Worksheet implements Closeable {
      */
     public void hideRow(int row) {
         hiddenRows.add(row);
+        rowVisibilityChanged(row);
     }
 
     /**
@@ -466,6 +834,20 @@ public class Worksheet implements Closeable {
      */
     public void showRow(int row) {
         hiddenRows.remove(row);
+        rowVisibilityChanged(row);
+    }
+
+    /**
+     * Mark the columns of a row whose visibility changed for the computation
+     * of their widths, if it holds values.
+     *
+     * @param r Zero-based row number.
+     */
+    private void rowVisibilityChanged(int r) {
+        RowData row = trackValueLengths ? rows.get(r) : null;
+        if (row != null) {
+            dirtyValueLengths.set(0, row.length());
+        }
     }
 
     /**
@@ -602,6 +984,26 @@ public class Worksheet implements Closeable {
         colWidths.put(c, width);
     }
 
+    /**
+     * Compute best-fit column widths from all the rows of this worksheet,
+     * instead of the rows in memory when it is first flushed. Rows are then
+     * deflated into a temporary file and the beginning of the worksheet,
+     * which holds column definitions, is written before them by
+     * {@link #finish()}. The output stream is not reserved for this worksheet
+     * while it is flushed, see {@link #flush()}.
+     * <p>
+     * Note rows must be hidden and cells merged before their values are set
+     * to be excluded from widths, and overwritten values still count.
+     *
+     * @param fromAllRows {@code true} to compute widths from all rows.
+     */
+    public void setColumnWidthsFromAllRows(boolean fromAllRows) {
+        if (writer != null) {
+            throw new IllegalStateException("Worksheet already flushed");
+        }
+        this.columnWidthsFromAllRows = fromAllRows;
+    }
+
     /**
      * Specify the custom row height for a row
      * <p> The maximum value for row height is <b>409.5</b> </p>
@@ -623,7 +1025,91 @@ public class Worksheet implements Closeable {
      * @param value Cell value.
      */
     public void value(int r, int c, String value) {
-        cell(r, c).setValue(workbook, value);
+        RowData row = rowForValue(r, c);
+        setString(row, c, value);
+        trackValueLength(r, c, row);
+    }
+
+    /**
+     * Set a string value in a row, as a shared or inline string according
+     * to the shared strings policy of the column.
+     *
+     * @param row Row.
+     * @param c Zero-based column number.
+     * @param value String value, or {@code null}.
+     */
+    private void setString(RowData row, int c, String value) {
+        if (value == null) {
+            row.clearValue(c);
+        } else if (isInlineString(c, value)) {
+            row.setObject(c, value);
+        } else {
+            row.setSharedString(c, value, workbook.cacheString(value));
+        }
+    }
+
+    /**
+     * Set the shared strings policy of a column, overriding the one of the
+     * workbook (see {@link Workbook#setSharedStringsPolicy(SharedStringsPolicy)})
+     * for strings written afterwards.
+     *
+     * @param c Zero-based column number.
+     * @param policy Shared strings policy, or {@code null} to use the one of
+     * the workbook.
+     */
+    public void sharedStringsPolicy(int c, SharedStringsPolicy policy) {
+        if (policy == null) {
+            sharedStringsPolicies.remove(c);
+        } else {
+            sharedStringsPolicies.put(c, policy);
+        }
+        if (c < columnStringPolicies.length) {
+            columnStringPolicies[c] = null;
+            columnStringCardinalities[c] = null;
+        }
+    }
+
+    /**
+     * Check whether a string written to a column should be inlined, according
+     * to the shared strings policy of the column.
+     *
+     * @param c Zero-based column number.
+     * @param value String value.
+     * @return {@code true} to write an inline string, {@code false} to write
+     * a shared string.
+     */
+    boolean isInlineString(int c, String value) {
+        if (c >= columnStringPolicies.length) {
+            int length = Math.max(c + 1, 2 * columnStringPolicies.length);
+            columnStringPolicies = Arrays.copyOf(columnStringPolicies, length);
+            columnStringCardinalities = Arrays.copyOf(columnStringCardinalities, length);
+        }
+        SharedStringsPolicy policy = columnStringPolicies[c];
+        if (policy == null) {
+            policy = sharedStringsPolicies.getOrDefault(c, workbook.getSharedStringsPolicy());
+            columnStringPolicies[c] = policy;
+            if (policy == SharedStringsPolicy.AUTO) {
+                columnStringCardinalities[c] = new CardinalityEstimator();
+            }
+        }
+        switch (policy) {
+            case SHARED:
+                return false;
+            case INLINE:
+                return true;
+            default:
+                CardinalityEstimator cardinality = columnStringCardinalities[c];
+                cardinality.add(value.hashCode());
+                long count = cardinality.count();
+                // Shared strings pay off if values repeat; otherwise they
+                // only make the shared strings table grow
+                if (count % AUTO_SHARED_STRINGS_SAMPLE == 0 && cardinality.estimate() > AUTO_SHARED_STRINGS_MAX_DISTINCT_RATIO * count) {
+                    columnStringPolicies[c] = SharedStringsPolicy.INLINE;
+                    columnStringCardinalities[c] = null;
+                    return true;
+                }
+                return false;
+        }
     }
     /**
      * Set the cell value at the given coordinates.
@@ -633,7 +1119,9 @@ public class Worksheet implements Closeable {
      * @param value Cell value.
      */
     public void value(int r, int c, Number value) {
-        cell(r, c).setValue(value);
+        RowData row = rowForValue(r, c);
+        row.setNumber(c, value);
+        trackValueLength(r, c, row);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -643,7 +1131,9 @@ public class Worksheet implements Closeable {
      * @param value Cell value.
      */
     public void value(int r, int c, Boolean value) {
-        cell(r, c).setValue(value);
+        RowData row = rowForValue(r, c);
+        row.setBoolean(c, value);
+        trackValueLength(r, c, row);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -656,7 +1146,13 @@ public class Worksheet implements Closeable {
      * prefer passing a {@link ZonedDateTime}.
      */
     public void value(int r, int c, Date value) {
-        cell(r, c).setValue(value);
+        RowData row = rowForValue(r, c);
+        if (value == null) {
+            row.clearValue(c);
+        } else {
+            row.setDouble(c, TimestampUtil.serialNumber(value));
+        }
+        trackValueLength(r, c, row);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -669,7 +1165,13 @@ public class Worksheet implements Closeable {
      * prefer passing a {@link ZonedDateTime}.
      */
     public void value(int r, int c, LocalDateTime value) {
-        cell(r, c).setValue(value);
+        RowData row = rowForValue(r, c);
+        if (value == null) {
+            row.clearValue(c);
+        } else {
+            row.setDouble(c, TimestampUtil.serialNumber(value));
+        }
+        trackValueLength(r, c, row);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -682,7 +1184,13 @@ public class Worksheet implements Closeable {
      * prefer passing a {@link ZonedDateTime}.
      */
     public void value(int r, int c, LocalDate value) {
-        cell(r, c).setValue(value);
+        RowData row = rowForValue(r, c);
+        if (value == null) {
+            row.clearValue(c);
+        } else {
+            row.setDouble(c, TimestampUtil.serialNumber(value));
+        }
+        trackValueLength(r, c, row);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -692,90 +1200,702 @@ public class Worksheet implements Closeable {
      * @param value Cell value.
      */
     public void value(int r, int c, ZonedDateTime value) {
-        cell(r, c).setValue(value);
+        RowData row = rowForValue(r, c);
+        if (value == null) {
+            row.clearValue(c);
+        } else {
+            row.setDouble(c, TimestampUtil.serialNumber(value));
+        }
+        trackValueLength(r, c, row);
     }
 
     /**
-     * Get the cell value (or formula) at the given coordinates.
+     * Set the cell value at the given coordinates to a timestamp, converted
+     * to an Excel serial number with its local date and time in the given
+     * timezone. Unlike {@link #value(int, int, Date)}, this does not allocate.
      *
      * @param r Zero-based row number.
      * @param c Zero-based column number.
-     * @return Cell value (or {@link Formula}).
+     * @param epochMillis Timestamp, in milliseconds since the epoch.
+     * @param zone Timezone.
      */
-    public Object value(int r, int c) {
-        flushedCheck(r);
-        Cell[] row = r < rows.size() ? rows.get(r) : null;
-        Cell cell = row == null || c >= row.length ? null : row[c];
-        return cell == null ? null : cell.getValue();
+    public void value(int r, int c, long epochMillis, ZoneId zone) {
+        double serialNumber = TimestampUtil.serialNumber(epochMillis, zone);
+        RowData row = rowForValue(r, c);
+        row.setDouble(c, serialNumber);
+        trackValueLength(r, c, row);
     }
 
-    public void hyperlink(int r, int c,HyperLink hyperLink) {
-        value(r,c,hyperLink.getDisplayStr());
-        this.addHyperlink(new Location(r,c),hyperLink);
+    /**
+     * Set the cell value at the given coordinates to a date.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param epochDay Date, in days since 1970-01-01.
+     */
+    public void valueEpochDay(int r, int c, long epochDay) {
+        RowData row = rowForValue(r, c);
+        row.setDouble(c, TimestampUtil.epochDaySerialNumber(epochDay));
+        trackValueLength(r, c, row);
     }
 
     /**
-     * Set the cell formula at the given coordinates.
+     * Set the cell value and style at the given coordinates. The style
+     * replaces the one of the cell.
      *
      * @param r Zero-based row number.
      * @param c Zero-based column number.
-     * @param expression Cell formula expression.
+     * @param value Cell value.
+     * @param style Compiled style, see {@link Workbook#compileStyle(java.util.function.Consumer)}.
+     * @throws IllegalArgumentException If the style was compiled by another
+     * workbook, in which case the cell is left unchanged.
      */
-    public void formula(int r, int c, String expression) {
-        cell(r, c).setFormula(expression);
+    public void value(int r, int c, String value, StyleHandle style) {
+        int index = style.getStyle(this);
+        value(r, c, value);
+        setCompiledStyle(r, c, index);
     }
 
     /**
-     * Set the cell value at the given coordinates.
+     * Set the cell value and style at the given coordinates. The style
+     * replaces the one of the cell.
      *
      * @param r Zero-based row number.
      * @param c Zero-based column number.
      * @param value Cell value.
+     * @param style Compiled style, see {@link Workbook#compileStyle(java.util.function.Consumer)}.
+     * @throws IllegalArgumentException If the style was compiled by another
+     * workbook, in which case the cell is left unchanged.
      */
-    public void inlineString(int r, int c, String value) {
-        cell(r, c).setInlineString(value);
+    public void value(int r, int c, Number value, StyleHandle style) {
+        int index = style.getStyle(this);
+        value(r, c, value);
+        setCompiledStyle(r, c, index);
     }
 
     /**
-     * Get a new style setter for a cell.
+     * Set the cell value and style at the given coordinates. The style
+     * replaces the one of the cell.
      *
      * @param r Zero-based row number.
      * @param c Zero-based column number.
-     * @return Newly created style setter.
+     * @param value Cell value.
+     * @param style Compiled style, see {@link Workbook#compileStyle(java.util.function.Consumer)}.
+     * @throws IllegalArgumentException If the style was compiled by another
+     * workbook, in which case the cell is left unchanged.
      */
-    public StyleSetter style(int r, int c) {
-        return new Range(this, r, c, r, c).style();
+    public void value(int r, int c, Boolean value, StyleHandle style) {
+        int index = style.getStyle(this);
+        value(r, c, value);
+        setCompiledStyle(r, c, index);
     }
 
-     /**
-     * Get a new style setter for a column.
+    /**
+     * Set the cell value and style at the given coordinates. The style
+     * replaces the one of the cell.
      *
+     * @param r Zero-based row number.
      * @param c Zero-based column number.
-     * @return Newly created style setter.
+     * @param value Cell value, see {@link #value(int, int, Date)}.
+     * @param style Compiled style, see {@link Workbook#compileStyle(java.util.function.Consumer)}.
+     * @throws IllegalArgumentException If the style was compiled by another
+     * workbook, in which case the cell is left unchanged.
      */
-    public ColumnStyleSetter style(int c) {
-        Column column = colStyles.getOrDefault(c, new Column(this, c));
-        colStyles.put(c, column);
-        return column.style();
+    public void value(int r, int c, Date value, StyleHandle style) {
+        int index = style.getStyle(this);
+        value(r, c, value);
+        setCompiledStyle(r, c, index);
     }
 
     /**
-     * Create a new range of cells. Note coordinates are reordered if necessary
-     * to make sure {@code top} &lt;= {@code bottom} and {@code left} &lt;=
-     * {@code right}.
+     * Set the cell value and style at the given coordinates. The style
+     * replaces the one of the cell.
      *
-     * @param top Top row.
-     * @param left Left column.
-     * @param bottom Bottom row.
-     * @param right Right column.
-     * @return Newly created range.
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param value Cell value, see {@link #value(int, int, LocalDateTime)}.
+     * @param style Compiled style, see {@link Workbook#compileStyle(java.util.function.Consumer)}.
+     * @throws IllegalArgumentException If the style was compiled by another
+     * workbook, in which case the cell is left unchanged.
      */
-    public Range range(int top, int left, int bottom, int right) {
-        return new Range(this, top, left, bottom, right);
+    public void value(int r, int c, LocalDateTime value, StyleHandle style) {
+        int index = style.getStyle(this);
+        value(r, c, value);
+        setCompiledStyle(r, c, index);
     }
 
     /**
-     * Write column definitions of this worksheet as an XML element.
+     * Set the cell value and style at the given coordinates. The style
+     * replaces the one of the cell.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param value Cell value, see {@link #value(int, int, LocalDate)}.
+     * @param style Compiled style, see {@link Workbook#compileStyle(java.util.function.Consumer)}.
+     * @throws IllegalArgumentException If the style was compiled by another
+     * workbook, in which case the cell is left unchanged.
+     */
+    public void value(int r, int c, LocalDate value, StyleHandle style) {
+        int index = style.getStyle(this);
+        value(r, c, value);
+        setCompiledStyle(r, c, index);
+    }
+
+    /**
+     * Set the cell value and style at the given coordinates. The style
+     * replaces the one of the cell.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param value Cell value.
+     * @param style Compiled style, see {@link Workbook#compileStyle(java.util.function.Consumer)}.
+     * @throws IllegalArgumentException If the style was compiled by another
+     * workbook, in which case the cell is left unchanged.
+     */
+    public void value(int r, int c, ZonedDateTime value, StyleHandle style) {
+        int index = style.getStyle(this);
+        value(r, c, value);
+        setCompiledStyle(r, c, index);
+    }
+
+    /**
+     * Set the values of consecutive cells of a row.
+     *
+     * @param r Zero-based row number.
+     * @param startCol Zero-based number of the first column.
+     * @param values Cell values.
+     */
+    public void values(int r, int startCol, double[] values) {
+        if (values.length == 0) {
+            return;
+        }
+        RowData row = rowForValues(r, startCol, startCol + values.length - 1);
+        for (int i = 0; i < values.length; ++i) {
+            row.setDouble(startCol + i, values[i]);
+            trackValueLength(r, startCol + i, row);
+        }
+    }
+
+    /**
+     * Set the values of consecutive cells of a row.
+     *
+     * @param r Zero-based row number.
+     * @param startCol Zero-based number of the first column.
+     * @param values Cell values.
+     */
+    public void values(int r, int startCol, long[] values) {
+        if (values.length == 0) {
+            return;
+        }
+        RowData row = rowForValues(r, startCol, startCol + values.length - 1);
+        for (int i = 0; i < values.length; ++i) {
+            row.setLong(startCol + i, values[i]);
+            trackValueLength(r, startCol + i, row);
+        }
+    }
+
+    /**
+     * Set the values of consecutive cells of a row.
+     *
+     * @param r Zero-based row number.
+     * @param startCol Zero-based number of the first column.
+     * @param values Cell values, {@code null} elements clear cells.
+     */
+    public void values(int r, int startCol, String[] values) {
+        if (values.length == 0) {
+            return;
+        }
+        RowData row = rowForValues(r, startCol, startCol + values.length - 1);
+        for (int i = 0; i < values.length; ++i) {
+            setString(row, startCol + i, values[i]);
+            trackValueLength(r, startCol + i, row);
+        }
+    }
+
+    /**
+     * Set the values of consecutive cells of a row. Elements may be of any
+     * type accepted by the {@code value} methods.
+     *
+     * @param r Zero-based row number.
+     * @param startCol Zero-based number of the first column.
+     * @param values Cell values, {@code null} elements clear cells.
+     * @throws IllegalArgumentException If an element has an unsupported
+     * type, in which case no cell is changed.
+     */
+    public void values(int r, int startCol, Object[] values) {
+        if (values.length == 0) {
+            return;
+        }
+        int unsupported = indexOfUnsupportedType(values);
+        if (unsupported >= 0) {
+            throw new IllegalArgumentException("No supported cell type for " + values[unsupported].getClass() + " in row " + r + ", column " + (startCol + unsupported));
+        }
+        RowData row = rowForValues(r, startCol, startCol + values.length - 1);
+        for (int i = 0; i < values.length; ++i) {
+            setObject(row, startCol + i, values[i]);
+            trackValueLength(r, startCol + i, row);
+        }
+    }
+
+    /**
+     * Set the values of consecutive cells of a column.
+     *
+     * @param c Zero-based column number.
+     * @param startRow Zero-based number of the first row.
+     * @param values Cell values.
+     */
+    public void columnValues(int c, int startRow, double[] values) {
+        checkColumnValues(c, startRow, values.length);
+        for (int i = 0; i < values.length; ++i) {
+            int r = startRow + i;
+            RowData row = rowForValue(r, c);
+            row.setDouble(c, values[i]);
+            trackValueLength(r, c, row);
+        }
+    }
+
+    /**
+     * Set the values of consecutive cells of a column.
+     *
+     * @param c Zero-based column number.
+     * @param startRow Zero-based number of the first row.
+     * @param values Cell values.
+     */
+    public void columnValues(int c, int startRow, long[] values) {
+        checkColumnValues(c, startRow, values.length);
+        for (int i = 0; i < values.length; ++i) {
+            int r = startRow + i;
+            RowData row = rowForValue(r, c);
+            row.setLong(c, values[i]);
+            trackValueLength(r, c, row);
+        }
+    }
+
+    /**
+     * Set the values of consecutive cells of a column.
+     *
+     * @param c Zero-based column number.
+     * @param startRow Zero-based number of the first row.
+     * @param values Cell values, {@code null} elements clear cells.
+     */
+    public void columnValues(int c, int startRow, String[] values) {
+        checkColumnValues(c, startRow, values.length);
+        for (int i = 0; i < values.length; ++i) {
+            int r = startRow + i;
+            RowData row = rowForValue(r, c);
+            setString(row, c, values[i]);
+            trackValueLength(r, c, row);
+        }
+    }
+
+    /**
+     * Set the values of consecutive cells of a column. Elements may be of
+     * any type accepted by the {@code value} methods.
+     *
+     * @param c Zero-based column number.
+     * @param startRow Zero-based number of the first row.
+     * @param values Cell values, {@code null} elements clear cells.
+     * @throws IllegalArgumentException If an element has an unsupported
+     * type, in which case no cell is changed.
+     */
+    public void columnValues(int c, int startRow, Object[] values) {
+        checkColumnValues(c, startRow, values.length);
+        int unsupported = indexOfUnsupportedType(values);
+        if (unsupported >= 0) {
+            throw new IllegalArgumentException("No supported cell type for " + values[unsupported].getClass() + " in row " + (startRow + unsupported) + ", column " + c);
+        }
+        for (int i = 0; i < values.length; ++i) {
+            int r = startRow + i;
+            RowData row = rowForValue(r, c);
+            setObject(row, c, values[i]);
+            trackValueLength(r, c, row);
+        }
+    }
+
+    /**
+     * Check the cells of a column are within limits and not flushed yet,
+     * before setting their values.
+     *
+     * @param c Zero-based column number.
+     * @param startRow Zero-based number of the first row.
+     * @param length Number of rows.
+     */
+    private void checkColumnValues(int c, int startRow, int length) {
+        if (c < 0 || c >= MAX_COLS || startRow < 0 || (long) startRow + length > MAX_ROWS) {
+            throw new IllegalArgumentException("Rows " + startRow + " to " + ((long) startRow + length - 1) + " of column " + c + " out of range");
+        }
+        flushedCheck(startRow);
+    }
+
+    /**
+     * Find the first value whose type is not accepted by the {@code value}
+     * methods, so that values are checked before any of them is set.
+     *
+     * @param values Values, which may be {@code null}.
+     * @return Index of the value, -1 if all types are supported.
+     */
+    private static int indexOfUnsupportedType(Object[] values) {
+        for (int i = 0; i < values.length; ++i) {
+            Object value = values[i];
+            if (value != null && !(value instanceof String || value instanceof Number || value instanceof Boolean
+                    || value instanceof Date || value instanceof LocalDateTime || value instanceof LocalDate
+                    || value instanceof ZonedDateTime)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Set a value of any type accepted by the {@code value} methods in a row.
+     *
+     * @param row Row.
+     * @param c Zero-based column number.
+     * @param value Value, or {@code null}.
+     * @throws IllegalArgumentException If the value has an unsupported type.
+     */
+    private void setObject(RowData row, int c, Object value) {
+        if (value == null) {
+            row.clearValue(c);
+        } else if (value instanceof String) {
+            setString(row, c, (String) value);
+        } else if (value instanceof Number) {
+            row.setNumber(c, (Number) value);
+        } else if (value instanceof Boolean) {
+            row.setBoolean(c, (Boolean) value);
+        } else if (value instanceof Date) {
+            row.setDouble(c, TimestampUtil.serialNumber((Date) value));
+        } else if (value instanceof LocalDateTime) {
+            row.setDouble(c, TimestampUtil.serialNumber((LocalDateTime) value));
+        } else if (value instanceof LocalDate) {
+            row.setDouble(c, TimestampUtil.serialNumber((LocalDate) value));
+        } else if (value instanceof ZonedDateTime) {
+            row.setDouble(c, TimestampUtil.serialNumber((ZonedDateTime) value));
+        } else {
+            throw new IllegalArgumentException("No supported cell type for " + value.getClass());
+        }
+    }
+
+    /**
+     * Get the cell value (or formula) at the given coordinates.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @return Cell value (or {@link Formula}).
+     */
+    public Object value(int r, int c) {
+        flushedCheck(r);
+        RowData row = rows.get(r);
+        return row == null || c >= row.length() ? null : row.getValue(c);
+    }
+
+    public void hyperlink(int r, int c,HyperLink hyperLink) {
+        value(r,c,hyperLink.getDisplayStr());
+        this.addHyperlink(new Location(r,c),hyperLink);
+    }
+
+    /**
+     * Set the cell formula at the given coordinates.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param expression Cell formula expression.
+     */
+    public void formula(int r, int c, String expression) {
+        rowForValue(r, c).setObject(c, new Formula(expression));
+    }
+
+    /**
+     * Set the cell value at the given coordinates.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param value Cell value.
+     */
+    public void inlineString(int r, int c, String value) {
+        RowData row = rowForValue(r, c);
+        row.setObject(c, value);
+        trackValueLength(r, c, row);
+    }
+
+    /**
+     * Get a new style setter for a cell.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @return Newly created style setter.
+     */
+    public StyleSetter style(int r, int c) {
+        return new Range(this, r, c, r, c).style();
+    }
+
+    /**
+     * Set the style of a cell, replacing its current style.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param style Compiled style, see {@link Workbook#compileStyle(java.util.function.Consumer)}.
+     */
+    public void style(int r, int c, StyleHandle style) {
+        setCompiledStyle(r, c, style.getStyle(this));
+    }
+
+    private void setCompiledStyle(int r, int c, int style) {
+        row(r, c).setStyle(c, style, styleRectangles.sequence());
+    }
+
+    /**
+     * Merge new style elements into the styles of the cells of a range. The
+     * cells of small ranges are styled right away, larger ranges are
+     * recorded and their styles resolved as rows are written, so that no
+     * memory is used for empty cells.
+     *
+     * @param top Top row.
+     * @param left Left column.
+     * @param bottom Bottom row.
+     * @param right Right column.
+     * @param merge Function merging the current style of a cell with new
+     * style elements.
+     */
+    void applyStyle(int top, int left, int bottom, int right, IntUnaryOperator merge) {
+        flushedCheck(top);
+        if ((long) (bottom - top + 1) * (right - left + 1) <= EAGER_STYLE_CELLS) {
+            Map<Integer, Integer> merged = new HashMap<>();
+            int sequence = styleRectangles.sequence();
+            for (int r = top; r <= bottom; ++r) {
+                for (int c = left; c <= right; ++c) {
+                    RowData row = row(r, c);
+                    int style = row.getStyle(c);
+                    style = styleRectangles.resolve(r, c, style == 0 ? defaultRowStyle(r) : style, row.getStyleSequence(c));
+                    row.setStyle(c, merged.computeIfAbsent(style, merge::applyAsInt), sequence);
+                }
+            }
+        } else {
+            styleRectangles.add(top, left, bottom, right, merge);
+            maxRowLength = Math.max(maxRowLength, right + 1);
+        }
+    }
+
+     /**
+     * Get a new style setter for a column.
+     *
+     * @param c Zero-based column number.
+     * @return Newly created style setter.
+     */
+    public ColumnStyleSetter style(int c) {
+        Column column = colStyles.getOrDefault(c, new Column(this, c));
+        colStyles.put(c, column);
+        return column.style();
+    }
+
+    /**
+     * Get a new style setter for the default style of a row. It is written
+     * once for the row instead of for each of its cells: cells which only
+     * have this style, or the default style of their column, are omitted.
+     *
+     * @param r Zero-based row number.
+     * @return Newly created style setter.
+     */
+    public RowStyleSetter rowStyle(int r) {
+        if (r < 0 || r >= MAX_ROWS) {
+            throw new IllegalArgumentException();
+        }
+        return new RowStyleSetter(this, r);
+    }
+
+    /**
+     * Apply new (merged) style to a row.
+     *
+     * @param r Zero-based row number.
+     * @param merge Function merging the current style of the row with new
+     * style elements.
+     */
+    void applyRowStyle(int r, IntUnaryOperator merge) {
+        flushedCheck(r);
+        rowStyles.put(r, merge.applyAsInt(rowStyles.getOrDefault(r, 0)));
+        lastStyledRow = Math.max(lastStyledRow, r);
+    }
+
+    /**
+     * Get the default style of a row.
+     *
+     * @param r Zero-based row number.
+     * @return Cached style index, 0 if none.
+     */
+    int defaultRowStyle(int r) {
+        if (rowStyles.isEmpty()) {
+            return 0;
+        }
+        Integer style = rowStyles.get(r);
+        return style == null ? 0 : style;
+    }
+
+    /**
+     * Get the default style of each column. Column definitions are written
+     * once, so this is computed the first time it is needed.
+     *
+     * @return Cached style index of each column.
+     */
+    private int[] columnDefaultStyles() {
+        if (columnDefaultStyles == null) {
+            int length = colStyles.keySet().stream().mapToInt(c -> c + 1).max().orElse(0);
+            columnDefaultStyles = new int[length];
+            for (Column column : colStyles.values()) {
+                columnDefaultStyles[column.getColNumber()] = column.getStyle();
+            }
+        }
+        return columnDefaultStyles;
+    }
+
+    /**
+     * Create a new range of cells. Note coordinates are reordered if necessary
+     * to make sure {@code top} &lt;= {@code bottom} and {@code left} &lt;=
+     * {@code right}.
+     *
+     * @param top Top row.
+     * @param left Left column.
+     * @param bottom Bottom row.
+     * @param right Right column.
+     * @return Newly created range.
+     */
+    public Range range(int top, int left, int bottom, int right) {
+        return new Range(this, top, left, bottom, right);
+    }
+
+    /**
+     * Create a writer appending rows to this worksheet in order, serializing
+     * their cells directly to the output, see {@link RowWriter}.
+     *
+     * @param schema Types and styles of the columns of the rows.
+     * @return New row writer.
+     * @throws IllegalArgumentException If a style of the schema was compiled
+     * by another workbook.
+     */
+    public RowWriter sequentialWriter(ColumnSchema schema) {
+        return new RowWriter(this, schema);
+    }
+
+    /**
+     * Get the row a sequential writer starts next: the row after the rows
+     * in memory and the rows already written.
+     *
+     * @return Zero-based row number.
+     */
+    int nextSequentialRow() {
+        return Math.max(flushedRows, rows.size());
+    }
+
+    /**
+     * Start a row of a sequential writer: write the rows before it, which
+     * can no longer be modified, like the row itself.
+     *
+     * @param w Sequential writer, ending its current row before other rows
+     * are written.
+     * @param columns Number of columns of the row.
+     * @return Zero-based row number.
+     * @throws IOException If an I/O error occurs.
+     */
+    int beginSequentialRow(RowWriter w, int columns) throws IOException {
+        int r = nextSequentialRow();
+        if (r >= MAX_ROWS) {
+            throw new IllegalStateException("Too many rows");
+        }
+        beginSheetData();
+        writeRows(r);
+        if (backgroundWriter != null) {
+            // Cells are written to the output by the calling thread
+            backgroundWriter.await();
+        }
+        rowWriter = w;
+        flushedRows = r + 1;
+        maxRowLength = Math.max(maxRowLength, columns);
+        writeFrontier = Math.max(writeFrontier, r);
+        return r;
+    }
+
+    /**
+     * Check whether a row has attributes, so that it must be written even
+     * if it has no cells.
+     *
+     * @param r Zero-based row number.
+     * @return {@code true} if the row is hidden, grouped or has a default
+     * style.
+     */
+    boolean hasRowAttributes(int r) {
+        return hiddenRows.contains(r) || groupRows.get(r) != 0 || defaultRowStyle(r) != 0;
+    }
+
+    /**
+     * Write the beginning of a row element, for a sequential writer.
+     *
+     * @param r Zero-based row number.
+     * @return Output writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    Writer beginRowElement(int r) throws IOException {
+        writeRowStart(writer, r, hiddenRows.contains(r), groupRows.get(r), rowHeights.get(r), defaultRowStyle(r));
+        return writer;
+    }
+
+    /**
+     * Check whether styled ranges not resolved yet may contain cells of a
+     * row.
+     *
+     * @param r Zero-based row number.
+     * @return {@code false} if no styled range contains the row.
+     */
+    boolean mayHaveStyledRanges(int r) {
+        return styleRectangles.lastRow() >= r;
+    }
+
+    /**
+     * Compute the effective style of a cell written by a sequential writer,
+     * from the styled ranges containing it.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param style Own style of the cell.
+     * @return Cached style index.
+     */
+    int resolveStyle(int r, int c, int style) {
+        return styleRectangles.resolve(r, c, style, 0);
+    }
+
+    /**
+     * Get the columns of a row contained in styled ranges not resolved yet,
+     * whose cells must be written by a sequential writer even if empty.
+     *
+     * @param r Zero-based row number.
+     * @param columns Set of columns, to which the styled columns are added.
+     */
+    void styledRangeColumns(int r, BitSet columns) {
+        styleRectangles.coveredColumns(r, columns);
+    }
+
+    /**
+     * Get the default style of a column, which empty cells are given when
+     * their row has no default style.
+     *
+     * @param c Zero-based column number.
+     * @return Cached style index, 0 if none.
+     */
+    int columnDefaultStyle(int c) {
+        int[] styles = columnDefaultStyles();
+        return c < styles.length ? styles[c] : 0;
+    }
+
+    /**
+     * Check whether value lengths are still tracked for best-fit column
+     * widths.
+     *
+     * @return {@code true} until column widths are written.
+     */
+    boolean isTrackingValueLengths() {
+        return trackValueLengths;
+    }
+
+    /**
+     * Write column definitions of this worksheet as an XML element.
      *
      * @param w Output writer.
      * @param maxCol Max number of columns.
@@ -783,6 +1903,7 @@ public class Worksheet implements Closeable {
      */
     private void writeCols(Writer w, int maxCol) throws IOException {
         // Adjust column widths
+        int[] dirtyLengths = measureDirtyColumns();
         boolean started = false;
         for (int c = 0; c < maxCol; ++c) {
             double maxWidth = DEFAULT_COL_WIDTH;
@@ -791,14 +1912,9 @@ public class Worksheet implements Closeable {
                 bestFit = false;
                 maxWidth = colWidths.get(c);
             } else {
-                for (int r = 0; r < rows.size(); ++r) {
-                    boolean isCellInMergedRanges = mergedMatrix.get(r,c);
-                    // Exclude merged cells from computation && hidden rows
-                    Object o = hiddenRows.contains(r) || isCellInMergedRanges ? null : value(r, c);
-                    if (o != null && !(o instanceof Formula)) {
-                        int length = o.toString().length();
-                        maxWidth = Math.max(maxWidth, (int) ((length * 7 + 10) / 7.0 * 256) / 256.0);
-                    }
+                int length = valueLength(c, dirtyLengths);
+                if (length > 0) {
+                    maxWidth = Math.max(maxWidth, (int) ((length * 7 + 10) / 7.0 * 256) / 256.0);
                 }
             }
             boolean isHidden = hiddenColumns.contains(c);
@@ -810,7 +1926,8 @@ public class Worksheet implements Closeable {
                     w.append("<cols>");
                     started = true;
                 }
-                Integer style = colStyles.getOrDefault(c, Column.noStyle(this, c)).getStyle();
+                int[] columnStyles = columnDefaultStyles();
+                int style = c < columnStyles.length ? columnStyles[c] : 0;
                 writeCol(w, c, maxWidth, bestFit, isHidden,groupLevel, style);
             }
         }
@@ -820,6 +1937,46 @@ public class Worksheet implements Closeable {
     }
 
 
+    /**
+     * Measure the columns marked dirty again from the rows in memory, unless
+     * rows have been written since their values were set. Rows are visited
+     * once for all dirty columns.
+     *
+     * @return Greatest number of characters of the values of each column,
+     * only valid for dirty columns.
+     */
+    private int[] measureDirtyColumns() {
+        if (dirtyValueLengths.isEmpty() || columnWidthsFromAllRows) {
+            return null;
+        }
+        int[] lengths = new int[dirtyValueLengths.length()];
+        for (int r = rows.next(flushedRows, rows.size()); r < rows.size(); r = rows.next(r + 1, rows.size())) {
+            RowData row = rows.get(r);
+            for (int c = dirtyValueLengths.nextSetBit(0); c >= 0 && c < row.length(); c = dirtyValueLengths.nextSetBit(c + 1)) {
+                if (!isExcludedFromWidth(r, c)) {
+                    lengths[c] = Math.max(lengths[c], row.valueLength(c, lengthScratch));
+                }
+            }
+        }
+        return lengths;
+    }
+
+    /**
+     * Get the greatest number of characters of the values of a column, for
+     * its best-fit width.
+     *
+     * @param c Zero-based column number.
+     * @param dirtyLengths Lengths of the columns marked dirty, see
+     * {@link #measureDirtyColumns()}.
+     * @return Number of characters.
+     */
+    private int valueLength(int c, int[] dirtyLengths) {
+        if (dirtyLengths != null && dirtyValueLengths.get(c)) {
+            return dirtyLengths[c];
+        }
+        return c < maxValueLengths.length ? maxValueLengths[c] : 0;
+    }
+
     /**
      * Write a column as an XML element.
      *
@@ -868,7 +2025,8 @@ public class Worksheet implements Closeable {
     /**
      * Finish the construction of this worksheet. This creates the worksheet
      * file on the workbook's output stream. Rows and cells in this worksheet
-     * are then destroyed.
+     * are then destroyed. If an error occurs, temporary files of this
+     * worksheet are deleted and it can no longer be used.
      *
      * @throws IOException If an I/O error occurs.
      */
@@ -876,7 +2034,64 @@ public class Worksheet implements Closeable {
         if (finished) {
             return;
         }
+        try {
+            writeFiles();
+        } catch (Throwable t) {
+            abort(t);
+            throw t;
+        }
+        finished = true;
+    }
+
+    /**
+     * Release the resources of this worksheet without writing it, deleting
+     * its temporary files, e.g. after a failure. The worksheet can no longer
+     * be used. Does nothing if the worksheet is finished.
+     *
+     * @param cause Failure, to which errors releasing resources are added as
+     * suppressed exceptions.
+     */
+    void abort(Throwable cause) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (backgroundWriter != null) {
+            backgroundWriter.shutdown();
+            backgroundWriter = null;
+        }
+        if (spill != null) {
+            closeQuietly(spill, cause);
+            spill = null;
+        }
+        closeQuietly(hyperlinkSpill, cause);
+        closeQuietly(comments, cause);
+        hyperlinkRanges.clear();
+        hyperlinksByBottom.clear();
+        rows.clear();
+        lastRow = null;
+        bufferedBytes = 0;
+    }
+
+    private static void closeQuietly(Closeable closeable, Throwable cause) {
+        try {
+            closeable.close();
+        } catch (IOException | RuntimeException ex) {
+            cause.addSuppressed(ex);
+        }
+    }
+
+    /**
+     * Write the worksheet file and its related files.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeFiles() throws IOException {
         flush();
+        if (backgroundWriter != null) {
+            backgroundWriter.close();
+            backgroundWriter = null;
+        }
         int index = workbook.getIndex(this);
         writer.append("</sheetData>");
 
@@ -903,9 +2118,12 @@ public class Worksheet implements Closeable {
         }
         if (!conditionalFormattings.isEmpty()) {
             int priority = 1;
-            for (ConditionalFormatting v: conditionalFormattings) {
-                v.getConditionalFormattingRule().setPriority(priority++);
-                v.write(writer);
+            for (List<ConditionalFormatting> group : groupConditionalFormattings()) {
+                ConditionalFormatting v = group.get(0);
+                for (List<Range> part : anchoredParts(group, ConditionalFormatting::getRange)) {
+                    v.getConditionalFormattingRule().setPriority(priority++);
+                    v.write(writer, RangeUnion.sqref(part), part.get(0).getTop(), part.get(0).getLeft());
+                }
             }
         }
         for (AlternateShading a : alternateShadingRanges) {
@@ -915,26 +2133,31 @@ public class Worksheet implements Closeable {
             s.write(writer);
         }
         if (!dataValidations.isEmpty()) {
-            writer.append("<dataValidations count=\"").append(dataValidations.size()).append("\">");
-            for (DataValidation v: dataValidations) {
-                v.write(writer);
+            Collection<List<DataValidation>> groups = groupDataValidations();
+            List<List<List<Range>>> parts = new ArrayList<>(groups.size());
+            int count = 0;
+            for (List<DataValidation> group : groups) {
+                parts.add(anchoredParts(group, DataValidation::getRange));
+                count += parts.get(parts.size() - 1).size();
+            }
+            writer.append("<dataValidations count=\"").append(count).append("\">");
+            int i = 0;
+            for (List<DataValidation> group : groups) {
+                for (List<Range> part : parts.get(i++)) {
+                    group.get(0).write(writer, RangeUnion.sqref(part), part.get(0).getTop(), part.get(0).getLeft());
+                }
             }
             writer.append("</dataValidations>");
         }
-        if (!hyperlinkRanges.isEmpty()) {
+        if (!hyperlinkRanges.isEmpty() || !hyperlinkSpill.isEmpty()) {
             writer.append("<hyperlinks>");
-            for (Map.Entry<HyperLink, Ref> hr : hyperlinkRanges.entrySet()) {
-                HyperLink hyperLink = hr.getKey();
-                writer.append("<hyperlink ");
-                Ref ref = hr.getValue();
-                writer.append("ref=\"" + ref.toString()+"\" ");
-                if (hyperLink.getHyperLinkType().equals(HyperLinkType.EXTERNAL)) {
-                    String rId = relationships.setHyperLinkRels(hyperLink.getLinkStr(), "External");
-                    writer.append("r:id=\"" + rId +"\" ");
-                }else{
-                    writer.append("location=\"").append(escape(hyperLink.getLinkStr())).append("\"");
-                }
-                writer.append("/>");
+            try {
+                hyperlinkSpill.copyTo(writer);
+            } finally {
+                hyperlinkSpill.close();
+            }
+            for (Map.Entry<HyperLink, PendingHyperlink> hr : hyperlinkRanges.entrySet()) {
+                writeHyperlink(writer, hr.getKey(), hr.getValue().ref);
             }
             writer.append("</hyperlinks>");
         }
@@ -986,12 +2209,32 @@ public class Worksheet implements Closeable {
         }
 
         writer.append("</worksheet>");
-        workbook.endFile();
+        if (spill != null) {
+            writer.flush();
+            if (columnWidthsFromAllRows) {
+                Writer header = new Writer(4096);
+                writeSheetHeader(header);
+                spill.prepend(header.buffer(), header.length());
+            }
+            try {
+                workbook.writeDeflatedFile("xl/worksheets/sheet" + index + ".xml", spill);
+            } finally {
+                spill.close();
+                spill = null;
+            }
+        } else {
+            workbook.endFile();
+            workbook.releaseOutput(this);
+        }
 
         /* write comment files */
         if (!comments.isEmpty()) {
-            workbook.writeFile("xl/comments" + index + ".xml", comments::writeComments);
-            workbook.writeFile("xl/drawings/vmlDrawing" + index + ".vml", comments::writeVmlDrawing);
+            try {
+                workbook.writeFile("xl/comments" + index + ".xml", comments::writeComments);
+                workbook.writeFile("xl/drawings/vmlDrawing" + index + ".vml", comments::writeVmlDrawing);
+            } finally {
+                comments.close();
+            }
             workbook.writeFile("xl/drawings/drawing" + index + ".xml", comments::writeDrawing);
             relationships.setCommentsRels(index);
         }
@@ -1007,7 +2250,8 @@ public class Worksheet implements Closeable {
         }
         // Free memory; we no longer need this data
         rows.clear();
-        finished = true;
+        lastRow = null;
+        bufferedBytes = 0;
     }
 
     /**
@@ -1018,80 +2262,228 @@ public class Worksheet implements Closeable {
      * <ul>
      * <li>All columns must be defined before calling this method:
      * do not add or merge columns after calling {@link #flush()}.</li>
-     * <li>When a {@link Worksheet} is flushed, no other worksheet can be flushed until {@link #close()} (or  the old fashion way {@link #finish()}) is called.</li>
+     * <li>When a {@link Worksheet} is flushed, no other worksheet can be flushed until {@link #close()} (or  the old fashion way {@link #finish()}) is called,
+     * unless the workbook generates worksheets in parallel, see {@link Workbook#setParallelWorksheets(boolean)}.</li>
      * </ul>
+     * Rows may also be flushed automatically, see
+     * {@link Workbook#setRowsMemoryBudget(long)}.
      *
      * @throws IOException If an I/O error occurs.
      */
     public void flush() throws IOException {
+        beginSheetData();
+        final int nbRows = rows.size();
+        final int maxHideRow = hiddenRows.isEmpty() ? 0 : hiddenRows.last();
+        final int maxGroupRow = groupRows.getMaxNoZeroIndex();
+        final int maxStyledRow = Math.max(styleRectangles.lastRow(), lastStyledRow);
+        final int maxRow = Math.max(nbRows, Math.max(Math.max(maxGroupRow,maxHideRow), maxStyledRow) + 1);
+        writeRows(maxRow);
+        flushedRows = Math.max(flushedRows, maxRow - 1);
+
+
+        if (backgroundWriter != null) {
+            backgroundWriter.submit(Writer::flush);
+        } else {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Automatically flush the rows below the given row, if no other worksheet
+     * is being written to the output stream.
+     *
+     * @param endRow Zero-based number of the first row to keep in memory.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void flush(int endRow) throws IOException {
+        if (writer == null && !columnWidthsFromAllRows && !workbook.acquireOutput(this)) {
+            return;
+        }
+        beginSheetData();
+        writeRows(endRow);
+        flushedRows = endRow;
+    }
+
+    /**
+     * Start writing this worksheet, up to the beginning of the sheet data,
+     * unless already done. When column widths are computed from all rows,
+     * only the temporary file is created, see
+     * {@link #setColumnWidthsFromAllRows(boolean)}.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    private void beginSheetData() throws IOException {
         if (writer == null) {
-            int index = workbook.getIndex(this);
-            writer = workbook.beginFile("xl/worksheets/sheet" + index + ".xml");
-            writer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            writer.append("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">");
-            writer.append("<sheetPr filterMode=\"" + "false" + "\">");
-            if (tabColor != null) {
-                writer.append("<tabColor rgb=\"" + tabColor + "\"/>");
-            }
-            if (!rowSumsBelow || !rowSumsRight) {
-                writer.append("<outlinePr ");
-                if (!rowSumsBelow) {
-                    writer.append("summaryBelow=\"0\" ");
-                }
-                if (!rowSumsRight) {
-                    writer.append("summaryRight=\"0\" ");
-                }
-                writer.append("/>");
-            }
-            writer.append("<pageSetUpPr fitToPage=\"" + fitToPage + "\" " + "autoPageBreaks=\"" + autoPageBreaks + "\"/></sheetPr>");
-            writer.append("<dimension ref=\"A1\"/>");
-            writer.append("<sheetViews><sheetView workbookViewId=\"0\"");
-            if (!showGridLines) {
-                writer.append(" showGridLines=\"false\"");
+            if (workbook.isParallelWorksheets() || columnWidthsFromAllRows) {
+                spill = workbook.newSpill();
+                writer = new Writer(spill);
+            } else {
+                workbook.acquireOutput(this);
+                int index = workbook.getIndex(this);
+                writer = workbook.beginFile("xl/worksheets/sheet" + index + ".xml");
             }
-            if (rightToLeft) {
-                writer.append(" rightToLeft=\"true\"");
+            if (!columnWidthsFromAllRows) {
+                writeSheetHeader(writer);
             }
-            if (zoomScale != 100) {
-                writer.append(" zoomScale=\"").append(zoomScale).append("\"");
+            int capacity = workbook.getAsyncFlushCapacity();
+            if (capacity > 0) {
+                backgroundWriter = new BackgroundWriter(writer, capacity, "fastexcel-" + name);
             }
-            writer.append(">");
-            if (freezeLeftColumns > 0 || freezeTopRows > 0) {
-                writeFreezePane(writer);
+        }
+    }
+
+    /**
+     * Write the beginning of this worksheet, up to the beginning of the sheet
+     * data. Value lengths are no longer tracked afterwards.
+     *
+     * @param w Output writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeSheetHeader(Writer w) throws IOException {
+        w.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        w.append("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">");
+        w.append("<sheetPr filterMode=\"" + "false" + "\">");
+        if (tabColor != null) {
+            w.append("<tabColor rgb=\"" + tabColor + "\"/>");
+        }
+        if (!rowSumsBelow || !rowSumsRight) {
+            w.append("<outlinePr ");
+            if (!rowSumsBelow) {
+                w.append("summaryBelow=\"0\" ");
             }
-            writer.append("</sheetView>");
-            writer.append("</sheetViews><sheetFormatPr defaultRowHeight=\"15.0\"/>");
-            final int nbCols = rows.stream().filter(Objects::nonNull).mapToInt(r -> r.length).max().orElse(0);
-            final int maxHideCol = hiddenColumns.stream().mapToInt(a -> a).max().orElse(0);
-            final int maxStyleCol = colStyles.values().stream().mapToInt(Column::getColNumber).max().orElse(0);
-            final int maxNoZeroIndex = groupColumns.getMaxNoZeroIndex();
-            if (nbCols > 0 || !hiddenColumns.isEmpty()||maxNoZeroIndex!=-1 || !colStyles.isEmpty()) {
-                int maxCol = Math.max(nbCols, Math.max(Math.max(maxHideCol,maxNoZeroIndex), maxStyleCol) + 1);
-                writeCols(writer, maxCol);
+            if (!rowSumsRight) {
+                w.append("summaryRight=\"0\" ");
             }
-            writer.append("<sheetData>");
+            w.append("/>");
         }
-        final int nbRows = rows.size();
-        final int maxHideRow = hiddenRows.stream().mapToInt(a -> a).max().orElse(0);
-        final int maxGroupRow = groupRows.getMaxNoZeroIndex();
-        final int maxRow = Math.max(nbRows, Math.max(maxGroupRow,maxHideRow) + 1);
-        for (int r = flushedRows; r < maxRow; ++r) {
-            boolean notEmptyRow = r < rows.size();
-            Cell[] row = notEmptyRow ? rows.get(r) : null;
+        w.append("<pageSetUpPr fitToPage=\"" + fitToPage + "\" " + "autoPageBreaks=\"" + autoPageBreaks + "\"/></sheetPr>");
+        w.append("<dimension ref=\"A1\"/>");
+        w.append("<sheetViews><sheetView workbookViewId=\"0\"");
+        if (!showGridLines) {
+            w.append(" showGridLines=\"false\"");
+        }
+        if (rightToLeft) {
+            w.append(" rightToLeft=\"true\"");
+        }
+        if (zoomScale != 100) {
+            w.append(" zoomScale=\"").append(zoomScale).append("\"");
+        }
+        w.append(">");
+        if (freezeLeftColumns > 0 || freezeTopRows > 0) {
+            writeFreezePane(w);
+        }
+        w.append("</sheetView>");
+        w.append("</sheetViews><sheetFormatPr defaultRowHeight=\"15.0\"/>");
+        final int nbCols = maxRowLength;
+        final int maxHideCol = hiddenColumns.stream().mapToInt(a -> a).max().orElse(0);
+        final int maxStyleCol = colStyles.values().stream().mapToInt(Column::getColNumber).max().orElse(0);
+        final int maxNoZeroIndex = groupColumns.getMaxNoZeroIndex();
+        if (nbCols > 0 || !hiddenColumns.isEmpty()||maxNoZeroIndex!=-1 || !colStyles.isEmpty()) {
+            int maxCol = Math.max(nbCols, Math.max(Math.max(maxHideCol,maxNoZeroIndex), maxStyleCol) + 1);
+            writeCols(w, maxCol);
+        }
+        w.append("<sheetData>");
+        trackValueLengths = false;
+    }
+
+    /**
+     * Write rows from the first one not flushed yet, and free their memory.
+     * When flushes are asynchronous, the rows are detached and handed over to
+     * the background writer instead.
+     *
+     * @param endRow Zero-based number of the row to stop at, excluded.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeRows(int endRow) throws IOException {
+        if (rowWriter != null) {
+            rowWriter.completeRow();
+        }
+        Executor executor = workbook.getSerializationExecutor();
+        RowWindow window = backgroundWriter == null && executor == null ? null : new RowWindow(columnDefaultStyles());
+        updateBufferedBytes();
+        styleRectangles.selectRows(flushedRows, endRow);
+        for (int r = flushedRows; r < endRow; r = nextRowToWrite(r + 1, endRow)) {
+            RowData row = rows.get(r);
+            long usage = row == null ? 0 : row.memoryUsage();
+            int rowStyle = defaultRowStyle(r);
+            RowData styledRow = resolveStyles(r, row, rowStyle);
             boolean isHidden = hiddenRows.contains(r);
             byte groupLevel = groupRows.get(r);
-            if (row != null || isHidden || groupLevel != 0) {
-                writeRow(writer, r, isHidden,groupLevel,
-                        rowHeights.get(r), row);
+            if (styledRow != null || isHidden || groupLevel != 0 || rowStyle != 0) {
+                if (window != null) {
+                    window.add(r, isHidden, groupLevel, rowHeights.get(r), rowStyle, styledRow);
+                } else {
+                    writeRow(writer, r, isHidden,groupLevel,
+                            rowHeights.get(r), rowStyle, styledRow, columnDefaultStyles());
+                }
             }
-            if (notEmptyRow) {
+            if (row != null) {
                 rows.set(r, null); // free flushed row data
+                bufferedBytes -= usage;
+                if (row == lastRow) {
+                    lastRow = null;
+                }
             }
         }
-        flushedRows = maxRow - 1;
+        styleRectangles.removeRowsBefore(endRow);
+        rowStyles.headMap(endRow).clear();
+        spillRowsBefore(endRow);
+        if (window != null && !window.isEmpty()) {
+            if (backgroundWriter != null) {
+                backgroundWriter.submit(w -> window.write(w, executor));
+            } else {
+                window.write(writer, executor);
+            }
+        }
+    }
 
+    /**
+     * Resolve the styles of the cells of a row about to be written from the
+     * style rectangles containing it.
+     *
+     * @param r Zero-based row number.
+     * @param row Row in memory, or {@code null}.
+     * @param rowStyle Default style of the row.
+     * @return Row with resolved styles, which may have been created or made
+     * longer for that purpose, or {@code null} if the row is empty.
+     */
+    private RowData resolveStyles(int r, RowData row, int rowStyle) {
+        int length = styleRectangles.selectRow(r);
+        if (length > 0) {
+            if (row == null) {
+                row = new RowData(length);
+            } else if (row.length() < length) {
+                row.setLength(length);
+            }
+            styleRectangles.resolveRow(row, rowStyle);
+        }
+        return row;
+    }
 
-        writer.flush();
+    /**
+     * Find the next row which may have to be written: rows in memory, hidden
+     * rows, grouped rows, rows with a default style and rows of style
+     * rectangles. Other rows are skipped without being visited.
+     *
+     * @param from Zero-based number of the first candidate row.
+     * @param endRow Zero-based number of the row to stop at, excluded.
+     * @return Zero-based row number, or {@code endRow}.
+     */
+    private int nextRowToWrite(int from, int endRow) {
+        if (from >= endRow) {
+            return from;
+        }
+        int next = rows.next(from, endRow);
+        Integer hiddenRow = hiddenRows.ceiling(from);
+        if (hiddenRow != null) {
+            next = Math.min(next, hiddenRow);
+        }
+        next = groupRows.nextNoZeroIndex(from, next);
+        Integer styledRow = rowStyles.ceilingKey(from);
+        if (styledRow != null) {
+            next = Math.min(next, styledRow);
+        }
+        return styleRectangles.nextRow(from, next);
     }
 
     /**
@@ -1140,12 +2532,26 @@ public class Worksheet implements Closeable {
      * @param isHidden Whether or not this row is hidden
      * @param groupLevel Group level of row
      * @param rowHeight Row height value in points to be set if customHeight is true
-     * @param row Cells in the row.
+     * @param rowStyle Default style of the row, 0 if none.
+     * @param row Cells in the row, or {@code null}.
+     * @param columnStyles Default style of each column.
      * @throws IOException If an I/O error occurs.
      */
-    private static void writeRow(Writer w, int r, boolean isHidden,byte groupLevel,
-                                 Double rowHeight, Cell... row) throws IOException {
-        w.append("<row r=\"").append(r + 1).append("\"");
+    static void writeRow(Writer w, int r, boolean isHidden,byte groupLevel,
+                         Double rowHeight, int rowStyle, RowData row, int[] columnStyles) throws IOException {
+        writeRowStart(w, r, isHidden, groupLevel, rowHeight, rowStyle);
+        if (null!=row) {
+            row.write(w, r, rowStyle, columnStyles);
+        }
+        w.append(ROW_END);
+    }
+
+    private static void writeRowStart(Writer w, int r, boolean isHidden, byte groupLevel,
+                                      Double rowHeight, int rowStyle) throws IOException {
+        w.append(ROW_START).append(r + 1).append('"');
+        if (rowStyle != 0) {
+            w.append(" s=\"").append(rowStyle).append("\" customFormat=\"1\"");
+        }
         if (isHidden) {
             w.append(" hidden=\"true\"");
         }
@@ -1161,21 +2567,14 @@ public class Worksheet implements Closeable {
                     .append("\"");
         }
         w.append(">");
-        if (null!=row) {
-            for (int c = 0; c < row.length; ++c) {
-                if (row[c] != null) {
-                    row[c].write(w, r, c);
-                }
-            }
-        }
-        w.append("</row>");
     }
 
     /**
      * Assign a note/comment to a cell.
      * The comment popup will be twice the size of the cell and will be initially hidden.
      * <p>
-     * Comments are stored in memory till call to {@link #close()} (or  the old fashion way {@link #finish()}) - calling {@link #flush()} does not write them to output stream.
+     * Comments are written to the output stream by {@link #close()} (or  the old fashion way {@link #finish()}). Until then,
+     * comments of flushed rows are kept in a temporary file, and comments can no longer be set on these rows.
      * @param r Zero-based row number.
      * @param c Zero-based column number.
      * @param comment Note text
@@ -1427,17 +2826,90 @@ public class Worksheet implements Closeable {
     }
 
     void addHyperlink(Ref ref, HyperLink hyperLink) {
-        this.hyperlinkRanges.put(hyperLink, ref);
+        PendingHyperlink pending = hyperlinkRanges.get(hyperLink);
+        if (pending == null) {
+            pending = new PendingHyperlink(hyperlinkSequence++);
+            hyperlinkRanges.put(hyperLink, pending);
+        } else {
+            // Same link as before: it moves to the new cells but keeps its position
+            List<HyperLink> links = hyperlinksByBottom.get(pending.bottom);
+            links.remove(hyperLink);
+            if (links.isEmpty()) {
+                hyperlinksByBottom.remove(pending.bottom);
+            }
+        }
+        pending.ref = ref;
+        pending.bottom = ref instanceof Range ? ((Range) ref).getBottom() : ((Location) ref).row;
+        hyperlinksByBottom.computeIfAbsent(pending.bottom, k -> new ArrayList<>(1)).add(hyperLink);
+    }
+
+    /**
+     * Cells of a hyperlink not written yet.
+     */
+    private static final class PendingHyperlink {
+        /**
+         * Order in which the hyperlink was first added.
+         */
+        final long sequence;
+        Ref ref;
+        int bottom;
+
+        PendingHyperlink(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Write a hyperlink as an XML element.
+     *
+     * @param w Output writer.
+     * @param hyperLink Hyperlink.
+     * @param ref Cell or range of cells of the hyperlink.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeHyperlink(Writer w, HyperLink hyperLink, Ref ref) throws IOException {
+        w.append("<hyperlink ");
+        w.append("ref=\"" + ref.toString()+"\" ");
+        if (hyperLink.getHyperLinkType().equals(HyperLinkType.EXTERNAL)) {
+            String rId = relationships.setHyperLinkRels(hyperLink.getLinkStr(), "External");
+            w.append("r:id=\"" + rId +"\" ");
+        }else{
+            w.append("location=\"").appendEscaped(hyperLink.getLinkStr()).append("\"");
+        }
+        w.append("/>");
+    }
+
+    /**
+     * Move the comments and hyperlinks of written rows to temporary files,
+     * so that they do not stay in memory until this worksheet is finished.
+     *
+     * @param endRow Zero-based number of the first row not written.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void spillRowsBefore(int endRow) throws IOException {
+        comments.spillRowsBefore(endRow);
+        SortedMap<Integer, List<HyperLink>> written = hyperlinksByBottom.headMap(endRow);
+        if (!written.isEmpty()) {
+            List<HyperLink> links = new ArrayList<>();
+            written.values().forEach(links::addAll);
+            written.clear();
+            // Spill in the order the hyperlinks were added, as when not flushed
+            links.sort(Comparator.comparingLong(link -> hyperlinkRanges.get(link).sequence));
+            for (HyperLink link : links) {
+                writeHyperlink(hyperlinkSpill.writer(), link, hyperlinkRanges.remove(link).ref);
+                hyperlinkSpill.commit();
+            }
+        }
     }
 
 
     Table addTable(Range range, String... headers) {
-        if (!tablesMatrix.isConflict(range.getTop(), range.getLeft(), range.getBottom(), range.getRight())) {
+        if (!tablesIndex.overlaps(range.getTop(), range.getLeft(), range.getBottom(), range.getRight())) {
             int tableIndex = getWorkbook().nextTableIndex();
             String rId = relationships.setTableRels(tableIndex);
             Table table = new Table(tableIndex, range, headers);
             tables.put(rId, table);
-            tablesMatrix.setRegion(range.getTop(), range.getLeft(), range.getBottom(), range.getRight());
+            tablesIndex.add(range.getTop(), range.getLeft(), range.getBottom(), range.getRight(), range);
             return table;
         } else {
             throw new IllegalArgumentException("Table conflicted:" + range);
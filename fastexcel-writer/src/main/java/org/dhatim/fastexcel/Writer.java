@@ -17,21 +17,37 @@ package org.dhatim.fastexcel;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
- * Writer for XML files.
+ * Writer for XML files. Characters are encoded as UTF-8 straight into a
+ * reusable byte buffer, which is handed to the output stream when full or
+ * when the writer is flushed. A writer without output stream keeps all bytes
+ * in memory, growing its buffer as needed.
  */
 class Writer {
 
     /**
-     * Target output stream.
+     * Size of the byte buffer.
+     */
+    private static final int BUFFER_SIZE = 512 * 1024;
+
+    private static final byte[] HEX_DIGITS = bytes("0123456789abcdef");
+
+    /**
+     * Target output stream, {@code null} for an in-memory writer.
      */
     private final OutputStream os;
     /**
-     * Char buffer.
+     * Byte buffer.
      */
-    private final StringBuilder sb;
+    private byte[] buf;
+    /**
+     * Number of bytes in the buffer.
+     */
+    private int pos;
 
     /**
      * Constructor.
@@ -40,7 +56,66 @@ class Writer {
      */
     Writer(OutputStream os) {
         this.os = os;
-        this.sb = new StringBuilder(512 * 1024);
+        this.buf = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Constructor for an in-memory writer, whose bytes are accessed with
+     * {@link #buffer()} and {@link #length()}.
+     *
+     * @param initialCapacity Initial buffer size.
+     */
+    Writer(int initialCapacity) {
+        this.os = null;
+        this.buf = new byte[initialCapacity];
+    }
+
+    /**
+     * Encode a string constant, so that it can be appended later on with
+     * {@link #append(byte[])}.
+     *
+     * @param s String.
+     * @return UTF-8 bytes.
+     */
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append pre-encoded bytes.
+     *
+     * @param b UTF-8 bytes, see {@link #bytes(String)}.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    Writer append(byte[] b) throws IOException {
+        return append(b, 0, b.length);
+    }
+
+    /**
+     * Append a range of pre-encoded bytes.
+     *
+     * @param b UTF-8 bytes.
+     * @param off Index of the first byte.
+     * @param len Number of bytes.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    Writer append(byte[] b, int off, int len) throws IOException {
+        if (len > buf.length - pos) {
+            if (os != null) {
+                flush();
+                if (len > buf.length) {
+                    os.write(b, off, len);
+                    return this;
+                }
+            } else {
+                grow(len);
+            }
+        }
+        System.arraycopy(b, off, buf, pos, len);
+        pos += len;
+        return this;
     }
 
     /**
@@ -51,50 +126,161 @@ class Writer {
      * @throws IOException If an I/O error occurs.
      */
     Writer append(String s) throws IOException {
-        return append(s, false);
+        if (s == null) {
+            s = "null";
+        }
+        encode(s, 0, s.length());
+        return this;
     }
 
     /**
-     * Append a string with XML escaping.
+     * Append a string with XML escaping. Runs of characters which do not need
+     * escaping are copied in bulk, and escaped characters are written straight
+     * into the buffer. Invalid characters in XML 1.0 are ignored.
      *
      * @param s String.
      * @return This writer.
      * @throws IOException If an I/O error occurs.
      */
     Writer appendEscaped(String s) throws IOException {
-        return append(s, true);
+        final int length = s.length();
+        int start = 0;
+        int i = XmlEscapeHelper.indexOfEscapable(s, 0, length);
+        while (i < length) {
+            copyAscii(s, start, i);
+            int c = s.codePointAt(i);
+            if (c < 0x80) {
+                append(XmlEscapeHelper.ASCII_REPLACEMENTS[c]);
+            } else if (XmlEscapeHelper.isValid(c)) {
+                appendHexEntity(c);
+            }
+            i += Character.charCount(c);
+            start = i;
+            i = XmlEscapeHelper.indexOfEscapable(s, i, length);
+        }
+        copyAscii(s, start, length);
+        return this;
     }
 
     /**
-     * Append a string with or without escaping.
+     * Copy a run of ASCII characters into the buffer.
      *
      * @param s String.
-     * @param escape Whether the string should be escaped or not
-     * @return This writer.
+     * @param from Index of the first character.
+     * @param to Index after the last character.
      * @throws IOException If an I/O error occurs.
      */
-    private Writer append(String s, boolean escape) throws IOException {
-        if (escape) {
-            sb.append(XmlEscapeHelper.escape(s));
-        } else {
-            sb.append(s);
+    @SuppressWarnings("deprecation")
+    private void copyAscii(String s, int from, int to) throws IOException {
+        while (from < to) {
+            if (pos == buf.length) {
+                makeRoom(to - from);
+            }
+            int n = Math.min(to - from, buf.length - pos);
+            s.getBytes(from, from + n, buf, pos);
+            pos += n;
+            from += n;
+        }
+    }
+
+    /**
+     * Append a character as a hexadecimal character reference, e.g.
+     * {@code &#x1f601;}.
+     *
+     * @param c Character code point.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void appendHexEntity(int c) throws IOException {
+        ensure(10);
+        buf[pos++] = '&';
+        buf[pos++] = '#';
+        buf[pos++] = 'x';
+        int digits = Math.max(1, (35 - Integer.numberOfLeadingZeros(c)) / 4);
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            buf[pos++] = HEX_DIGITS[(c >> shift) & 0xf];
+        }
+        buf[pos++] = ';';
+    }
+
+    /**
+     * Encode characters of a string as UTF-8 into the buffer. Unpaired
+     * surrogates are replaced with {@code '?'}, like
+     * {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @param s String.
+     * @param from Index of the first character.
+     * @param to Index after the last character.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void encode(String s, int from, int to) throws IOException {
+        int i = from;
+        while (i < to) {
+            // A char never takes more than 3 bytes, a surrogate pair takes 4
+            int room = (buf.length - pos) / 3;
+            if (room < 2) {
+                makeRoom(3 * (to - i));
+                room = (buf.length - pos) / 3;
+            }
+            int end = Math.min(to, i + room - 1);
+            while (i < end) {
+                char c = s.charAt(i++);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xc0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i < to && Character.isLowSurrogate(s.charAt(i))) {
+                        int cp = Character.toCodePoint(c, s.charAt(i++));
+                        buf[pos++] = (byte) (0xf0 | (cp >> 18));
+                        buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                        buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                        buf[pos++] = (byte) (0x80 | (cp & 0x3f));
+                    } else {
+                        buf[pos++] = '?';
+                    }
+                } else {
+                    buf[pos++] = (byte) (0xe0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+        }
+    }
+
+    /**
+     * Make sure the buffer has room for the given number of bytes, flushing
+     * it to the output stream if necessary.
+     *
+     * @param n Number of bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void ensure(int n) throws IOException {
+        if (buf.length - pos < n) {
+            makeRoom(n);
         }
-        check();
-        return this;
     }
 
     /**
-     * Check if the buffer gets full. In this case, flush bytes to the output
-     * stream.
+     * Make room in the buffer, by flushing it to the output stream or, for
+     * an in-memory writer, by growing it.
      *
+     * @param n Number of bytes needed; an in-memory writer makes room for all
+     * of them, otherwise at most the buffer size is available.
      * @throws IOException If an I/O error occurs.
      */
-    private void check() throws IOException {
-        if (sb.capacity() - sb.length() < 1024) {
+    private void makeRoom(int n) throws IOException {
+        if (os != null) {
             flush();
+        } else {
+            grow(n);
         }
     }
 
+    private void grow(int n) {
+        buf = Arrays.copyOf(buf, Math.max(2 * buf.length, pos + n));
+    }
+
     /**
      * Append a char without escaping.
      *
@@ -103,8 +289,12 @@ class Writer {
      * @throws IOException If an I/O error occurs.
      */
     Writer append(char c) throws IOException {
-        sb.append(c);
-        check();
+        if (c < 0x80) {
+            ensure(1);
+            buf[pos++] = (byte) c;
+        } else {
+            encode(String.valueOf(c), 0, 1);
+        }
         return this;
     }
 
@@ -116,9 +306,7 @@ class Writer {
      * @throws IOException If an I/O error occurs.
      */
     Writer append(int n) throws IOException {
-        sb.append(n);
-        check();
-        return this;
+        return append((long) n);
     }
 
     /**
@@ -129,31 +317,90 @@ class Writer {
      * @throws IOException If an I/O error occurs.
      */
     Writer append(long n) throws IOException {
-        sb.append(n);
-        check();
+        ensure(NumberWriter.MAX_LENGTH);
+        pos = NumberWriter.writeLong(buf, pos, n);
         return this;
     }
 
     /**
-     * Append a double.
+     * Append a double, using the shortest representation which reads back as
+     * the same value. Integral values have no trailing {@code .0}.
      *
      * @param n Double.
      * @return This writer.
      * @throws IOException If an I/O error occurs.
      */
     Writer append(double n) throws IOException {
-        sb.append(n);
-        check();
+        ensure(NumberWriter.MAX_LENGTH);
+        pos = NumberWriter.writeDouble(buf, pos, n);
         return this;
     }
 
+    /**
+     * Append a float, using the shortest representation which reads back as
+     * the same value. Integral values have no trailing {@code .0}.
+     *
+     * @param n Float.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    Writer append(float n) throws IOException {
+        ensure(NumberWriter.MAX_LENGTH);
+        pos = NumberWriter.writeFloat(buf, pos, n);
+        return this;
+    }
+
+    /**
+     * Append a big decimal, formatted like {@link BigDecimal#toString()}.
+     *
+     * @param n Big decimal.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    Writer append(BigDecimal n) throws IOException {
+        int scale = n.scale();
+        // Plain notation is used by toString() when the adjusted exponent is at least -6
+        if (scale >= 0 && scale < 19 && n.precision() < 19 && n.precision() - scale >= -5) {
+            ensure(NumberWriter.MAX_LENGTH);
+            pos = NumberWriter.writeDecimal(buf, pos, n.unscaledValue().longValue(), scale);
+            return this;
+        }
+        return append(n.toString());
+    }
+
     /**
      * Flush this writer.
      *
      * @throws IOException If an I/O error occurs.
      */
     void flush() throws IOException {
-        os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
-        sb.setLength(0);
+        if (os != null && pos > 0) {
+            os.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+    /**
+     * Get the buffer of an in-memory writer. The returned array is only valid
+     * until more bytes are appended.
+     *
+     * @return Byte buffer, holding {@link #length()} bytes.
+     */
+    byte[] buffer() {
+        return buf;
+    }
+
+    /**
+     * @return Number of bytes in the buffer.
+     */
+    int length() {
+        return pos;
+    }
+
+    /**
+     * Discard all bytes in the buffer.
+     */
+    void reset() {
+        pos = 0;
     }
 }
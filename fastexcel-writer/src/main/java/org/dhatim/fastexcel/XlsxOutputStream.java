@@ -0,0 +1,397 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming zip writer for OPC packages. Entries are deflated on the fly and
+ * followed by a data descriptor, so that the output stream never needs to be
+ * rewound. Entries which were already deflated elsewhere, e.g. by a
+ * {@link DeflatedSpill}, can be copied as is with
+ * {@link #writeDeflatedEntry(String, long, long, long, InputStream)}.
+ * <p>
+ * Zip64 extra fields and end of central directory records are written only
+ * when sizes, offsets or the number of entries do not fit the regular zip
+ * format.
+ */
+final class XlsxOutputStream extends OutputStream {
+
+    private static final int LFH_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION_20 = 20;
+    private static final int VERSION_45 = 45;
+    private static final int DATA_DESCRIPTOR_USED = 0x08;
+    private static final int DEFLATED = 8;
+    private static final int ZIP64_EXTRA_TAG = 1;
+    private static final long MAX16 = 0xffff;
+    private static final long MAX32 = 0xffff_ffffL;
+
+    /**
+     * Zip entry, as recorded in the central directory.
+     */
+    private static final class Entry {
+        private final byte[] name;
+        private final long offset;
+        private long crc;
+        private long size;
+        private long compressedSize;
+
+        Entry(String name, long offset) {
+            this.name = name.getBytes(StandardCharsets.US_ASCII);
+            this.offset = offset;
+        }
+    }
+
+    private final OutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] buf = new byte[64 * 1024];
+    private final List<Entry> entries = new ArrayList<>();
+    private Entry current;
+    /**
+     * Deflater of the current entry, when it is deflated in blocks
+     * concurrently.
+     */
+    private BlockDeflater blockDeflater;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    /**
+     * Number of bytes written to {@link #out}.
+     */
+    private long written;
+    private boolean finished;
+
+    /**
+     * Constructor.
+     *
+     * @param out Output stream eventually holding the zip archive.
+     */
+    XlsxOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Set the compression level of subsequent entries.
+     *
+     * @param level Compression level (0-9).
+     */
+    void setLevel(int level) {
+        deflater.setLevel(level);
+        this.level = level;
+    }
+
+    /**
+     * Begin a new entry, deflating bytes subsequently written to this stream.
+     * The current entry, if any, is closed.
+     *
+     * @param name Entry name.
+     * @throws IOException If an I/O error occurs.
+     */
+    void putNextEntry(String name) throws IOException {
+        putNextEntry(name, null);
+    }
+
+    /**
+     * Begin a new entry, deflating bytes subsequently written to this stream
+     * in blocks on the given executor, see {@link BlockDeflater}. The current
+     * entry, if any, is closed.
+     *
+     * @param name Entry name.
+     * @param executor Executor deflating blocks, or {@code null} to deflate on
+     * the calling thread.
+     * @throws IOException If an I/O error occurs.
+     */
+    void putNextEntry(String name, Executor executor) throws IOException {
+        if (current != null) {
+            closeEntry();
+        }
+        current = new Entry(name, written);
+        writeLocalFileHeader(current);
+        entries.add(current);
+        if (executor != null) {
+            blockDeflater = new BlockDeflater(out, level, executor);
+        }
+    }
+
+    /**
+     * Close the current entry.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void closeEntry() throws IOException {
+        if (current == null) {
+            throw new IllegalStateException("No current zip entry");
+        }
+        if (blockDeflater != null) {
+            blockDeflater.finish();
+            current.size = blockDeflater.getBytesRead();
+            current.compressedSize = blockDeflater.getBytesWritten();
+            current.crc = blockDeflater.getCrc();
+            blockDeflater = null;
+        } else {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            current.size = deflater.getBytesRead();
+            current.compressedSize = deflater.getBytesWritten();
+            current.crc = crc.getValue();
+            deflater.reset();
+            crc.reset();
+        }
+        written += current.compressedSize;
+        writeDataDescriptor(current);
+        current = null;
+    }
+
+    /**
+     * Copy an entry which is already deflated.
+     *
+     * @param name Entry name.
+     * @param crc CRC-32 of uncompressed data.
+     * @param size Size of uncompressed data.
+     * @param compressedSize Size of deflated data.
+     * @param data Deflated data, holding at least {@code compressedSize}
+     * bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    void writeDeflatedEntry(String name, long crc, long size, long compressedSize, InputStream data) throws IOException {
+        if (current != null) {
+            closeEntry();
+        }
+        Entry entry = new Entry(name, written);
+        writeLocalFileHeader(entry);
+        entries.add(entry);
+        long remaining = compressedSize;
+        while (remaining > 0) {
+            int n = data.read(buf, 0, (int) Math.min(buf.length, remaining));
+            if (n < 0) {
+                throw new EOFException("Deflated data of " + name + " is truncated");
+            }
+            out.write(buf, 0, n);
+            remaining -= n;
+        }
+        entry.crc = crc;
+        entry.size = size;
+        entry.compressedSize = compressedSize;
+        written += compressedSize;
+        writeDataDescriptor(entry);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (current == null) {
+            throw new IllegalStateException("No current zip entry");
+        }
+        if (blockDeflater != null) {
+            blockDeflater.write(b, off, len);
+            return;
+        }
+        crc.update(b, off, len);
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    private void deflate() throws IOException {
+        int n = deflater.deflate(buf, 0, buf.length);
+        if (n > 0) {
+            out.write(buf, 0, n);
+        }
+    }
+
+    /**
+     * Write the central directory, closing the current entry if any. The
+     * underlying output stream is flushed but not closed.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (current != null) {
+            closeEntry();
+        }
+        long cenOffset = written;
+        for (Entry entry : entries) {
+            writeCentralDirectoryHeader(entry);
+        }
+        long cenSize = written - cenOffset;
+        if (entries.size() > MAX16 || cenOffset >= MAX32 || cenSize >= MAX32) {
+            writeZip64End(cenOffset, cenSize);
+        }
+        Header h = new Header();
+        h.writeInt(END_SIGNATURE);
+        h.writeShort(0);
+        h.writeShort(0);
+        h.writeShort((int) Math.min(entries.size(), MAX16));
+        h.writeShort((int) Math.min(entries.size(), MAX16));
+        h.writeInt(Math.min(cenSize, MAX32));
+        h.writeInt(Math.min(cenOffset, MAX32));
+        h.writeShort(0);
+        h.flush();
+        deflater.end();
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    private void writeLocalFileHeader(Entry entry) throws IOException {
+        Header h = new Header();
+        h.writeInt(LFH_SIGNATURE);
+        h.writeShort(VERSION_45);
+        h.writeShort(DATA_DESCRIPTOR_USED);
+        h.writeShort(DEFLATED);
+        h.writeInt(0);
+        h.writeInt(0);
+        h.writeInt(0);
+        h.writeInt(0);
+        h.writeShort(entry.name.length);
+        h.writeShort(0);
+        h.write(entry.name);
+        h.flush();
+    }
+
+    private void writeDataDescriptor(Entry entry) throws IOException {
+        Header h = new Header();
+        h.writeInt(DATA_DESCRIPTOR_SIGNATURE);
+        h.writeInt(entry.crc);
+        h.writeLong(entry.compressedSize);
+        h.writeLong(entry.size);
+        h.flush();
+    }
+
+    private void writeCentralDirectoryHeader(Entry entry) throws IOException {
+        boolean zip64Size = entry.size >= MAX32;
+        boolean zip64CompressedSize = entry.compressedSize >= MAX32;
+        boolean zip64Offset = entry.offset >= MAX32;
+        int extraLength = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+        Header h = new Header();
+        h.writeInt(CEN_SIGNATURE);
+        h.writeShort(VERSION_45);
+        h.writeShort(extraLength > 0 ? VERSION_45 : VERSION_20);
+        h.writeShort(DATA_DESCRIPTOR_USED);
+        h.writeShort(DEFLATED);
+        h.writeInt(0);
+        h.writeInt(entry.crc);
+        h.writeInt(zip64CompressedSize ? MAX32 : entry.compressedSize);
+        h.writeInt(zip64Size ? MAX32 : entry.size);
+        h.writeShort(entry.name.length);
+        h.writeShort(extraLength > 0 ? extraLength + 4 : 0);
+        h.writeShort(0);
+        h.writeShort(0);
+        h.writeShort(0);
+        h.writeInt(0);
+        h.writeInt(zip64Offset ? MAX32 : entry.offset);
+        h.write(entry.name);
+        if (extraLength > 0) {
+            h.writeShort(ZIP64_EXTRA_TAG);
+            h.writeShort(extraLength);
+            if (zip64Size) {
+                h.writeLong(entry.size);
+            }
+            if (zip64CompressedSize) {
+                h.writeLong(entry.compressedSize);
+            }
+            if (zip64Offset) {
+                h.writeLong(entry.offset);
+            }
+        }
+        h.flush();
+    }
+
+    private void writeZip64End(long cenOffset, long cenSize) throws IOException {
+        long zip64EndOffset = written;
+        Header h = new Header();
+        h.writeInt(ZIP64_END_SIGNATURE);
+        h.writeLong(44);
+        h.writeShort(VERSION_45);
+        h.writeShort(VERSION_45);
+        h.writeInt(0);
+        h.writeInt(0);
+        h.writeLong(entries.size());
+        h.writeLong(entries.size());
+        h.writeLong(cenSize);
+        h.writeLong(cenOffset);
+        h.writeInt(ZIP64_LOCATOR_SIGNATURE);
+        h.writeInt(0);
+        h.writeLong(zip64EndOffset);
+        h.writeInt(1);
+        h.flush();
+    }
+
+    /**
+     * Little-endian header builder, written to the output stream in one go.
+     */
+    private final class Header {
+        private int length;
+
+        void writeShort(int v) {
+            buf[length++] = (byte) v;
+            buf[length++] = (byte) (v >>> 8);
+        }
+
+        void writeInt(long v) {
+            writeShort((int) v);
+            writeShort((int) (v >>> 16));
+        }
+
+        void writeLong(long v) {
+            writeInt(v);
+            writeInt(v >>> 32);
+        }
+
+        void write(byte[] b) {
+            System.arraycopy(b, 0, buf, length, b.length);
+            length += b.length;
+        }
+
+        void flush() throws IOException {
+            out.write(buf, 0, length);
+            written += length;
+        }
+    }
+}
@@ -1,26 +1,84 @@
 package org.dhatim.fastexcel;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Helper which can apply XML escaping to a string
  */
 public class XmlEscapeHelper {
 
+	/**
+	 * Replacement of each ASCII character, or {@code null} if the character
+	 * can be output as is. Characters which are invalid in XML 1.0 are
+	 * replaced with an empty array.
+	 */
+	static final byte[][] ASCII_REPLACEMENTS = new byte[0x80][];
+
+	static {
+		for (int c = 0; c < ASCII_REPLACEMENTS.length; ++c) {
+			String s = escape(c);
+			if (s.length() != 1 || s.charAt(0) != c) {
+				ASCII_REPLACEMENTS[c] = s.getBytes(StandardCharsets.US_ASCII);
+			}
+		}
+	}
+
 	/**
 	 * Apply XML escaping to a String.
 	 * Invalid characters in XML 1.0 are ignored.
 	 *
 	 * @param text text to be escaped
-	 * @return escaped text
+	 * @return escaped text, or {@code text} itself if nothing needs escaping
 	 */
 	public static String escape(final String text) {
-		int offset = 0;
-		StringBuilder sb = new StringBuilder();
-		while (offset < text.length()) {
+		final int length = text.length();
+		int offset = indexOfEscapable(text, 0, length);
+		if (offset == length) {
+			return text;
+		}
+		StringBuilder sb = new StringBuilder(length + 16);
+		int start = 0;
+		while (offset < length) {
+			sb.append(text, start, offset);
 			int codePoint = text.codePointAt(offset);
 			sb.append(escape(codePoint));
 			offset += Character.charCount(codePoint);
+			start = offset;
+			offset = indexOfEscapable(text, offset, length);
+		}
+		return sb.append(text, start, length).toString();
+	}
+
+	/**
+	 * Find the first character which cannot be output as is. Characters
+	 * before the returned index are all printable ASCII characters.
+	 *
+	 * @param text Text to scan.
+	 * @param from Index of the first character to check.
+	 * @param to Index after the last character to check.
+	 * @return Index of the first character needing escaping, or {@code to}.
+	 */
+	static int indexOfEscapable(String text, int from, int to) {
+		for (int i = from; i < to; ++i) {
+			char c = text.charAt(i);
+			if (c >= 0x80 || ASCII_REPLACEMENTS[c] != null) {
+				return i;
+			}
 		}
-		return sb.toString();
+		return to;
+	}
+
+	/**
+	 * Check whether a character is valid in XML 1.0.
+	 *
+	 * @param c Character code point.
+	 * @return {@code true} if the character is valid.
+	 */
+	static boolean isValid(int c) {
+		return c == 0x9 || c == 0xa || c == 0xD
+				|| (c >= 0x20 && c <= 0xd7ff)
+				|| (c >= 0xe000 && c <= 0xfffd)
+				|| (c >= 0x10000 && c <= 0x10ffff);
 	}
 
 	/**
@@ -30,10 +88,7 @@ public class XmlEscapeHelper {
 	 * @param c Character code point.
 	 */
 	private static String escape(int c) {
-		if (!(c == 0x9 || c == 0xa || c == 0xD
-				|| (c >= 0x20 && c <= 0xd7ff)
-				|| (c >= 0xe000 && c <= 0xfffd)
-				|| (c >= 0x10000 && c <= 0x10ffff))) {
+		if (!isValid(c)) {
 			return "";
 		}
 		switch (c) {
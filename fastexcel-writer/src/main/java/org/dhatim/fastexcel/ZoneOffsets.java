@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Offsets of a timezone from UTC, looked up without allocating. The period
+ * between the zone transitions surrounding the last looked up instant is
+ * cached, so that consecutive timestamps, which usually fall between the same
+ * transitions, are converted with two comparisons. Instances are thread-safe
+ * and shared by zone with {@link #of(ZoneId)}.
+ */
+final class ZoneOffsets {
+
+    private static final ConcurrentMap<ZoneId, ZoneOffsets> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Period during which the offset of the zone does not change.
+     */
+    private static final class Period {
+
+        /**
+         * First instant of this period, in epoch milliseconds.
+         */
+        final long start;
+        /**
+         * First instant after this period, in epoch milliseconds.
+         */
+        final long end;
+        /**
+         * Offset of the zone during this period, in milliseconds.
+         */
+        final int offset;
+
+        Period(long start, long end, int offset) {
+            this.start = start;
+            this.end = end;
+            this.offset = offset;
+        }
+    }
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+    private volatile Period period = new Period(0, 0, 0);
+
+    private ZoneOffsets(ZoneId zone) {
+        this.zone = zone;
+        this.rules = zone.getRules();
+    }
+
+    /**
+     * Get the offsets of a zone.
+     *
+     * @param zone Timezone.
+     * @return Shared offsets of the zone.
+     */
+    static ZoneOffsets of(ZoneId zone) {
+        ZoneOffsets offsets = CACHE.get(zone);
+        return offsets != null ? offsets : CACHE.computeIfAbsent(zone, ZoneOffsets::new);
+    }
+
+    ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Get the offset of the zone from UTC at the given instant.
+     *
+     * @param epochMillis Instant, in milliseconds since the epoch.
+     * @return Offset, in milliseconds.
+     */
+    int offsetMillis(long epochMillis) {
+        Period p = period;
+        if (epochMillis < p.start || epochMillis >= p.end) {
+            p = lookup(epochMillis);
+            period = p;
+        }
+        return p.offset;
+    }
+
+    private Period lookup(long epochMillis) {
+        Instant instant = Instant.ofEpochMilli(epochMillis);
+        int offset = rules.getOffset(instant).getTotalSeconds() * 1000;
+        if (rules.isFixedOffset()) {
+            return new Period(Long.MIN_VALUE, Long.MAX_VALUE, offset);
+        }
+        // The transition at the instant itself is its previous one when the
+        // instant is exactly on it
+        ZoneOffsetTransition previous = rules.previousTransition(instant.plusMillis(1));
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        long start = previous == null ? Long.MIN_VALUE : previous.getInstant().toEpochMilli();
+        long end = next == null ? Long.MAX_VALUE : next.getInstant().toEpochMilli();
+        return new Period(start, end, offset);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CardinalityEstimatorTest {
+
+    @Test
+    void cardinalityEstimator() {
+        CardinalityEstimator distinct = new CardinalityEstimator();
+        CardinalityEstimator repeated = new CardinalityEstimator();
+        for (int i = 0; i < 100_000; ++i) {
+            distinct.add(("Value " + i).hashCode());
+            repeated.add(("Value " + (i % 100)).hashCode());
+        }
+        assertThat(distinct.count()).isEqualTo(100_000);
+        assertThat(distinct.estimate()).isBetween(85_000.0, 115_000.0);
+        assertThat(repeated.estimate()).isBetween(90.0, 110.0);
+    }
+}
@@ -20,16 +20,35 @@ import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.*;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.dhatim.fastexcel.Color.BLACK;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -52,6 +71,41 @@ class CorrectnessTest {
         return bytes;
     }
 
+    /**
+     * Read all entries of a zip archive, checking their CRC and size.
+     *
+     * @param data Zip archive.
+     * @return Uncompressed contents by entry name.
+     */
+    static Map<String, byte[]> readZipEntries(byte[] data) throws IOException {
+        Path file = Files.createTempFile("fastexcel", ".xlsx");
+        try {
+            Files.write(file, data);
+            Map<String, byte[]> contents = new HashMap<>();
+            try (ZipFile zip = new ZipFile(file.toFile())) {
+                for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
+                    ZipEntry entry = entries.nextElement();
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        byte[] buf = new byte[8192];
+                        int n;
+                        while ((n = in.read(buf)) >= 0) {
+                            bytes.write(buf, 0, n);
+                        }
+                    }
+                    CRC32 crc = new CRC32();
+                    crc.update(bytes.toByteArray());
+                    assertThat(crc.getValue()).as(entry.getName()).isEqualTo(entry.getCrc());
+                    assertThat((long) bytes.size()).as(entry.getName()).isEqualTo(entry.getSize());
+                    contents.put(entry.getName(), bytes.toByteArray());
+                }
+            }
+            return contents;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     @Test
     void colToName() {
         assertThat(new Ref() {
@@ -281,7 +335,7 @@ class CorrectnessTest {
             ws.value(5, 0, LocalDateTime.now());
             ws.value(6, 0, ZonedDateTime.now());
             for (int r = 0; r <= 6; r++) {
-                assertThat(ws.cell(r, 0).getValue()).isNotNull();
+                assertThat(ws.value(r, 0)).isNotNull();
             }
             ws.value(0, 0, (Boolean) null);
             ws.value(1, 0, (Number) null);
@@ -291,7 +345,7 @@ class CorrectnessTest {
             ws.value(5, 0, (LocalDateTime) null);
             ws.value(6, 0, (LocalDate) null);
             for (int r = 0; r <= 6; r++) {
-                assertThat(ws.cell(r, 0).getValue()).isNull();
+                assertThat(ws.value(r, 0)).isNull();
             }
         });
     }
@@ -759,4 +813,814 @@ class CorrectnessTest {
         });
     }
 
+    @Test
+    void deflateWorksheetsInBlocks() throws Exception {
+        Consumer<Worksheet> fill = ws -> {
+            for (int r = 0; r < 100_000; ++r) {
+                ws.value(r, 0, "Row " + r);
+                ws.value(r, 1, r * 1.5);
+                ws.value(r, 2, r % 7 == 0);
+            }
+        };
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(wb -> fill.accept(wb.newWorksheet("Sheet"))));
+        Map<String, byte[]> inBlocks = readZipEntries(writeWorkbook(wb -> {
+            wb.setCompressionExecutor(ForkJoinPool.commonPool());
+            fill.accept(wb.newWorksheet("Sheet"));
+        }));
+        Map<String, byte[]> parallel = readZipEntries(writeWorkbook(wb -> {
+            wb.setCompressionExecutor(ForkJoinPool.commonPool());
+            wb.setParallelWorksheets(true);
+            fill.accept(wb.newWorksheet("Sheet"));
+        }));
+        byte[] sheet = expected.get("xl/worksheets/sheet1.xml");
+        assertThat(sheet.length).isGreaterThan(4 * BlockDeflater.BLOCK_SIZE);
+        assertThat(inBlocks.get("xl/worksheets/sheet1.xml")).isEqualTo(sheet);
+        assertThat(parallel.get("xl/worksheets/sheet1.xml")).isEqualTo(sheet);
+        assertThat(inBlocks.keySet()).isEqualTo(expected.keySet());
+        assertThat(parallel.keySet()).isEqualTo(expected.keySet());
+    }
+
+    @Test
+    void spillSharedStrings() throws Exception {
+        StringBuilder longString = new StringBuilder();
+        while (longString.length() < StringArena.SEGMENT_SIZE) {
+            longString.append("<long & \u00e9l\u00e9gant> ");
+        }
+        Consumer<Worksheet> fill = ws -> {
+            for (int r = 0; r < 50_000; ++r) {
+                ws.value(r, 0, "String \u20ac & <" + r + ">");
+                ws.value(r, 1, "Duplicate " + (r % 100));
+            }
+            ws.value(50_000, 0, longString.toString());
+            ws.value(50_001, 0, longString.toString());
+        };
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(wb -> fill.accept(wb.newWorksheet("Sheet"))));
+        Map<String, byte[]> spilled = readZipEntries(writeWorkbook(wb -> {
+            wb.setSharedStringsMemoryBudget(0);
+            fill.accept(wb.newWorksheet("Sheet"));
+        }));
+        byte[] sharedStrings = expected.get("xl/sharedStrings.xml");
+        assertThat(sharedStrings.length).isGreaterThan(4 * StringArena.SEGMENT_SIZE);
+        assertThat(new String(sharedStrings, StandardCharsets.UTF_8)).contains("uniqueCount=\"50101\"", "count=\"100002\"");
+        assertThat(spilled.get("xl/sharedStrings.xml")).isEqualTo(sharedStrings);
+        assertThat(spilled.get("xl/worksheets/sheet1.xml")).isEqualTo(expected.get("xl/worksheets/sheet1.xml"));
+    }
+
+    @Test
+    void autoSharedStringsPolicy() throws Exception {
+        Map<String, byte[]> entries = readZipEntries(writeWorkbook(wb -> {
+            wb.setSharedStringsPolicy(SharedStringsPolicy.AUTO);
+            Worksheet ws = wb.newWorksheet("Sheet");
+            ws.sharedStringsPolicy(2, SharedStringsPolicy.SHARED);
+            for (int r = 0; r < 10_000; ++r) {
+                ws.value(r, 0, "Unique " + r);
+                ws.value(r, 1, "Repeated " + (r % 10));
+                ws.value(r, 2, "Shared " + r);
+            }
+        }));
+        String sheet = new String(entries.get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        String sharedStrings = new String(entries.get("xl/sharedStrings.xml"), StandardCharsets.UTF_8);
+        // Column A switches to inline strings after the first sample
+        assertThat(sheet).contains("<c r=\"A1023\" t=\"s\"", "<c r=\"A1024\" t=\"inlineStr\"", "<c r=\"B10000\" t=\"s\"", "<c r=\"C10000\" t=\"s\"");
+        assertThat(sheet.split("t=\"inlineStr\"", -1)).hasSize(10_000 - 1023 + 1);
+        assertThat(sharedStrings).contains("uniqueCount=\"" + (1023 + 10 + 10_000) + "\"");
+    }
+
+    @Test
+    void rowsMemoryBudget() throws Exception {
+        long budget = 64 * 1024;
+        long[] highWaterMark = new long[1];
+        Function<Long, Consumer<Workbook>> fill = rowsMemoryBudget -> wb -> {
+            wb.setRowsMemoryBudget(rowsMemoryBudget);
+            Worksheet ws = wb.newWorksheet("Sheet");
+            for (int c = 0; c <= 20; ++c) {
+                ws.width(c, 12);
+            }
+            for (int r = 0; r < 10_000; ++r) {
+                for (int c = 0; c < 20; ++c) {
+                    ws.value(r, c, r * 20 + c);
+                }
+                ws.inlineString(r, 20, "Row " + r);
+            }
+            highWaterMark[0] = ws.getBufferedBytesHighWaterMark();
+        };
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(fill.apply(0L)));
+        assertThat(highWaterMark[0]).isGreaterThan(50 * budget);
+        Map<String, byte[]> flushed = readZipEntries(writeWorkbook(fill.apply(budget)));
+        assertThat(highWaterMark[0]).isBetween(budget, 2 * budget);
+        assertThat(flushed.get("xl/worksheets/sheet1.xml")).isEqualTo(expected.get("xl/worksheets/sheet1.xml"));
+    }
+
+    @Test
+    void columnWidthsFromAllRows() throws Exception {
+        Function<Boolean, Consumer<Workbook>> fill = fromAllRows -> wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            ws.setColumnWidthsFromAllRows(fromAllRows);
+            ws.value(0, 0, "short");
+            ws.value(1, 0, "a longer value in a hidden row");
+            ws.hideRow(1);
+            ws.value(2, 1, 12345678901234567890.0);
+            ws.range(2, 2, 2, 3).merge();
+            ws.value(2, 2, "a longer value in a merged cell");
+            try {
+                ws.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            ws.value(3, 0, "a value written after the flush");
+        };
+        String firstRows = new String(readZipEntries(writeWorkbook(fill.apply(false))).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(firstRows).doesNotContain("<col min=\"1\"").contains("<col min=\"2\" max=\"2\" width=\"22.42578125\"").doesNotContain("<col min=\"3\"");
+        String allRows = new String(readZipEntries(writeWorkbook(fill.apply(true))).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(allRows).contains("<col min=\"1\" max=\"1\" width=\"32.42578125\"").contains("<col min=\"2\" max=\"2\" width=\"22.42578125\"").doesNotContain("<col min=\"3\"");
+        assertThat(allRows.substring(allRows.indexOf("<sheetData>"))).isEqualTo(firstRows.substring(firstRows.indexOf("<sheetData>")));
+    }
+
+    @Test
+    void compiledStyle() throws Exception {
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            for (int r = 0; r < 10; ++r) {
+                ws.value(r, 0, r);
+                ws.style(r, 0).bold().fillColor(Color.GRAY4).format("0.00").set();
+                ws.value(r, 1, "Row " + r);
+            }
+        }));
+        Map<String, byte[]> compiled = readZipEntries(writeWorkbook(wb -> {
+            StyleHandle style = wb.compileStyle(s -> s.bold().fillColor(Color.GRAY4).format("0.00"));
+            Worksheet ws = wb.newWorksheet("Sheet");
+            for (int r = 0; r < 10; ++r) {
+                ws.value(r, 0, r, style);
+                ws.value(r, 1, "Row " + r);
+            }
+        }));
+        assertThat(compiled.get("xl/worksheets/sheet1.xml")).isEqualTo(expected.get("xl/worksheets/sheet1.xml"));
+        assertThat(compiled.get("xl/styles.xml")).isEqualTo(expected.get("xl/styles.xml"));
+        try (Workbook other = new Workbook(new NullOutputStream(), "Test", "1.0")) {
+            other.newWorksheet("Sheet");
+            StyleHandle foreign = other.compileStyle(s -> s.italic());
+            String sheet = new String(readZipEntries(writeWorkbook(wb -> {
+                Worksheet ws = wb.newWorksheet("Sheet");
+                assertThrows(IllegalArgumentException.class, () -> ws.value(0, 0, "x", foreign));
+                ws.value(1, 0, "y");
+            })).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+            // The value is not set either
+            assertThat(sheet).contains("<c r=\"A2\"").doesNotContain("<c r=\"A1\"");
+        }
+    }
+
+    @Test
+    void lazyRangeStyles() throws Exception {
+        long[] bufferedBytes = new long[1];
+        Function<Boolean, Consumer<Workbook>> fill = byRow -> wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            ws.value(2, 1, "before");
+            ws.style(2, 1).italic().set();
+            if (byRow) {
+                for (int r = 0; r < 2000; ++r) {
+                    ws.range(r, 0, r, 4).style().bold().fillColor(Color.GRAY4).set();
+                }
+            } else {
+                ws.range(0, 0, 1999, 4).style().bold().fillColor(Color.GRAY4).set();
+            }
+            bufferedBytes[0] = ws.getBufferedBytes();
+            ws.style(3, 2).fontColor(Color.RED).set();
+            ws.range(1000, 3, 2999, 3).style().format("0.00").set();
+            ws.value(1500, 3, 1.5);
+            ws.value(2500, 6, "outside");
+        };
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(fill.apply(true)));
+        Map<String, byte[]> lazy = readZipEntries(writeWorkbook(fill.apply(false)));
+        assertThat(bufferedBytes[0]).isLessThan(1000);
+        assertThat(lazy.get("xl/worksheets/sheet1.xml")).isEqualTo(expected.get("xl/worksheets/sheet1.xml"));
+        assertThat(lazy.get("xl/styles.xml")).isEqualTo(expected.get("xl/styles.xml"));
+    }
+
+    @Test
+    void rowStyles() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            ws.rowStyle(1).bold().set();
+            ws.value(1, 0, "bold");
+            ws.style(1, 1).italic().set();
+            ws.range(0, 0, 1999, 2).style().bold().set();
+            ws.style(3).bold().set();
+            ws.style(0, 3).bold().set();
+            ws.rowStyle(5000).fillColor(Color.GRAY4).set();
+        });
+        String sheet = new String(readZipEntries(data).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        Matcher row = Pattern.compile("<row r=\"2\" s=\"(\\d+)\" customFormat=\"1\">").matcher(sheet);
+        assertThat(row.find()).isTrue();
+        String bold = row.group(1);
+        // B2 is italic, then bold again like its row
+        assertThat(sheet).contains("<c r=\"A2\" s=\"" + bold + "\" t=\"s\">").doesNotContain("<c r=\"B2\"").doesNotContain("<c r=\"C2\"")
+                .contains("<c r=\"C1\" s=\"" + bold + "\"></c>").doesNotContain("<c r=\"D1\"")
+                .contains("<row r=\"5001\" s=\"");
+    }
+
+    @Test
+    void rowStylesAcrossFlushes() throws Exception {
+        Consumer<Worksheet> fill = ws -> {
+            for (int r = 0; r < 1000; ++r) {
+                ws.rowStyle(r).bold().set();
+                ws.value(r, 0, r);
+            }
+            ws.rowStyle(3000).italic().set();
+        };
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(wb -> fill.accept(wb.newWorksheet("Sheet"))));
+        Map<String, byte[]> flushed = readZipEntries(writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            for (int r = 0; r < 1000; ++r) {
+                ws.rowStyle(r).bold().set();
+                ws.value(r, 0, r);
+                if (r % 100 == 99) {
+                    try {
+                        ws.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            ws.rowStyle(3000).italic().set();
+        }));
+        String sheet = new String(flushed.get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(sheet.split("customFormat=\"1\"", -1)).hasSize(1002);
+        assertThat(sheet).contains("<row r=\"3001\" s=\"");
+        assertThat(flushed.get("xl/worksheets/sheet1.xml")).isEqualTo(expected.get("xl/worksheets/sheet1.xml"));
+    }
+
+    @Test
+    void bulkValues() throws Exception {
+        LocalDate date = LocalDate.of(2020, 1, 1);
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            ws.value(0, 1, 1.5);
+            ws.value(0, 2, -2.0);
+            ws.value(1, 0, 3L);
+            ws.value(1, 1, Long.MAX_VALUE);
+            ws.value(2, 2, "a");
+            ws.value(2, 4, "b");
+            ws.value(3, 0, "c");
+            ws.value(3, 1, 4);
+            ws.value(3, 2, true);
+            ws.value(3, 3, date);
+            for (int r = 4; r < 7; ++r) {
+                ws.value(r, 5, (double) r);
+                ws.value(r, 6, (long) r);
+                ws.value(r, 7, "r" + r);
+            }
+            ws.value(5, 8, "x");
+        }));
+        Map<String, byte[]> bulk = readZipEntries(writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            ws.values(0, 1, new double[]{1.5, -2.0});
+            ws.values(1, 0, new long[]{3L, Long.MAX_VALUE});
+            ws.values(2, 2, new String[]{"a", null, "b"});
+            ws.values(3, 0, new Object[]{"c", 4, true, date});
+            ws.values(3, 4, new double[0]);
+            ws.columnValues(5, 4, new double[]{4, 5, 6});
+            ws.columnValues(6, 4, new long[]{4, 5, 6});
+            ws.columnValues(7, 4, new String[]{"r4", "r5", "r6"});
+            ws.columnValues(8, 4, new Object[]{null, "x"});
+        }));
+        assertThat(bulk.get("xl/worksheets/sheet1.xml")).isEqualTo(expected.get("xl/worksheets/sheet1.xml"));
+        assertThat(bulk.get("xl/sharedStrings.xml")).isEqualTo(expected.get("xl/sharedStrings.xml"));
+        assertThrows(IllegalArgumentException.class, () -> writeWorkbook(wb -> wb.newWorksheet("Sheet").values(0, 0, new Object[]{new Object()})));
+        assertThatThrownBy(() -> writeWorkbook(wb -> wb.newWorksheet("Sheet").values(0, Worksheet.MAX_COLS - 1, new long[2])))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("of row 0");
+        assertThatThrownBy(() -> writeWorkbook(wb -> wb.newWorksheet("Sheet").columnValues(0, Worksheet.MAX_ROWS - 1, new long[2])))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("of column 0");
+        // Values are checked before any cell is changed
+        String sheet = new String(readZipEntries(writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            ws.value(0, 0, "kept");
+            assertThatThrownBy(() -> ws.values(0, 0, new Object[]{"replaced", 1, new Object()}))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("row 0, column 2");
+            assertThatThrownBy(() -> ws.columnValues(1, 5, new Object[]{2, new StringBuilder()}))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("row 6, column 1");
+        })).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(sheet).contains("<c r=\"A1\"").doesNotContain("<c r=\"B1\"", "<c r=\"B6\"");
+    }
+
+    @Test
+    void sequentialWriter() throws Exception {
+        int rowCount = 1500;
+        LocalDate date = LocalDate.of(2020, 1, 1);
+        Consumer<Worksheet> prepare = ws -> {
+            ws.setColumnWidthsFromAllRows(true);
+            ws.value(0, 0, "Name");
+            ws.value(0, 1, "Amount");
+            ws.hideRow(3);
+            ws.rowStyle(4).bold().set();
+            ws.range(5, 2, 5, 3).merge();
+            ws.range(1, 1, rowCount, 1).style().italic().set();
+        };
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(wb -> {
+            StyleHandle dateStyle = wb.compileStyle(s -> s.format("yyyy-mm-dd"));
+            Worksheet ws = wb.newWorksheet("Sheet");
+            prepare.accept(ws);
+            for (int r = 1; r <= rowCount; ++r) {
+                if (r != 6) {
+                    ws.value(r, 0, "s" + r % 7);
+                }
+                ws.value(r, 1, r % 2 == 0 ? (Number) (long) r : (Number) (r + 0.25));
+                ws.value(r, 2, date.plusDays(r), dateStyle);
+                ws.value(r, 3, r % 3 == 0);
+            }
+        }));
+        Map<String, byte[]> sequential = readZipEntries(writeWorkbook(wb -> {
+            StyleHandle dateStyle = wb.compileStyle(s -> s.format("yyyy-mm-dd"));
+            Worksheet ws = wb.newWorksheet("Sheet");
+            prepare.accept(ws);
+            RowWriter rw = ws.sequentialWriter(new ColumnSchema()
+                    .column(ColumnType.STRING)
+                    .column(ColumnType.NUMBER)
+                    .column(ColumnType.DATE, dateStyle)
+                    .column(ColumnType.BOOLEAN));
+            try {
+                for (int r = 1; r <= rowCount; ++r) {
+                    assertThat(rw.getRow()).isEqualTo(r);
+                    if (r == 6) {
+                        rw.writeRow(null, (long) r, date.plusDays(r), r % 3 == 0);
+                    } else if (r % 2 == 0) {
+                        rw.value("s" + r % 7).value((long) r).value(date.plusDays(r)).value(r % 3 == 0);
+                    } else {
+                        rw.value("s" + r % 7).value(r + 0.25).value(date.plusDays(r)).value(r % 3 == 0).endRow();
+                    }
+                    if (r % 2 == 0 && r != 6 && r < rowCount) {
+                        // The last row is ended when the worksheet is finished
+                        rw.endRow();
+                    }
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            assertThrows(IllegalStateException.class, () -> ws.value(rowCount, 0, "flushed"));
+        }));
+        assertThat(new String(sequential.get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8))
+                .isEqualTo(new String(expected.get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8));
+        assertThat(sequential.get("xl/sharedStrings.xml")).isEqualTo(expected.get("xl/sharedStrings.xml"));
+
+        writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            RowWriter rw = ws.sequentialWriter(new ColumnSchema().column(ColumnType.NUMBER));
+            assertThrows(IllegalArgumentException.class, () -> rw.value("text"));
+            assertThrows(IllegalStateException.class, () -> rw.value(1).value(2));
+        });
+    }
+
+    @Test
+    void sequentialWriterStyledEmptyCells() throws Exception {
+        int rowCount = 300;
+        Consumer<Worksheet> prepare = ws -> {
+            ws.range(1, 0, rowCount, 4).style().fillColor(Color.YELLOW).set();
+            ws.range(2, 1, rowCount, 5).style().bold().set();
+            ws.rowStyle(3).italic().set();
+        };
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            prepare.accept(ws);
+            for (int r = 1; r <= rowCount; ++r) {
+                ws.value(r, 0, "s" + r);
+                if (r % 3 != 0) {
+                    ws.value(r, 1, r);
+                }
+            }
+        }));
+        Map<String, byte[]> sequential = readZipEntries(writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            prepare.accept(ws);
+            RowWriter rw = ws.sequentialWriter(new ColumnSchema()
+                    .column(ColumnType.STRING)
+                    .column(ColumnType.NUMBER)
+                    .column(ColumnType.NUMBER));
+            try {
+                // Empty first row
+                rw.endRow();
+                for (int r = 1; r <= rowCount; ++r) {
+                    rw.value("s" + r);
+                    if (r % 3 != 0) {
+                        rw.value(r);
+                    } else if (r % 2 == 0) {
+                        rw.skip();
+                    }
+                    if (r % 5 == 0) {
+                        rw.skip();
+                    }
+                    rw.endRow();
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }));
+        assertThat(new String(sequential.get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8))
+                .isEqualTo(new String(expected.get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void sequentialWriterEndsFailedRow() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            RowWriter rw = ws.sequentialWriter(new ColumnSchema().column(ColumnType.STRING).column(ColumnType.NUMBER));
+            try {
+                rw.writeRow("a", 1);
+                assertThrows(IllegalArgumentException.class, () -> rw.writeRow("b", "not a number"));
+                assertThat(rw.getRow()).isEqualTo(2);
+                rw.writeRow("c", 3);
+                assertThrows(IllegalStateException.class, () -> rw.writeRow("d", 4, 5));
+                rw.writeRow("e", 5);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        String sheet = new String(readZipEntries(data).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(sheet.split("<row ", -1)).hasSize(6);
+        assertThat(sheet.split("</row>", -1)).hasSize(6);
+        assertThat(sheet).contains("<c r=\"A2\"", "<c r=\"B4\"", "<c r=\"A5\"").doesNotContain("<c r=\"B2\"");
+    }
+
+    @Test
+    void asyncFlush() throws Exception {
+        Consumer<Worksheet> fill = ws -> {
+            try {
+                // Column widths would otherwise depend on the rows in memory when first flushed
+                ws.width(0, 20);
+                ws.width(1, 10);
+                ws.hideRow(5);
+                ws.range(0, 1, 1499, 1).style().bold().set();
+                for (int r = 0; r < 30_000; ++r) {
+                    ws.value(r, 0, "Row " + r);
+                    ws.value(r, 1, r * 1.5);
+                    if (r % 2000 == 1999) {
+                        ws.flush();
+                    }
+                }
+                RowWriter rw = ws.sequentialWriter(new ColumnSchema().column(ColumnType.STRING).column(ColumnType.NUMBER));
+                for (int r = 0; r < 1000; ++r) {
+                    rw.value("Sequential " + r).value(r).endRow();
+                }
+                ws.value(31_000, 0, "Last");
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        };
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(wb -> fill.accept(wb.newWorksheet("Sheet"))));
+        Map<String, byte[]> async = readZipEntries(writeWorkbook(wb -> {
+            wb.setAsyncFlush(2);
+            wb.setRowsMemoryBudget(64 * 1024);
+            fill.accept(wb.newWorksheet("Sheet"));
+        }));
+        Map<String, byte[]> parallel = readZipEntries(writeWorkbook(wb -> {
+            wb.setAsyncFlush(1);
+            wb.setParallelWorksheets(true);
+            fill.accept(wb.newWorksheet("Sheet"));
+            fill.accept(wb.newWorksheet("Sheet 2"));
+        }));
+        String sheet = new String(expected.get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(new String(async.get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8)).isEqualTo(sheet);
+        assertThat(new String(parallel.get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8)).isEqualTo(sheet);
+        assertThat(new String(parallel.get("xl/worksheets/sheet2.xml"), StandardCharsets.UTF_8)).isEqualTo(sheet);
+
+        // Output errors of the background thread are thrown when the worksheet is finished
+        OutputStream failing = new OutputStream() {
+            private int count;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                count += len;
+                if (count > 1024) {
+                    throw new IOException("Disk full");
+                }
+            }
+        };
+        Workbook wb = new Workbook(failing, "Test", "1.0");
+        try {
+            wb.setAsyncFlush(1);
+            Worksheet ws = wb.newWorksheet("Sheet");
+            for (int r = 0; r < 10_000; ++r) {
+                ws.value(r, 0, r * 1.5);
+            }
+            assertThatThrownBy(ws::finish).isInstanceOf(IOException.class).hasRootCauseMessage("Disk full");
+        } finally {
+            // The output keeps failing, but closing releases the resources of the workbook
+            assertThatThrownBy(wb::close).isInstanceOf(IOException.class);
+        }
+
+        // Threads of worksheets not written because of a failure are stopped
+        Workbook failed = new Workbook(failing, "Test", "1.0");
+        try {
+            failed.setAsyncFlush(1);
+            failed.setParallelWorksheets(true);
+            for (int i = 0; i < 3; ++i) {
+                Worksheet asyncSheet = failed.newWorksheet("Async " + i);
+                asyncSheet.value(0, 0, i);
+                asyncSheet.flush();
+            }
+        } finally {
+            assertThatThrownBy(failed::close).isInstanceOf(IOException.class);
+        }
+        assertThat(Thread.getAllStackTraces().keySet()).noneMatch(t -> t.getName().startsWith("fastexcel-Async "));
+    }
+
+    @Test
+    void parallelRowSerialization() throws Exception {
+        Consumer<Worksheet> fill = ws -> {
+            ws.width(0, 20);
+            for (int r = 0; r < 10_000; ++r) {
+                ws.value(r, 0, "Row " + r % 100);
+                ws.inlineString(r, 1, "<Inline> & " + r);
+                ws.value(r, 2, r * 1.5);
+                if (r % 13 == 0) {
+                    ws.hideRow(r);
+                }
+                if (r == 999) {
+                    try {
+                        // Too small to be split in chunks
+                        ws.flush();
+                        ws.range(2000, 2, 3999, 2).style().bold().set();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            }
+        };
+        Map<String, byte[]> expected = readZipEntries(writeWorkbook(wb -> fill.accept(wb.newWorksheet("Sheet"))));
+        Map<String, byte[]> parallel = readZipEntries(writeWorkbook(wb -> {
+            wb.setSerializationExecutor(ForkJoinPool.commonPool());
+            fill.accept(wb.newWorksheet("Sheet"));
+        }));
+        Map<String, byte[]> async = readZipEntries(writeWorkbook(wb -> {
+            wb.setSerializationExecutor(ForkJoinPool.commonPool());
+            wb.setAsyncFlush(1);
+            fill.accept(wb.newWorksheet("Sheet"));
+        }));
+        byte[] sheet = expected.get("xl/worksheets/sheet1.xml");
+        assertThat(parallel.get("xl/worksheets/sheet1.xml")).isEqualTo(sheet);
+        assertThat(async.get("xl/worksheets/sheet1.xml")).isEqualTo(sheet);
+    }
+
+    @Test
+    void epochValuesAreWrittenAsSerialNumbers() throws Exception {
+        ZoneId zone = ZoneId.of("America/New_York");
+        ZonedDateTime zdt = ZonedDateTime.of(2021, 7, 14, 18, 30, 15, 250_000_000, zone);
+        LocalDate date = LocalDate.of(2020, 2, 29);
+        byte[] expected = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            ws.value(0, 0, zdt);
+            ws.value(0, 1, date);
+        });
+        byte[] epoch = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            ws.value(0, 0, zdt.toInstant().toEpochMilli(), zone);
+            ws.valueEpochDay(0, 1, date.toEpochDay());
+            assertThatThrownBy(() -> ws.value(1, 0, 0L, null)).isInstanceOf(NullPointerException.class)
+                    .hasMessage("Timezone must not be null");
+        });
+        byte[] sequential = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            try {
+                RowWriter w = ws.sequentialWriter(new ColumnSchema().column(ColumnType.DATE).column(ColumnType.DATE));
+                w.value(zdt.toInstant().toEpochMilli(), zone).valueEpochDay(date.toEpochDay()).endRow();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        String sheet = new String(readZipEntries(expected).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(new String(readZipEntries(epoch).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8)).isEqualTo(sheet);
+        Matcher values = Pattern.compile("<v>[^<]*</v>").matcher(sheet);
+        String sequentialSheet = new String(readZipEntries(sequential).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        while (values.find()) {
+            assertThat(sequentialSheet).contains(values.group());
+        }
+    }
+
+    @Test
+    void distantRowsOnlyUseMemoryForTheirPages() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            ws.value(0, 0, "Header");
+            ws.value(1_000_000, 0, "Total");
+            ws.value(1_000_000, 1, 42);
+            assertThat(ws.getBufferedBytes()).isLessThan(1_000);
+            assertThat(ws.value(1_000_000, 1)).isEqualTo(42);
+            assertThat(ws.value(500_000, 0)).isNull();
+        });
+        String sheet = new String(readZipEntries(data).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(sheet).contains("<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c></row><row r=\"1000001\">");
+        assertThat(sheet).doesNotContain("<row r=\"2\"");
+    }
+
+    @Test
+    void wideSparseRows() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            for (int r = 0; r < 100; ++r) {
+                ws.value(r, 16_000, r);
+                ws.value(r, 0, "Row " + r);
+                ws.value(r, 8_000, r * 0.5);
+            }
+            ws.style(3, 12_000).bold().set();
+            assertThat(ws.getBufferedBytes()).isLessThan(100_000);
+            assertThat(ws.value(7, 8_000)).isEqualTo(3.5);
+            assertThat(ws.value(7, 8_001)).isNull();
+            ws.value(7, 8_000, (String) null);
+            assertThat(ws.value(7, 8_000)).isNull();
+        });
+        String sheet = new String(readZipEntries(data).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(sheet).contains("<row r=\"3\"><c r=\"A3\" t=\"s\"><v>2</v></c><c r=\"KUS3\" t=\"n\"><v>1</v></c><c r=\"WQK3\" t=\"n\"><v>2</v></c></row>");
+        assertThat(sheet).containsPattern("<c r=\"QSO4\" s=\"\\d+\"></c><c r=\"WQK4\"");
+        assertThat(sheet).contains("<row r=\"8\"><c r=\"A8\" t=\"s\"><v>7</v></c><c r=\"WQK8\" t=\"n\"><v>7</v></c></row>");
+    }
+
+    @Test
+    void sparseRowsBecomeDenseWhenFilled() throws Exception {
+        int columns = 200;
+        Consumer<Worksheet> styles = ws -> ws.range(0, 10, 1, 150).style().italic().set();
+        byte[] expected = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            for (int c = 0; c < columns; ++c) {
+                ws.value(0, c, c);
+                ws.value(1, c, c * 0.25);
+            }
+            styles.accept(ws);
+        });
+        byte[] scattered = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            // Visit columns in a scattered order, starting sparse
+            for (int i = 0; i < columns; ++i) {
+                int c = (i * 37 + 150) % columns;
+                ws.value(1, c, c * 0.25);
+                ws.value(0, c, c);
+            }
+            styles.accept(ws);
+        });
+        assertThat(readZipEntries(scattered).get("xl/worksheets/sheet1.xml")).isEqualTo(readZipEntries(expected).get("xl/worksheets/sheet1.xml"));
+    }
+
+    @Test
+    void manyMergedRanges() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet");
+            // Grouped headers: pairs of cells merged on every row
+            for (int r = 0; r < 10_000; ++r) {
+                for (int c = 0; c < 20; c += 2) {
+                    ws.range(r, c, r, c + 1).merge();
+                }
+            }
+            assertThatThrownBy(() -> ws.range(5_000, 3, 5_001, 4).merge()).isInstanceOf(IllegalArgumentException.class);
+            ws.range(10_000, 0, 10_001, 1).merge();
+            ws.value(0, 0, "A long header which is merged");
+            ws.value(10_002, 0, "Short");
+        });
+        String sheet = new String(readZipEntries(data).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(sheet.split("<mergeCell ", -1)).hasSize(100_002);
+        // The merged header does not widen its column
+        assertThat(sheet).doesNotContain("<col min=\"1\"");
+    }
+
+    @Test
+    void commentsAndHyperlinksOfFlushedRowsAreSpilled() throws Exception {
+        Function<Boolean, byte[]> write = flush -> {
+            try {
+                return writeWorkbook(wb -> {
+                    Worksheet ws = wb.newWorksheet("Sheet");
+                    ws.width(0, 20);
+                    ws.width(1, 20);
+                    try {
+                        for (int r = 0; r < 20_000; ++r) {
+                            ws.value(r, 0, r);
+                            ws.comment(r, 0, "Audit note <" + r + ">");
+                            if (r % 2 == 0) {
+                                ws.hyperlink(r, 1, new HyperLink("https://example.com/" + r, "Link " + r));
+                            } else {
+                                ws.range(r, 1, r, 2).setHyperlink(HyperLink.internal("Sheet!A" + r, "Row " + r));
+                            }
+                            if (flush && r % 1000 == 999) {
+                                ws.flush();
+                            }
+                        }
+                        if (flush) {
+                            assertThatThrownBy(() -> ws.comment(10, 0, "Late")).isInstanceOf(IllegalStateException.class);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        Map<String, byte[]> expected = readZipEntries(write.apply(false));
+        Map<String, byte[]> flushed = readZipEntries(write.apply(true));
+        for (String entry : new String[]{"xl/worksheets/sheet1.xml", "xl/comments1.xml", "xl/drawings/vmlDrawing1.vml", "xl/worksheets/_rels/sheet1.xml.rels"}) {
+            assertThat(new String(flushed.get(entry), StandardCharsets.UTF_8)).as(entry).isEqualTo(new String(expected.get(entry), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void coalesceConditionalFormattings() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < 100; ++r) {
+                ws.value(r, 0, r);
+                // Same rule for each row, relative to the row
+                ws.range(r, 0, r, 0).style().fillColor(Color.YELLOW)
+                        .set(new ConditionalFormattingExpressionRule("A" + (r + 1) + ">50", false));
+                // Same rule for each row, but comparing the cell on the left
+                ws.range(r, 1, r, 1).style().fillColor(Color.YELLOW)
+                        .set(new ConditionalFormattingExpressionRule("A" + (r + 1) + ">50", false));
+                // Same text for each row, always comparing cell A1
+                ws.range(r, 2, r, 2).style().fillColor(Color.YELLOW)
+                        .set(new ConditionalFormattingExpressionRule("$A$1>50", false));
+            }
+            ws.range(0, 3, 9, 3).style().fillColor(Color.RED)
+                    .set(new ConditionalFormattingExpressionRule("A1>50", false));
+            ws.range(4, 4, 4, 4).style().fillColor(Color.YELLOW)
+                    .set(new ConditionalFormattingExpressionRule("A1>50", false));
+            ws.range(5, 4, 5, 4).style().fillColor(Color.YELLOW)
+                    .set(new ConditionalFormattingExpressionRule("A1>50", false));
+        });
+        String sheet = new String(readZipEntries(data).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(sheet.split("<conditionalFormatting ", -1)).hasSize(7);
+        assertThat(sheet).contains("<conditionalFormatting sqref=\"A1:A100\"><cfRule type=\"expression\" priority=\"1\" stopIfTrue=\"0\" dxfId=\"0\"><formula>A1>50</formula>");
+        assertThat(sheet).contains("<conditionalFormatting sqref=\"B1:B100\"><cfRule type=\"expression\" priority=\"2\" stopIfTrue=\"0\" dxfId=\"0\"><formula>A1>50</formula>");
+        assertThat(sheet).contains("<conditionalFormatting sqref=\"C1:C100\"><cfRule type=\"expression\" priority=\"3\" stopIfTrue=\"0\" dxfId=\"0\"><formula>$A$1>50</formula>");
+        assertThat(sheet).contains("<conditionalFormatting sqref=\"D1:D10\"><cfRule type=\"expression\" priority=\"4\" stopIfTrue=\"0\" dxfId=\"1\"><formula>A1>50</formula>");
+        // Identical text, but each cell compares a different cell
+        assertThat(sheet).contains("<conditionalFormatting sqref=\"E5:E5\"><cfRule type=\"expression\" priority=\"5\" stopIfTrue=\"0\" dxfId=\"0\"><formula>A1>50</formula>");
+        assertThat(sheet).contains("<conditionalFormatting sqref=\"E6:E6\"><cfRule type=\"expression\" priority=\"6\" stopIfTrue=\"0\" dxfId=\"0\"><formula>A1>50</formula>");
+    }
+
+    @Test
+    void coalesceDataValidations() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < 50; ++r) {
+                ws.range(r, 0, r, 0).validateWithFormula("ISNUMBER(A" + (r + 1) + ")");
+            }
+            // Relative to column C, not to column A
+            ws.range(0, 2, 9, 2).validateWithFormula("ISNUMBER(A1)");
+            ws.range(0, 3, 9, 3).validateWithFormula("ISNUMBER($A$1)");
+            ws.range(0, 4, 9, 4).validateWithFormula("ISNUMBER($A$1)");
+            ws.range(0, 5, 9, 5).validateWithFormula("ISNUMBER($A$1)").showErrorMessage(true);
+            // Not anchored on the top-left cell of their bounding box
+            ws.range(0, 7, 1, 7).validateWithFormula("ISTEXT(H1)");
+            ws.range(2, 6, 3, 6).validateWithFormula("ISTEXT(G3)");
+        });
+        String sheet = new String(readZipEntries(data).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(sheet).contains("<dataValidations count=\"6\">");
+        assertThat(sheet).containsPattern("sqref=\"A1:A50\"[^>]*><formula1>ISNUMBER\\(A1\\)<");
+        assertThat(sheet).containsPattern("sqref=\"C1:C10\"[^>]*><formula1>ISNUMBER\\(A1\\)<");
+        assertThat(sheet).containsPattern("sqref=\"D1:E10\"[^>]*showErrorMessage=\"false\"[^>]*><formula1>ISNUMBER\\(\\$A\\$1\\)<");
+        assertThat(sheet).containsPattern("sqref=\"F1:F10\"[^>]*showErrorMessage=\"true\"[^>]*><formula1>ISNUMBER\\(\\$A\\$1\\)<");
+        assertThat(sheet).containsPattern("sqref=\"H1:H2\"[^>]*><formula1>ISTEXT\\(H1\\)<");
+        assertThat(sheet).containsPattern("sqref=\"G3:G4\"[^>]*><formula1>ISTEXT\\(G3\\)<");
+    }
+
+    @Test
+    void deleteTemporaryFilesOnFailure() throws Exception {
+        Set<Path> before = temporaryFiles();
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Disk full");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        Workbook wb = new Workbook(failing, "Test", "1.0");
+        wb.setParallelWorksheets(true);
+        for (int i = 0; i < 3; ++i) {
+            Worksheet ws = wb.newWorksheet("Sheet " + i);
+            ws.value(0, 0, i);
+            // Enough comments and hyperlinks for their spills to use temporary files
+            for (int r = 0; r < 2000; ++r) {
+                ws.comment(r, 0, "Note " + r);
+                ws.hyperlink(r, 1, new HyperLink("https://example.com/" + r, "Link " + r));
+            }
+            ws.flush();
+        }
+        // Sheet data, hyperlinks, comments and comment shapes of each sheet
+        assertThat(temporaryFiles()).hasSize(before.size() + 12);
+        assertThatThrownBy(wb::close).isInstanceOf(IOException.class).hasMessage("Disk full");
+        assertThat(temporaryFiles()).isEqualTo(before);
+        // Once failed, the workbook is not written again
+        wb.close();
+    }
+
+    private static Set<Path> temporaryFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(System.getProperty("java.io.tmpdir")), "fastexcel*")) {
+            Set<Path> result = new HashSet<>();
+            files.forEach(result::add);
+            return result;
+        }
+    }
 }
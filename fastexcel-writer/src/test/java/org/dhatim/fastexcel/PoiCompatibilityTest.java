@@ -3,6 +3,7 @@ package org.dhatim.fastexcel;
 import org.apache.poi.ss.formula.WorkbookEvaluator;
 import org.apache.poi.ss.usermodel.DataValidation.ErrorStyle;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellAddress;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.usermodel.*;
 import org.junit.jupiter.api.Test;
@@ -190,6 +191,55 @@ class PoiCompatibilityTest {
     }
 
 
+    @Test
+    void parallelWorksheets() throws Exception {
+        int numWs = 8;
+        int numRows = 20_000;
+        byte[] data = writeWorkbook(wb -> {
+            wb.setParallelWorksheets(true);
+            @SuppressWarnings("unchecked")
+            CompletableFuture<Void>[] cfs = new CompletableFuture[numWs];
+            for (int i = 0; i < cfs.length; ++i) {
+                Worksheet ws = wb.newWorksheet("Sheet " + i);
+                int sheet = i;
+                cfs[i] = CompletableFuture.runAsync(() -> {
+                    try {
+                        ws.comment(0, 0, "Comment " + sheet);
+                        for (int r = 0; r < numRows; ++r) {
+                            ws.value(r, 0, "Sheet " + sheet + " row " + r);
+                            ws.value(r, 1, r * 0.5);
+                            if (r % 1000 == 999) {
+                                ws.flush();
+                            }
+                        }
+                        ws.finish();
+                    } catch (IOException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                });
+            }
+            try {
+                CompletableFuture.allOf(cfs).get();
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+
+        // Check generated workbook with Apache POI
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        assertThat(xwb.getNumberOfSheets()).isEqualTo(numWs);
+        for (int i = 0; i < numWs; ++i) {
+            XSSFSheet xws = xwb.getSheetAt(i);
+            assertThat(xws.getSheetName()).isEqualTo("Sheet " + i);
+            assertThat(xws.getLastRowNum()).isEqualTo(numRows - 1);
+            assertThat(xws.getCellComment(new CellAddress(0, 0)).getString().getString()).isEqualTo("Comment " + i);
+            for (int r = 0; r < numRows; r += 997) {
+                assertThat(xws.getRow(r).getCell(0).getStringCellValue()).isEqualTo("Sheet " + i + " row " + r);
+                assertThat(xws.getRow(r).getCell(1).getNumericCellValue()).isEqualTo(r * 0.5);
+            }
+        }
+    }
+
     @Test
     void sortWorksheets() throws Exception {
         int numWs = 3;
@@ -857,4 +907,24 @@ class PoiCompatibilityTest {
         assertEquals(worksheetName, xws.getSheetName());
     }
 
+
+    @Test
+    void rowStyle() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Worksheet 1");
+            ws.rowStyle(1).bold().fillColor(Color.GRAY4).set();
+            ws.value(1, 0, "bold");
+            ws.value(1, 1, "italic");
+            ws.style(1, 1).italic().set();
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFRow row = xwb.getSheetAt(0).getRow(1);
+        assertTrue(row.isFormatted());
+        assertTrue(row.getRowStyle().getFont().getBold());
+        assertTrue(row.getCell(0).getCellStyle().getFont().getBold());
+        assertTrue(row.getCell(1).getCellStyle().getFont().getItalic());
+        assertEquals(FillPatternType.SOLID_FOREGROUND, row.getCell(1).getCellStyle().getFillPattern());
+        assertNull(row.getCell(2));
+    }
 }
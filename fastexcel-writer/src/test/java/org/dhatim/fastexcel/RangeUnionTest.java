@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RangeUnionTest {
+
+    private static String union(Worksheet ws, String... refs) {
+        List<Range> ranges = new ArrayList<>();
+        for (String ref : refs) {
+            ranges.add(range(ws, ref));
+        }
+        return RangeUnion.sqref(RangeUnion.union(ranges));
+    }
+
+    private static Range range(Worksheet ws, String ref) {
+        String[] cells = ref.split(":");
+        int[] from = cell(cells[0]);
+        int[] to = cells.length == 1 ? from : cell(cells[1]);
+        return ws.range(from[0], from[1], to[0], to[1]);
+    }
+
+    private static int[] cell(String ref) {
+        int i = 0;
+        int col = 0;
+        while (Character.isLetter(ref.charAt(i))) {
+            col = col * 26 + ref.charAt(i++) - 'A' + 1;
+        }
+        return new int[]{Integer.parseInt(ref.substring(i)) - 1, col - 1};
+    }
+
+    private static Workbook workbook() {
+        return new Workbook(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }, "Test", "1.0");
+    }
+
+    @Test
+    void mergeAdjacentAndOverlappingRanges() throws IOException {
+        try (Workbook wb = workbook()) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            assertThat(union(ws, "A1")).isEqualTo("A1:A1");
+            assertThat(union(ws, "A1", "A2", "A3:A5", "A4:A10")).isEqualTo("A1:A10");
+            assertThat(union(ws, "A1:A10", "B1:B10", "C1:C5")).isEqualTo("A1:B10 C1:C5");
+            assertThat(union(ws, "A1:B2", "A3:A3", "B3:B3")).isEqualTo("A1:B3");
+            assertThat(union(ws, "C3", "A1", "B2")).isEqualTo("A1:A1 B2:B2 C3:C3");
+        }
+    }
+
+    @Test
+    void dropContainedRanges() throws IOException {
+        try (Workbook wb = workbook()) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            assertThat(union(ws, "A1:B2", "A1")).isEqualTo("A1:B2");
+            assertThat(union(ws, "B2", "A1:C3", "A2:B2")).isEqualTo("A1:C3");
+            assertThat(union(ws, "A1:B2", "B2:C3", "C3")).isEqualTo("A1:B2 B2:C3");
+        }
+    }
+
+    @Test
+    void unionCoversSameCells() throws IOException {
+        Random random = new Random(42);
+        try (Workbook wb = workbook()) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int n = 0; n < 100; ++n) {
+                List<Range> ranges = new ArrayList<>();
+                boolean[][] cells = new boolean[12][12];
+                for (int i = random.nextInt(20) + 1; i > 0; --i) {
+                    int top = random.nextInt(12);
+                    int left = random.nextInt(12);
+                    int bottom = top + random.nextInt(12 - top);
+                    int right = left + random.nextInt(12 - left);
+                    ranges.add(ws.range(top, left, bottom, right));
+                    for (int r = top; r <= bottom; ++r) {
+                        Arrays.fill(cells[r], left, right + 1, true);
+                    }
+                }
+                List<Range> union = RangeUnion.union(ranges);
+                boolean[][] covered = new boolean[12][12];
+                for (Range a : union) {
+                    for (int r = a.getTop(); r <= a.getBottom(); ++r) {
+                        Arrays.fill(covered[r], a.getLeft(), a.getRight() + 1, true);
+                    }
+                    for (Range b : union) {
+                        boolean contained = b.getTop() <= a.getTop() && b.getLeft() <= a.getLeft()
+                                && b.getBottom() >= a.getBottom() && b.getRight() >= a.getRight();
+                        assertThat(a == b || !contained).as("%s contained in %s", a, b).isTrue();
+                    }
+                }
+                assertThat(covered).isDeepEqualTo(cells);
+            }
+        }
+    }
+
+    @Test
+    void splitPartsWithoutCommonAnchor() throws IOException {
+        try (Workbook wb = workbook()) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            List<Range> union = RangeUnion.union(Arrays.asList(range(ws, "A1:A2"), range(ws, "B5")));
+            assertThat(RangeUnion.anchoredParts(union)).hasSize(1);
+            union = RangeUnion.union(Arrays.asList(range(ws, "B1:B2"), range(ws, "A5")));
+            assertThat(RangeUnion.anchoredParts(union)).hasSize(2);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RectangleIndexTest {
+
+    @Test
+    void rectangleIndexMatchesBruteForce() {
+        Random random = new Random(42);
+        RectangleIndex<Integer> index = new RectangleIndex<>();
+        boolean[][] cells = new boolean[200][60];
+        for (int i = 0; i < 2_000; ++i) {
+            int top = random.nextInt(200);
+            int left = random.nextInt(60);
+            int bottom = Math.min(199, top + random.nextInt(4));
+            int right = Math.min(59, left + random.nextInt(4));
+            boolean expected = false;
+            for (int r = top; r <= bottom; ++r) {
+                for (int c = left; c <= right; ++c) {
+                    expected |= cells[r][c];
+                }
+            }
+            assertThat(index.overlaps(top, left, bottom, right)).isEqualTo(expected);
+            if (!expected) {
+                index.add(top, left, bottom, right, i);
+                for (int r = top; r <= bottom; ++r) {
+                    for (int c = left; c <= right; ++c) {
+                        cells[r][c] = true;
+                    }
+                }
+            }
+        }
+        for (int r = 0; r < 200; ++r) {
+            BitSet columns = new BitSet();
+            index.coveredColumns(r, columns);
+            for (int c = 0; c < 60; ++c) {
+                assertThat(index.contains(r, c)).isEqualTo(cells[r][c]);
+                assertThat(columns.get(c)).isEqualTo(cells[r][c]);
+            }
+        }
+    }
+}
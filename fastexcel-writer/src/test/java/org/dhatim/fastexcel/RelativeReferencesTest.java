@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RelativeReferencesTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = ';', quoteCharacter = '`', value = {
+            "A1>50; 4; 1; B5>50",
+            "$A1+A$1+$A$1; 2; 2; $A3+C$1+$A$1",
+            "SUM(A1:B2); 1; 0; SUM(A2:B3)",
+            "SUM(A:C)+SUM(2:$4); 1; 1; SUM(B:D)+SUM(3:$4)",
+            "A1; -1; -1; XFD1048576",
+            "XFD1048576; 1; 1; A1",
+            "'A1 B2'!A1&\"C3\"; 1; 0; 'A1 B2'!A2&\"C3\"",
+            "'it''s A1'!A1; 0; 1; 'it''s A1'!B1",
+            "LOG10(A1)+ATAN2(B2,C3); 1; 0; LOG10(A2)+ATAN2(B3,C4)",
+            "Sheet1!A1+AB1!A1; 1; 0; Sheet1!A2+AB1!A2",
+            "TRUE+ABCD1+XFE1+R1C1; 1; 1; TRUE+ABCD1+XFE1+R1C1",
+            "1.5E+3*A1; 1; 0; 1.5E+3*A2",
+            "Table1[[#This Row],[A1]]+a1; 1; 0; Table1[[#This Row],[A1]]+A2",
+            "#REF!+A1; 1; 0; #REF!+A2"})
+    void moveReferences(String formula, int rows, int columns, String expected) {
+        assertThat(RelativeReferences.move(formula, rows, columns)).isEqualTo(expected);
+        assertThat(RelativeReferences.move(expected, -rows, -columns)).isEqualToIgnoringCase(formula);
+    }
+}
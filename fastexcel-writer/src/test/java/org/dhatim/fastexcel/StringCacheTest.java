@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StringCacheTest {
+
+    private static final int STRINGS = 30_000;
+    private static final int THREADS = 8;
+
+    private static String string(int i) {
+        // Long enough for strings to fill several arena segments
+        return "String <" + i + "> & some text to make it longer \u00e9\u20ac " + (i * 31);
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 64L * 1024 * 1024})
+    void concurrentLookups(long memoryBudget) throws Exception {
+        int[][] indexes = new int[THREADS][STRINGS];
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (StringCache cache = new StringCache()) {
+            cache.setMemoryBudget(memoryBudget);
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < THREADS; ++t) {
+                    int thread = t;
+                    futures.add(executor.submit(() -> {
+                        // Each thread adds and looks up strings in its own order, twice
+                        for (int pass = 0; pass < 2; ++pass) {
+                            for (int k = 0; k < STRINGS; ++k) {
+                                int i = (int) ((k * 7919L + thread * 1009L) % STRINGS);
+                                int index = cache.cacheString(string(i));
+                                if (pass == 1) {
+                                    assertThat(index).isEqualTo(indexes[thread][i]);
+                                }
+                                indexes[thread][i] = index;
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            Writer w = new Writer(baos);
+            cache.write(w);
+            w.flush();
+        }
+        Set<Integer> distinct = new HashSet<>();
+        for (int i = 0; i < STRINGS; ++i) {
+            for (int t = 1; t < THREADS; ++t) {
+                assertThat(indexes[t][i]).isEqualTo(indexes[0][i]);
+            }
+            assertThat(distinct.add(indexes[0][i])).isTrue();
+        }
+        assertThat(distinct).allMatch(index -> index >= 0 && index < STRINGS);
+        String xml = baos.toString("UTF-8");
+        assertThat(xml).contains("count=\"" + 2 * THREADS * STRINGS + "\" uniqueCount=\"" + STRINGS + "\"");
+        String[] items = xml.split("<si><t xml:space=\"preserve\">");
+        assertThat(items).hasSize(STRINGS + 1);
+        for (int i = 0; i < STRINGS; i += 97) {
+            String escaped = string(i).replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                    .replace("\u00e9", "&#xe9;").replace("\u20ac", "&#x20ac;");
+            assertThat(items[indexes[0][i] + 1]).startsWith(escaped + "</t></si>");
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StyleCacheTest {
+
+    private static final String[] FORMATS = {null, "0.00", "yyyy-mm-dd", "#,##0"};
+    private static final Font[] FONTS = {
+            Font.DEFAULT,
+            Font.build(true, null, null, null, null, null, null),
+            Font.build(null, true, null, "Arial", BigDecimal.valueOf(12), Color.RED, null)
+    };
+    private static final Fill[] FILLS = {Fill.NONE, Fill.fromColor(Color.GRAY4), Fill.fromColor(Color.YELLOW)};
+    private static final Border[] BORDERS = {Border.NONE, Border.fromStyleAndColor("thin", Color.BLACK)};
+    private static final Alignment[] ALIGNMENTS = {null, new Alignment("center", null, false, 0, 0), new Alignment(null, "top", true, 45, 1)};
+
+    /**
+     * Merge random style attributes into styles cached so far.
+     */
+    private static int[] mergeRandomStyles(StyleCache cache, long seed) {
+        Random random = new Random(seed);
+        int[] results = new int[5_000];
+        int styles = 1;
+        for (int i = 0; i < results.length; ++i) {
+            int current = random.nextInt(styles);
+            results[i] = cache.mergeAndCacheStyle(current,
+                    FORMATS[random.nextInt(FORMATS.length)],
+                    FONTS[random.nextInt(FONTS.length)],
+                    FILLS[random.nextInt(FILLS.length)],
+                    BORDERS[random.nextInt(BORDERS.length)],
+                    ALIGNMENTS[random.nextInt(ALIGNMENTS.length)],
+                    null);
+            styles = Math.max(styles, results[i] + 1);
+        }
+        return results;
+    }
+
+    private static String write(StyleCache cache) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Writer w = new Writer(baos);
+        cache.write(w);
+        w.flush();
+        return baos.toString("UTF-8");
+    }
+
+    @Test
+    void repeatedMergesReturnSameIndex() {
+        StyleCache cache = new StyleCache();
+        int bold = cache.mergeAndCacheStyle(0, null, FONTS[1], Fill.NONE, Border.NONE, null, null);
+        assertThat(bold).isPositive();
+        assertThat(cache.mergeAndCacheStyle(0, null, FONTS[1], Fill.NONE, Border.NONE, null, null)).isEqualTo(bold);
+        assertThat(cache.mergeAndCacheStyle(0, null, Font.build(true, null, null, null, null, null, null), Fill.NONE, Border.NONE, null, null)).isEqualTo(bold);
+        int boldGray = cache.mergeAndCacheStyle(bold, null, Font.DEFAULT, FILLS[1], Border.NONE, null, null);
+        assertThat(boldGray).isNotEqualTo(bold);
+        assertThat(cache.mergeAndCacheStyle(bold, null, Font.DEFAULT, FILLS[1], Border.NONE, null, null)).isEqualTo(boldGray);
+        // Same attributes merged into another style
+        int gray = cache.mergeAndCacheStyle(0, null, Font.DEFAULT, FILLS[1], Border.NONE, null, null);
+        assertThat(gray).isNotEqualTo(boldGray).isNotEqualTo(bold);
+        // Different attributes merged into the same style
+        assertThat(cache.mergeAndCacheStyle(bold, null, Font.DEFAULT, FILLS[2], Border.NONE, null, null)).isNotEqualTo(boldGray);
+        assertThat(cache.mergeAndCacheStyle(bold, "0.00", Font.DEFAULT, FILLS[1], Border.NONE, null, null)).isNotEqualTo(boldGray);
+        // A merge that changes nothing keeps the style
+        assertThat(cache.mergeAndCacheStyle(boldGray, null, Font.DEFAULT, Fill.NONE, Border.NONE, null, null)).isEqualTo(boldGray);
+    }
+
+    @Test
+    void memoizedMergesMatchFreshCache() throws IOException {
+        StyleCache memoized = new StyleCache();
+        int[] results = mergeRandomStyles(memoized, 42);
+        String expected = write(memoized);
+        // The same merges again are all answered by the memo, and add no style
+        assertThat(mergeRandomStyles(memoized, 42)).isEqualTo(results);
+        assertThat(write(memoized)).isEqualTo(expected);
+        // A fresh cache computes the same styles
+        StyleCache fresh = new StyleCache();
+        assertThat(mergeRandomStyles(fresh, 42)).isEqualTo(results);
+        assertThat(write(fresh)).isEqualTo(expected);
+        // Distinct styles do not collide
+        Map<String, Integer> indexes = new HashMap<>();
+        String xml = write(memoized);
+        String cellXfs = xml.substring(xml.indexOf("<cellXfs"), xml.indexOf("</cellXfs>"));
+        String[] xfs = cellXfs.substring(cellXfs.indexOf('>') + 1).split("(?=<xf )");
+        for (int i = 0; i < xfs.length; ++i) {
+            assertThat(indexes.put(xfs[i], i)).as("style %d", i).isNull();
+        }
+    }
+}
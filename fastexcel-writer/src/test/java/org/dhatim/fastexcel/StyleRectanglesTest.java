@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StyleRectanglesTest {
+
+    private static final int ROWS = 300;
+    private static final int COLUMNS = 60;
+
+    /**
+     * Rectangles and their merge functions, applied by scanning all of them.
+     */
+    private static final class Expected {
+
+        private final List<int[]> rectangles = new ArrayList<>();
+
+        int resolve(int r, int c, int style, int since) {
+            for (int[] rect : rectangles) {
+                if (rect[0] > since && rect[1] <= r && r <= rect[3] && rect[2] <= c && c <= rect[4]) {
+                    style = merge(style, rect[0]);
+                }
+            }
+            return style;
+        }
+    }
+
+    private static int merge(int style, int sequence) {
+        return (style * 7 + sequence) % 1000;
+    }
+
+    private static Expected addRandomRectangles(StyleRectangles rectangles, int count, long seed) {
+        Random random = new Random(seed);
+        Expected expected = new Expected();
+        for (int i = 0; i < count; ++i) {
+            int top = random.nextInt(ROWS);
+            int left = random.nextInt(COLUMNS);
+            int bottom = Math.min(ROWS - 1, top + random.nextInt(i % 10 == 0 ? ROWS : 20));
+            int right = Math.min(COLUMNS - 1, left + random.nextInt(COLUMNS / 2));
+            int sequence = i + 1;
+            rectangles.add(top, left, bottom, right, style -> merge(style, sequence));
+            expected.rectangles.add(new int[]{sequence, top, left, bottom, right});
+        }
+        return expected;
+    }
+
+    @Test
+    void resolveManyOverlappingRectangles() {
+        StyleRectangles rectangles = new StyleRectangles();
+        Expected expected = addRandomRectangles(rectangles, 3000, 42);
+        assertThat(rectangles.sequence()).isEqualTo(3000);
+        Random random = new Random(7);
+        for (int r = 0; r < ROWS; ++r) {
+            for (int c = 0; c < COLUMNS; ++c) {
+                int since = random.nextBoolean() ? 0 : random.nextInt(3000);
+                assertThat(rectangles.resolve(r, c, 5, since)).as("%d,%d since %d", r, c, since)
+                        .isEqualTo(expected.resolve(r, c, 5, since));
+            }
+        }
+    }
+
+    @Test
+    void resolveRowsAcrossFlushes() {
+        StyleRectangles rectangles = new StyleRectangles();
+        Expected expected = addRandomRectangles(rectangles, 3000, 43);
+        for (int from = 0; from < ROWS; from += 37) {
+            int endRow = Math.min(ROWS, from + 37);
+            rectangles.selectRows(from, endRow);
+            int expectedRow = from;
+            for (int r = rectangles.nextRow(from, endRow); r < endRow; r = rectangles.nextRow(r + 1, endRow)) {
+                for (; expectedRow < r; ++expectedRow) {
+                    int skipped = expectedRow;
+                    assertThat(expected.rectangles).as("skipped %d", skipped)
+                            .noneMatch(rect -> rect[1] <= skipped && skipped <= rect[3]);
+                }
+                expectedRow = r + 1;
+                int length = rectangles.selectRow(r);
+                RowData row = new RowData(Math.max(1, length));
+                rectangles.resolveRow(row, 0);
+                for (int c = 0; c < COLUMNS; ++c) {
+                    int style = c < length ? row.getStyle(c) : 0;
+                    assertThat(style).as("%d,%d", r, c).isEqualTo(expected.resolve(r, c, 0, 0));
+                }
+            }
+            rectangles.removeRowsBefore(endRow);
+            expected.rectangles.removeIf(rect -> rect[3] < endRow);
+            // Rectangles still needed by the next rows are kept
+            for (int c = 0; c < COLUMNS; ++c) {
+                assertThat(rectangles.resolve(endRow, c, 0, 0)).isEqualTo(expected.resolve(endRow, c, 0, 0));
+            }
+        }
+        assertThat(expected.rectangles).isEmpty();
+        assertThat(rectangles.resolve(ROWS - 1, 0, 3, 0)).isEqualTo(3);
+    }
+}
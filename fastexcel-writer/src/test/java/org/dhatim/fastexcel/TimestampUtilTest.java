@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimestampUtilTest {
+
+    private static double calendarSerialNumber(long epochMillis, TimeZone tz) {
+        Calendar cal = Calendar.getInstance(tz);
+        cal.setTimeInMillis(epochMillis);
+        return TimestampUtil.serialNumber(LocalDateTime.of(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1,
+                cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.HOUR_OF_DAY), cal.get(Calendar.MINUTE),
+                cal.get(Calendar.SECOND), cal.get(Calendar.MILLISECOND) * 1_000_000));
+    }
+
+    @Test
+    void epochMillisSerialNumbersMatchCalendar() {
+        long start = LocalDate.of(1902, 1, 1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        long end = LocalDate.of(2037, 12, 31).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        long step = 7 * 3_600_000L + 13 * 60_000L + 17_123L;
+        for (String id : new String[]{"UTC", "Europe/Paris", "America/Sao_Paulo", "Asia/Kolkata", "Australia/Lord_Howe"}) {
+            TimeZone tz = TimeZone.getTimeZone(id);
+            ZoneId zone = ZoneId.of(id);
+            for (long t = start; t < end; t += step) {
+                assertThat(TimestampUtil.serialNumber(t, zone)).as("%s at %d", id, t).isEqualTo(calendarSerialNumber(t, tz));
+            }
+        }
+        Date now = new Date();
+        assertThat(TimestampUtil.convertDate(now)).isEqualTo(calendarSerialNumber(now.getTime(), TimeZone.getDefault()));
+        assertThat(TimestampUtil.serialNumber(now, ZoneId.of("Asia/Kolkata")))
+                .isEqualTo(calendarSerialNumber(now.getTime(), TimeZone.getTimeZone("Asia/Kolkata")));
+    }
+    @Test
+    void dateSerialNumbersFollowDefaultTimezone() {
+        TimeZone initial = TimeZone.getDefault();
+        Date date = new Date(ZonedDateTime.of(2021, 7, 14, 18, 30, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli());
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+            assertThat(TimestampUtil.convertDate(date)).isEqualTo(TimestampUtil.serialNumber(LocalDateTime.of(2021, 7, 15, 3, 30)));
+            TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+            assertThat(TimestampUtil.convertDate(date)).isEqualTo(TimestampUtil.serialNumber(LocalDateTime.of(2021, 7, 14, 14, 30)));
+        } finally {
+            TimeZone.setDefault(initial);
+        }
+    }
+
+    @Test
+    void serialNumbersAroundTransitions() {
+        ZoneId zone = ZoneId.of("Europe/Paris");
+        // 2004-03-28 02:00 CET is 03:00 CEST
+        long transition = ZonedDateTime.of(2004, 3, 28, 3, 0, 0, 0, zone).toInstant().toEpochMilli();
+        assertThat(TimestampUtil.serialNumber(transition - 1, zone)).isEqualTo(TimestampUtil.serialNumber(LocalDateTime.of(2004, 3, 28, 1, 59, 59, 999_000_000)));
+        assertThat(TimestampUtil.serialNumber(transition, zone)).isEqualTo(TimestampUtil.serialNumber(LocalDateTime.of(2004, 3, 28, 3, 0)));
+        long winter = ZonedDateTime.of(2004, 1, 10, 12, 0, 0, 0, zone).toInstant().toEpochMilli();
+        assertThat(TimestampUtil.serialNumber(winter, zone)).isEqualTo(TimestampUtil.serialNumber(LocalDateTime.of(2004, 1, 10, 12, 0)));
+        assertThat(TimestampUtil.epochDaySerialNumber(LocalDate.of(1900, 2, 28).toEpochDay())).isEqualTo(59.0);
+        assertThat(TimestampUtil.epochDaySerialNumber(LocalDate.of(1900, 3, 1).toEpochDay())).isEqualTo(61.0);
+        assertThat(TimestampUtil.epochDaySerialNumber(LocalDate.of(1899, 12, 31).toEpochDay())).isEqualTo(-1.0);
+    }
+}
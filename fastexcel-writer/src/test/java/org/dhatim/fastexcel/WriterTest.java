@@ -18,6 +18,10 @@ package org.dhatim.fastexcel;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class WriterTest {
@@ -43,4 +47,53 @@ class WriterTest {
         assertThat(s).isEqualTo("some characters are ignored:  or ");
     }
 
+    @Test
+    void testUtf8AcrossBufferBoundaries() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 2 * 1024 * 1024) {
+            sb.append("abc é € \ud83d\ude01 <&> ").append(sb.length()).append(' ');
+        }
+        String text = sb.toString();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Writer w = new Writer(baos);
+        w.append("<row r=\"").append(42).append('"').append(-7L).append(Long.MIN_VALUE).append(text).append('\u00e9');
+        w.flush();
+        assertThat(baos.toByteArray()).isEqualTo(("<row r=\"42\"-7" + Long.MIN_VALUE + text + '\u00e9').getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testNumbers() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Writer w = new Writer(baos);
+        w.append(1.0).append(' ').append(-0.5).append(' ').append(0.1 + 0.2).append(' ').append(1e7).append(' ')
+                .append(123456.789).append(' ').append(0.001).append(' ').append(1e-4).append(' ').append(1e23).append(' ')
+                .append(Double.MAX_VALUE).append(' ').append(0.0).append(' ').append(Double.NaN).append(' ')
+                .append(1.1f).append(' ').append(16777216f).append(' ')
+                .append(new BigDecimal("-0.0050")).append(' ').append(new BigDecimal("1E+3")).append(' ')
+                .append(new BigDecimal("123456789012345678901234567890.5"));
+        w.flush();
+        assertThat(baos.toString("UTF-8")).isEqualTo("1 -0.5 0.30000000000000004 1E7 123456.789 0.001 1E-4 1E23 "
+                + "1.7976931348623157E308 0 NaN 1.1 1.6777216E7 -0.0050 1E+3 123456789012345678901234567890.5");
+    }
+
+    @Test
+    void testDoublesRoundTrip() throws Exception {
+        Random random = new Random(0);
+        double[] values = new double[100_000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = i % 2 == 0 ? Double.longBitsToDouble(random.nextLong()) : Math.round(random.nextDouble() * 1e8) / 100.0;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Writer w = new Writer(baos);
+        for (double v : values) {
+            w.append(v).append(' ');
+        }
+        w.flush();
+        String[] s = baos.toString("UTF-8").split(" ");
+        for (int i = 0; i < values.length; ++i) {
+            assertThat(Double.valueOf(s[i])).isEqualTo(Double.valueOf(values[i]));
+            assertThat(s[i].length()).isLessThanOrEqualTo(Double.toString(values[i]).length());
+        }
+    }
+
 }
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Zip archives written by {@link XlsxOutputStream}, read back with Commons
+ * Compress, both from the central directory and as a stream.
+ */
+class XlsxOutputStreamTest {
+
+    private static final long MAX32 = 0xffff_ffffL;
+
+    @Test
+    void smallArchive() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (XlsxOutputStream zip = new XlsxOutputStream(bytes)) {
+            zip.putNextEntry("a.xml");
+            zip.write("<a/>".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry("empty.xml");
+            zip.putNextEntry("b.xml");
+            zip.write("<b/>".getBytes(StandardCharsets.UTF_8));
+        }
+        try (ZipFile zip = ZipFile.builder().setSeekableByteChannel(new SeekableInMemoryByteChannel(bytes.toByteArray())).get()) {
+            List<ZipArchiveEntry> entries = Collections.list(zip.getEntriesInPhysicalOrder());
+            assertThat(entries).extracting(ZipArchiveEntry::getName).containsExactly("a.xml", "empty.xml", "b.xml");
+            assertThat(read(zip.getInputStream(entries.get(0)))).isEqualTo("<a/>");
+            assertThat(read(zip.getInputStream(entries.get(1)))).isEmpty();
+            assertThat(entries.get(2).getSize()).isEqualTo(4);
+            assertThat(entries.get(2).getCrc()).isEqualTo(crc("<b/>"));
+        }
+        try (ZipArchiveInputStream in = new ZipArchiveInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertThat(in.getNextEntry().getName()).isEqualTo("a.xml");
+            assertThat(read(in)).isEqualTo("<a/>");
+            assertThat(in.getNextEntry().getName()).isEqualTo("empty.xml");
+            assertThat(in.getNextEntry().getName()).isEqualTo("b.xml");
+            assertThat(read(in)).isEqualTo("<b/>");
+            assertThat(in.getNextEntry()).isNull();
+        }
+    }
+
+    @Test
+    void moreThan65535Entries() throws IOException {
+        int count = 70_000;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (XlsxOutputStream zip = new XlsxOutputStream(bytes)) {
+            for (int i = 0; i < count; ++i) {
+                zip.putNextEntry("entry" + i + ".xml");
+                zip.write(("<e>" + i + "</e>").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        try (ZipFile zip = ZipFile.builder().setSeekableByteChannel(new SeekableInMemoryByteChannel(bytes.toByteArray())).get()) {
+            List<ZipArchiveEntry> entries = Collections.list(zip.getEntriesInPhysicalOrder());
+            assertThat(entries).hasSize(count);
+            for (int i : new int[]{0, 65534, 65535, 65536, count - 1}) {
+                ZipArchiveEntry entry = entries.get(i);
+                assertThat(entry.getName()).isEqualTo("entry" + i + ".xml");
+                assertThat(read(zip.getInputStream(entry))).isEqualTo("<e>" + i + "</e>");
+                assertThat(entry.getCrc()).isEqualTo(crc("<e>" + i + "</e>"));
+            }
+        }
+        try (ZipArchiveInputStream in = new ZipArchiveInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            int n = 0;
+            for (ZipArchiveEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                assertThat(entry.getName()).isEqualTo("entry" + n + ".xml");
+                assertThat(read(in)).isEqualTo("<e>" + n + "</e>");
+                ++n;
+            }
+            assertThat(n).isEqualTo(count);
+        }
+    }
+
+    /**
+     * A 4 GiB entry, copied deflated, followed by an entry whose offset, like
+     * the central directory, does not fit in 32 bits. The archive is kept in
+     * memory by sharing identical pages.
+     */
+    @Test
+    void entriesAndOffsetsBeyond4GiB() throws IOException {
+        int blocks = 65_537;
+        long size = (long) StoredBlocks.BLOCK_SIZE * blocks;
+        long compressedSize = (long) StoredBlocks.BLOCK_LENGTH * blocks;
+        CRC32 crc = new CRC32();
+        byte[] zeros = new byte[StoredBlocks.BLOCK_SIZE];
+        for (int i = 0; i < blocks; ++i) {
+            crc.update(zeros);
+        }
+        PagedOutputStream bytes = new PagedOutputStream(StoredBlocks.BLOCK_LENGTH);
+        try (XlsxOutputStream zip = new XlsxOutputStream(bytes)) {
+            zip.putNextEntry("a.xml");
+            zip.write("<a/>".getBytes(StandardCharsets.UTF_8));
+            zip.writeDeflatedEntry("big.xml", crc.getValue(), size, compressedSize, new StoredBlocks(blocks));
+            zip.putNextEntry("b.xml");
+            zip.write("<b/>".getBytes(StandardCharsets.UTF_8));
+        }
+        assertThat(bytes.size()).isGreaterThan(compressedSize);
+        try (ZipFile zip = ZipFile.builder().setSeekableByteChannel(bytes.channel()).get()) {
+            List<ZipArchiveEntry> entries = Collections.list(zip.getEntriesInPhysicalOrder());
+            assertThat(entries).extracting(ZipArchiveEntry::getName).containsExactly("a.xml", "big.xml", "b.xml");
+            ZipArchiveEntry big = entries.get(1);
+            assertThat(big.getSize()).isEqualTo(size).isGreaterThanOrEqualTo(MAX32);
+            assertThat(big.getCompressedSize()).isEqualTo(compressedSize);
+            assertThat(big.getCrc()).isEqualTo(crc.getValue());
+            ZipArchiveEntry b = entries.get(2);
+            assertThat(b.getLocalHeaderOffset()).isGreaterThan(MAX32);
+            assertThat(read(zip.getInputStream(b))).isEqualTo("<b/>");
+            assertThat(read(zip.getInputStream(entries.get(0)))).isEqualTo("<a/>");
+        }
+        try (ZipArchiveInputStream in = new ZipArchiveInputStream(Channels.newInputStream(bytes.channel()))) {
+            assertThat(in.getNextEntry().getName()).isEqualTo("a.xml");
+            assertThat(read(in)).isEqualTo("<a/>");
+            assertThat(in.getNextEntry().getName()).isEqualTo("big.xml");
+            byte[] buf = new byte[1 << 16];
+            long read = 0;
+            CRC32 readCrc = new CRC32();
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                readCrc.update(buf, 0, n);
+                read += n;
+            }
+            assertThat(read).isEqualTo(size);
+            assertThat(readCrc.getValue()).isEqualTo(crc.getValue());
+            ZipArchiveEntry b = in.getNextEntry();
+            assertThat(b.getName()).isEqualTo("b.xml");
+            assertThat(read(in)).isEqualTo("<b/>");
+            assertThat(in.getNextEntry()).isNull();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            bytes.write(buf, 0, n);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static long crc(String s) {
+        CRC32 crc = new CRC32();
+        crc.update(s.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Deflated stream of zeros, made of stored blocks.
+     */
+    private static final class StoredBlocks extends InputStream {
+
+        static final int BLOCK_SIZE = 0xffff;
+        static final int BLOCK_LENGTH = BLOCK_SIZE + 5;
+
+        private final long length;
+        private long position;
+
+        StoredBlocks(int blocks) {
+            this.length = (long) BLOCK_LENGTH * blocks;
+        }
+
+        @Override
+        public int read() {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position == length) {
+                return -1;
+            }
+            int n = (int) Math.min(len, length - position);
+            for (int i = 0; i < n; ++i, ++position) {
+                int offset = (int) (position % BLOCK_LENGTH);
+                if (offset == 0) {
+                    // BFINAL on the last block, BTYPE 00
+                    b[off + i] = (byte) (position + BLOCK_LENGTH == length ? 1 : 0);
+                } else if (offset < 3) {
+                    b[off + i] = (byte) 0xff;
+                } else if (offset < 5) {
+                    b[off + i] = 0;
+                } else {
+                    int zeros = (int) Math.min(BLOCK_LENGTH - offset, n - i);
+                    Arrays.fill(b, off + i, off + i + zeros, (byte) 0);
+                    i += zeros - 1;
+                    position += zeros - 1;
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Output stream kept in memory in pages, identical pages being shared.
+     */
+    private static final class PagedOutputStream extends OutputStream {
+
+        private final int pageSize;
+        private final List<byte[]> pages = new ArrayList<>();
+        private final List<byte[]> distinctPages = new ArrayList<>();
+        private byte[] page;
+        private int length;
+        private long size;
+
+        PagedOutputStream(int pageSize) {
+            this.pageSize = pageSize;
+            this.page = new byte[pageSize];
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                int n = Math.min(len, pageSize - length);
+                System.arraycopy(b, off, page, length, n);
+                length += n;
+                size += n;
+                off += n;
+                len -= n;
+                if (length == pageSize) {
+                    pages.add(intern(page));
+                    page = new byte[pageSize];
+                    length = 0;
+                }
+            }
+        }
+
+        private byte[] intern(byte[] page) {
+            for (int i = distinctPages.size() - 1; i >= 0; --i) {
+                if (Arrays.equals(distinctPages.get(i), page)) {
+                    return distinctPages.get(i);
+                }
+            }
+            distinctPages.add(page);
+            return page;
+        }
+
+        long size() {
+            return size;
+        }
+
+        SeekableByteChannel channel() {
+            return new SeekableByteChannel() {
+                private long position;
+                private boolean open = true;
+
+                @Override
+                public int read(ByteBuffer dst) {
+                    if (position >= size) {
+                        return -1;
+                    }
+                    int start = dst.position();
+                    while (dst.hasRemaining() && position < size) {
+                        int index = (int) (position / pageSize);
+                        int offset = (int) (position % pageSize);
+                        byte[] p = index < pages.size() ? pages.get(index) : page;
+                        int n = (int) Math.min(Math.min(dst.remaining(), pageSize - offset), size - position);
+                        dst.put(p, offset, n);
+                        position += n;
+                    }
+                    return dst.position() - start;
+                }
+
+                @Override
+                public int write(ByteBuffer src) {
+                    throw new NonWritableChannelException();
+                }
+
+                @Override
+                public long position() {
+                    return position;
+                }
+
+                @Override
+                public SeekableByteChannel position(long newPosition) {
+                    position = newPosition;
+                    return this;
+                }
+
+                @Override
+                public long size() {
+                    return size;
+                }
+
+                @Override
+                public SeekableByteChannel truncate(long size) {
+                    throw new NonWritableChannelException();
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return open;
+                }
+
+                @Override
+                public void close() {
+                    open = false;
+                }
+            };
+        }
+    }
+}
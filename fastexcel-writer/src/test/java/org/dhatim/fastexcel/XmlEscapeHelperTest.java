@@ -1,9 +1,16 @@
 package org.dhatim.fastexcel;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class XmlEscapeHelperTest {
 
@@ -15,8 +22,26 @@ class XmlEscapeHelperTest {
 			"with\"signs\",with&quot;signs&quot;",
 			"random&more,random&amp;more",
 			"<this will be escaped \ud83d\ude01>,&lt;this will be escaped &#x1f601;&gt;",
-			"nothing+!()happens,nothing+!()happens"})
+			"nothing+!()happens,nothing+!()happens",
+			"tab\tand\u007fdel\u0080,tab&#x9;and&#x7f;del&#x80;",
+			"dropped\u0001\ud800\ufffe,dropped"})
 	public void testEscaping(String input, String expected) {
 		assertEquals(expected, XmlEscapeHelper.escape(input));
 	}
+
+	@Test
+	public void testNothingToEscape() {
+		String text = "Nothing to escape here, 1 + 2 = 3";
+		assertSame(text, XmlEscapeHelper.escape(text));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"", "plain", "<a href='x'>&amp;</a>", "\u00e9\u20ac\ud83d\ude01 \u0003\ud800\n\r\t", "\ufffd\ufffe\uffff\ue000\ud7ff"})
+	public void testWriterEscapingMatchesHelper(String input) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Writer w = new Writer(baos);
+		w.appendEscaped(input);
+		w.flush();
+		assertEquals(XmlEscapeHelper.escape(input), new String(baos.toByteArray(), StandardCharsets.UTF_8));
+	}
 }